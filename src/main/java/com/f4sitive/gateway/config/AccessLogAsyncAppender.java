@@ -0,0 +1,107 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.access.spi.IAccessEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Setter;
+import net.logstash.logback.appender.AccessEventAsyncDisruptorAppender;
+import net.logstash.logback.appender.RingBufferFullException;
+import net.logstash.logback.encoder.com.lmax.disruptor.RingBuffer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AccessLogAsyncAppender extends AccessEventAsyncDisruptorAppender implements MeterBinder {
+    private static final RingBufferFullException RING_BUFFER_FULL_EXCEPTION = new RingBufferFullException();
+
+    static {
+        RING_BUFFER_FULL_EXCEPTION.setStackTrace(new StackTraceElement[0]);
+    }
+
+    public enum Policy {
+        DROP, SAMPLE
+    }
+
+    @Setter
+    private AccessLogConfig.Async async = new AccessLogConfig.Async();
+
+    private final LongAdder full = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private volatile Timer timer;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("appender", getName());
+        Gauge.builder("access.log.ring.buffer.depth", this, AccessLogAsyncAppender::depth)
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("access.log.ring.buffer.capacity", this, AccessLogAsyncAppender::getRingBufferSize)
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("access.log.dropped", full, LongAdder::sum)
+                .tags(tags.and("reason", "full"))
+                .register(registry);
+        FunctionCounter.builder("access.log.dropped", sampled, LongAdder::sum)
+                .tags(tags.and("reason", "sampled"))
+                .register(registry);
+        this.timer = Timer.builder("access.log.append")
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    protected void append(IAccessEvent event) {
+        long startTime = System.nanoTime();
+        try {
+            publish(event, startTime);
+        } finally {
+            Timer timer = this.timer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void publish(IAccessEvent event, long startTime) {
+        RingBuffer<LogEvent<IAccessEvent>> ringBuffer = getDisruptor().getRingBuffer();
+        AccessLogConfig.Async async = this.async;
+        if (async.getPolicy() == Policy.SAMPLE
+                && depth() >= ringBuffer.getBufferSize() * async.getSampleThreshold()
+                && ThreadLocalRandom.current().nextDouble() >= async.getSampleRate()) {
+            drop(event, this.sampled);
+            return;
+        }
+        try {
+            prepareForDeferredProcessing(event);
+        } catch (RuntimeException e) {
+            addWarn("Unable to prepare event for deferred processing.  Event output might be missing data.", e);
+        }
+        if (ringBuffer.tryPublishEvent(getEventTranslator(), event)) {
+            fireEventAppended(event, System.nanoTime() - startTime);
+            return;
+        }
+        drop(event, this.full);
+    }
+
+    private void drop(IAccessEvent event, LongAdder counter) {
+        counter.increment();
+        long dropped = this.full.sum() + this.sampled.sum();
+        if (dropped % getDroppedWarnFrequency() == 1) {
+            addWarn("Dropped " + dropped + " events (and counting...) due to ring buffer pressure [" + depth() + "/" + getRingBufferSize() + "]");
+        }
+        fireEventAppendFailed(event, RING_BUFFER_FULL_EXCEPTION);
+    }
+
+    private long depth() {
+        if (getDisruptor() == null) {
+            return 0L;
+        }
+        RingBuffer<LogEvent<IAccessEvent>> ringBuffer = getDisruptor().getRingBuffer();
+        return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+    }
+}
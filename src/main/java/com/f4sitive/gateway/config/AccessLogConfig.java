@@ -3,16 +3,30 @@ package com.f4sitive.gateway.config;
 import ch.qos.logback.access.AccessConstants;
 import ch.qos.logback.access.joran.JoranConfigurator;
 import ch.qos.logback.access.spi.AccessContext;
-import ch.qos.logback.access.spi.AccessEvent;
-import ch.qos.logback.access.spi.ServerAdapter;
+import ch.qos.logback.access.spi.IAccessEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.HttpHandlerDecoratorFactory;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
@@ -20,89 +34,57 @@ import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.lang.NonNull;
 import org.springframework.util.ResourceUtils;
-import org.springframework.util.StreamUtils;
-import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
-import org.springframework.web.server.WebFilterChain;
 import org.springframework.web.server.WebHandler;
 import org.springframework.web.server.adapter.HttpWebHandlerAdapter;
 import org.springframework.web.server.handler.WebHandlerDecorator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.server.HttpServerRequest;
-import reactor.netty.http.server.HttpServerResponse;
 
-import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 
 @Configuration(proxyBeanMethods = false)
-class AccessLogConfig {
-    @Bean
-    WebFilter contentWebFilter() {
-        return new WebFilter() {
-            @SneakyThrows
-            byte[] content(ByteBuffer byteBuffer) {
-                return StreamUtils
-                        .copyToByteArray(DefaultDataBufferFactory.sharedInstance.wrap(byteBuffer).asInputStream());
-            }
+@ConfigurationProperties("access-log")
+public class AccessLogConfig {
+    @Getter
+    private final Content content = new Content();
+    @Getter
+    private final Async async = new Async();
 
-            @Override
-            @NonNull
-            public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
-                return exchange.getPrincipal()
-                        .map(Principal::getName)
-                        .<Void>flatMap(name -> {
-                            exchange.getAttributes().put("org.apache.catalina.AccessLog.RemoteUser", name);
-                            return Mono.empty();
-                        })
-                        .switchIfEmpty(chain.filter(exchange
-                                .mutate()
-                                .request(new ServerHttpRequestDecorator(exchange.getRequest()) {
-                                    @Override
-                                    @NonNull
-                                    public Flux<DataBuffer> getBody() {
-                                        return super.getBody().doOnNext(dataBuffer -> {
-                                            byte[] content = content(dataBuffer.asByteBuffer().asReadOnlyBuffer());
-                                            exchange.getAttributes().put(AccessConstants.LB_INPUT_BUFFER, content);
-                                        });
-                                    }
-                                })
-                                .response(new ServerHttpResponseDecorator(exchange.getResponse()) {
-                                    @Override
-                                    @NonNull
-                                    public Mono<Void> writeAndFlushWith(
-                                            @NonNull Publisher<? extends Publisher<? extends DataBuffer>> body) {
-                                        return writeWith(Flux.from(body).flatMapSequential(publisher -> publisher));
-                                    }
+    @Bean
+    WebFilter remoteUserWebFilter() {
+        return (exchange, chain) -> exchange.getPrincipal()
+                .map(Principal::getName)
+                .<Void>flatMap(name -> {
+                    exchange.getAttributes().put("org.apache.catalina.AccessLog.RemoteUser", name);
+                    return Mono.empty();
+                })
+                .switchIfEmpty(chain.filter(exchange));
+    }
 
-                                    @Override
-                                    @NonNull
-                                    public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
-                                        return super.writeWith(DataBufferUtils.join(body).doOnNext(dataBuffer -> {
-                                            byte[] content = content(dataBuffer.asByteBuffer().asReadOnlyBuffer());
-                                            exchange.getAttributes().put(AccessConstants.LB_OUTPUT_BUFFER, content);
-                                        }));
-                                    }
-                                })
-                                .build()));
-            }
-        };
+    @Bean
+    GlobalFilter contentGlobalFilter() {
+        return new ContentGlobalFilter(content);
     }
 
     @SneakyThrows
     @Bean
-    HttpHandlerDecoratorFactory httpHandlerDecoratorFactory(Environment environment) {
+    HttpHandlerDecoratorFactory httpHandlerDecoratorFactory(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
         AccessContext context = new AccessContext();
         List<String> profiles = new ArrayList<>(Arrays.asList(environment.getActiveProfiles()));
         if (profiles.isEmpty()) {
@@ -113,16 +95,30 @@ class AccessLogConfig {
         configurator.setContext(context);
         configurator.doConfigure(ResourceUtils.getURL("classpath:logback-access-spring.xml"));
         context.start();
+        for (Iterator<Appender<IAccessEvent>> iterator = context.iteratorForAppenders(); iterator.hasNext(); ) {
+            Appender<IAccessEvent> appender = iterator.next();
+            if (appender instanceof AccessLogAsyncAppender) {
+                ((AccessLogAsyncAppender) appender).setAsync(async);
+                meterRegistry.ifAvailable(((AccessLogAsyncAppender) appender)::bindTo);
+            }
+        }
+        ReactiveAccessEvent.Fields fields = ReactiveAccessEvent.Fields.of(context);
         return adapted -> {
             WebHandler delegate = new WebHandlerDecorator(((HttpWebHandlerAdapter) adapted).getDelegate()) {
                 @Override
                 @NonNull
                 public Mono<Void> handle(@NonNull ServerWebExchange exchange) {
                     return super.handle(exchange).doFinally(signalType -> {
-                        ServerAdapter adapter = reactiveServerAdapter(exchange);
-                        AccessEvent event = reactiveAccessEvent(adapter, exchange);
-                        event.setThreadName(Thread.currentThread().getName());
-                        context.callAppenders(event);
+                        try {
+                            ReactiveAccessEvent event = new ReactiveAccessEvent(fields, exchange);
+                            event.setThreadName(Thread.currentThread().getName());
+                            context.callAppenders(event);
+                        } finally {
+                            Stream.of(AccessConstants.LB_INPUT_BUFFER, AccessConstants.LB_OUTPUT_BUFFER)
+                                    .map(exchange::<ContentCapture>getAttribute)
+                                    .filter(Objects::nonNull)
+                                    .forEach(ContentCapture::release);
+                        }
                     });
                 }
             };
@@ -150,156 +146,200 @@ class AccessLogConfig {
         };
     }
 
-    ServerAdapter reactiveServerAdapter(ServerWebExchange exchange) {
-        return new ServerAdapter() {
-            long elapsedTime(long elapsedTime) {
-                return System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - elapsedTime);
-            }
+    @Getter
+    @Setter
+    public static class Async {
+        private AccessLogAsyncAppender.Policy policy = AccessLogAsyncAppender.Policy.DROP;
+        private double sampleRate = 0.1D;
+        private double sampleThreshold = 0.5D;
+    }
 
-            @Override
-            public long getRequestTimestamp() {
-                return Optional.ofNullable(exchange.<Long>getAttribute("elapsed_time")).map(this::elapsedTime)
-                        .orElse(-1L);
-            }
+    @Getter
+    @Setter
+    public static class Policy {
+        private DataSize maxSize = DataSize.ofKilobytes(8L);
+        private List<MediaType> contentTypes = new ArrayList<>(Arrays.asList(
+                MediaType.APPLICATION_JSON,
+                new MediaType("application", "*+json"),
+                MediaType.APPLICATION_XML,
+                new MediaType("application", "*+xml"),
+                MediaType.APPLICATION_FORM_URLENCODED,
+                new MediaType("text", "*")
+        ));
+        private double sampleRate = 1.0D;
+        private boolean onError = false;
+        private Duration slowThreshold;
 
-            @Override
-            public long getContentLength() {
-                return -1;
-            }
+        boolean isSampled() {
+            return this.sampleRate >= 1.0D || (this.sampleRate > 0.0D && ThreadLocalRandom.current().nextDouble() < this.sampleRate);
+        }
 
-            @Override
-            public int getStatusCode() {
-                return -1;
-            }
+        boolean isOverridable() {
+            return this.onError || this.slowThreshold != null;
+        }
+
+        boolean isOverridable(Integer statusCode) {
+            return this.slowThreshold != null
+                    || (this.onError && Optional.ofNullable(statusCode).map(HttpStatus::resolve).map(HttpStatus::isError).orElse(true));
+        }
 
-            @Override
-            public Map<String, String> buildResponseHeaderMap() {
-                return exchange.getResponse().getHeaders().entrySet().stream()
-                        .collect(LinkedHashMap::new,
-                                (map, entry) -> map.put(entry.getKey(), String.join(",", entry.getValue())),
-                                Map::putAll);
+        boolean isCapturable(HttpHeaders headers) {
+            if (this.maxSize.toBytes() <= 0L || headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return false;
             }
-        };
+            try {
+                MediaType contentType = headers.getContentType();
+                return contentType != null && this.contentTypes.stream().anyMatch(type -> type.includes(contentType));
+            } catch (InvalidMediaTypeException e) {
+                return false;
+            }
+        }
+
+        boolean isOverridden(int statusCode, long elapsedTime) {
+            return (this.onError && Optional.ofNullable(HttpStatus.resolve(statusCode)).map(HttpStatus::isError).orElse(true))
+                    || (this.slowThreshold != null && elapsedTime >= this.slowThreshold.toMillis());
+        }
     }
 
-    AccessEvent reactiveAccessEvent(ServerAdapter adapter, ServerWebExchange exchange) {
-        return new AccessEvent(null, null, adapter) {
-            private Map<String, String> requestHeaderMap;
-            private Map<String, String[]> requestParameterMap;
+    public static class Content extends Policy {
+        @Getter
+        private final Map<String, Policy> routes = new LinkedHashMap<>();
 
-            @Override
-            public String getRequestURI() {
-                return exchange.getRequest().getURI().getPath();
-            }
+        Policy policy(ServerWebExchange exchange) {
+            return Optional.ofNullable(exchange.<Route>getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR))
+                    .map(route -> this.routes.get(route.getId()))
+                    .orElse(this);
+        }
+    }
 
-            @Override
-            public String getQueryString() {
-                return Optional.ofNullable(exchange.getRequest().getURI().getRawQuery()).filter(StringUtils::hasText)
-                        .map("?"::concat).orElse("");
-            }
+    static class ContentGlobalFilter implements GlobalFilter, Ordered {
+        private final Content content;
 
-            @Override
-            public String getRequestURL() {
-                return getMethod() + " " + getRequestURI() + getQueryString() + " " + getProtocol();
-            }
+        ContentGlobalFilter(Content content) {
+            this.content = content;
+        }
 
-            @Override
-            public String getRemoteHost() {
-                return Optional.ofNullable(exchange.getRequest().getRemoteAddress())
-                        .map(InetSocketAddress::getHostString)
-                        .orElse("");
-            }
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
 
-            @Override
-            public String getRemoteUser() {
-                return exchange.getAttribute("org.apache.catalina.AccessLog.RemoteUser");
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            Policy policy = content.policy(exchange);
+            boolean sampled = policy.isSampled();
+            if (!sampled && !policy.isOverridable()) {
+                return chain.filter(exchange);
             }
-
-            @Override
-            public String getProtocol() {
-                return ServerHttpRequestDecorator.<HttpServerRequest>getNativeRequest(exchange.getRequest())
-                        .version().text();
+            int maxSize = (int) policy.getMaxSize().toBytes();
+            ServerWebExchange.Builder builder = exchange.mutate();
+            if (policy.isCapturable(exchange.getRequest().getHeaders())) {
+                ContentCapture input = new ContentCapture(exchange.getResponse().bufferFactory(), maxSize, policy, sampled);
+                exchange.getAttributes().put(AccessConstants.LB_INPUT_BUFFER, input);
+                builder.request(new ServerHttpRequestDecorator(exchange.getRequest()) {
+                    @Override
+                    @NonNull
+                    public Flux<DataBuffer> getBody() {
+                        return super.getBody().doOnNext(input::accept);
+                    }
+                });
             }
+            ContentCapture output = new ContentCapture(exchange.getResponse().bufferFactory(), maxSize, policy, sampled);
+            exchange.getAttributes().put(AccessConstants.LB_OUTPUT_BUFFER, output);
+            builder.response(new ServerHttpResponseDecorator(exchange.getResponse()) {
+                @Override
+                @NonNull
+                public Mono<Void> writeAndFlushWith(@NonNull Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                    if (!policy.isCapturable(getHeaders()) || (!sampled && !policy.isOverridable(getRawStatusCode()))) {
+                        output.disable();
+                    }
+                    return super.writeAndFlushWith(Flux.from(body)
+                            .map(publisher -> Flux.from(publisher).doOnNext(output::accept)));
+                }
 
-            @Override
-            public String getMethod() {
-                return exchange.getRequest().getMethodValue();
-            }
+                @Override
+                @NonNull
+                public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+                    if (!policy.isCapturable(getHeaders()) || (!sampled && !policy.isOverridable(getRawStatusCode()))) {
+                        output.disable();
+                    }
+                    return super.writeWith(body instanceof Mono
+                            ? Mono.from(body).doOnNext(output::accept)
+                            : Flux.from(body).doOnNext(output::accept));
+                }
+            });
+            return chain.filter(builder.build());
+        }
+    }
 
-            @Override
-            public String getRequestHeader(String key) {
-                buildRequestHeaderMap();
-                return Optional.ofNullable(requestHeaderMap.get(key.toLowerCase()))
-                        .orElse("-");
-            }
+    static class ContentCapture {
+        private final DataBufferFactory bufferFactory;
+        private final Policy policy;
+        private final boolean sampled;
+        private int maxSize;
+        private DataBuffer buffer;
+        private long length;
+        private boolean released;
 
-            @Override
-            public Map<String, String> getRequestHeaderMap() {
-                buildRequestHeaderMap();
-                return requestHeaderMap;
-            }
+        ContentCapture(DataBufferFactory bufferFactory, int maxSize, Policy policy, boolean sampled) {
+            this.bufferFactory = bufferFactory;
+            this.maxSize = maxSize;
+            this.policy = policy;
+            this.sampled = sampled;
+        }
 
-            @Override
-            public void buildRequestHeaderMap() {
-                if (requestHeaderMap == null) {
-                    requestHeaderMap = exchange.getRequest().getHeaders().entrySet().stream()
-                            .collect(() -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER),
-                                    (map, entry) -> map.put(entry.getKey(), String.join(",", entry.getValue())),
-                                    Map::putAll);
-                }
-            }
+        synchronized void disable() {
+            this.maxSize = 0;
+        }
 
-            @Override
-            public Map<String, String[]> getRequestParameterMap() {
-                buildRequestParameterMap();
-                return requestParameterMap;
+        synchronized void accept(DataBuffer dataBuffer) {
+            int readableByteCount = dataBuffer.readableByteCount();
+            this.length += readableByteCount;
+            int remaining = this.maxSize - (this.buffer == null ? 0 : this.buffer.readableByteCount());
+            if (this.released || remaining <= 0 || readableByteCount == 0) {
+                return;
             }
-
-            @Override
-            public String[] getRequestParameter(String key) {
-                buildRequestParameterMap();
-                return Optional.ofNullable(requestParameterMap.get(key))
-                        .orElseGet(() -> new String[]{"-"});
+            int size = Math.min(remaining, readableByteCount);
+            if (this.buffer == null) {
+                this.buffer = this.bufferFactory.allocateBuffer(size);
             }
+            this.buffer.write(dataBuffer.asByteBuffer(dataBuffer.readPosition(), size));
+        }
 
-            @Override
-            public void buildRequestParameterMap() {
-                if (requestParameterMap == null) {
-                    requestParameterMap = exchange.getRequest().getQueryParams().entrySet().stream()
-                            .collect(LinkedHashMap::new,
-                                    (map, entry) -> map.put(entry.getKey(), entry.getValue().toArray(new String[0])),
-                                    Map::putAll);
-                }
-            }
+        synchronized long getLength() {
+            return this.length;
+        }
 
-            @Override
-            public long getContentLength() {
-                return Optional.ofNullable(exchange.<byte[]>getAttribute(AccessConstants.LB_OUTPUT_BUFFER))
-                        .map(responseContent -> (long) responseContent.length)
-                        .orElseGet(getServerAdapter()::getContentLength);
-            }
+        boolean isRetained(int statusCode, long elapsedTime) {
+            return this.sampled || this.policy.isOverridden(statusCode, elapsedTime);
+        }
 
-            @Override
-            public int getStatusCode() {
-                return ServerHttpResponseDecorator.<HttpServerResponse>getNativeResponse(exchange.getResponse())
-                        .status().code();
+        synchronized String getContent() {
+            if (this.buffer == null) {
+                return "";
             }
+            int readableByteCount = this.buffer.readableByteCount();
+            int length = this.length > readableByteCount ? utf8Length(this.buffer, readableByteCount) : readableByteCount;
+            return this.buffer.toString(this.buffer.readPosition(), length, StandardCharsets.UTF_8);
+        }
 
-            @Override
-            public String getRequestContent() {
-                return new String(exchange.getAttributeOrDefault(AccessConstants.LB_INPUT_BUFFER, new byte[0]));
+        static int utf8Length(DataBuffer buffer, int length) {
+            int start = length - 1;
+            while (start > 0 && start > length - 4 && (buffer.getByte(buffer.readPosition() + start) & 0xC0) == 0x80) {
+                start--;
             }
-
-            @Override
-            public String getResponseContent() {
-                return new String(exchange.getAttributeOrDefault(AccessConstants.LB_OUTPUT_BUFFER, new byte[0]));
+            if (start < 0) {
+                return length;
             }
+            int lead = buffer.getByte(buffer.readPosition() + start) & 0xFF;
+            int size = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            return start + size > length ? start : length;
+        }
 
-            @Override
-            public void prepareForDeferredProcessing() {
-                getRequestHeaderMap();
-                getRequestParameterMap();
-            }
-        };
+        synchronized void release() {
+            this.released = true;
+            Optional.ofNullable(this.buffer).ifPresent(DataBufferUtils::release);
+            this.buffer = null;
+        }
     }
-}
\ No newline at end of file
+}
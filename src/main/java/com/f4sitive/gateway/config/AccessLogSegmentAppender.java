@@ -0,0 +1,251 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.access.spi.IAccessEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.util.FileSize;
+import io.netty.util.internal.PlatformDependent;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class AccessLogSegmentAppender extends AppenderBase<IAccessEvent> {
+    static final int MAGIC = 0x4757414c;
+    static final int VERSION = 1;
+    static final String SUFFIX = ".seg";
+
+    @Setter
+    private String file;
+    @Setter
+    private FileSize segmentSize = FileSize.valueOf("64MB");
+    @Setter
+    private int maxHistory;
+    @Setter
+    private int maxContentLength = 2048;
+    @Setter
+    private long pid = -1L;
+    @Setter
+    private String hostname;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer record = ByteBuffer.allocate(8 * 1024);
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long sequence;
+
+    @Override
+    public void start() {
+        if (this.file == null) {
+            addError("No file set for the appender named [" + name + "].");
+            return;
+        }
+        if (this.segmentSize.getSize() > Integer.MAX_VALUE) {
+            addError("segmentSize " + this.segmentSize + " exceeds 2GB for the appender named [" + name + "].");
+            return;
+        }
+        try {
+            rotate();
+        } catch (IOException e) {
+            addError("Failed to open segment for " + this.file, e);
+            return;
+        }
+        super.start();
+    }
+
+    /**
+     * Synchronized on the same monitor as {@link AppenderBase#doAppend}, so the segment is never unmapped
+     * under a concurrent append.
+     */
+    @Override
+    public synchronized void stop() {
+        super.stop();
+        close();
+    }
+
+    @Override
+    protected void append(IAccessEvent event) {
+        try {
+            encode(event);
+            if (this.record.remaining() + Integer.BYTES > this.segmentSize.getSize() - header()) {
+                addWarn("Dropping access event of " + this.record.remaining() + " bytes larger than segmentSize " + this.segmentSize);
+                return;
+            }
+            if (this.segment == null) {
+                addError("No open segment for " + this.file + ", stopping the appender named [" + name + "].");
+                stop();
+                return;
+            }
+            if (this.record.remaining() + Integer.BYTES * 2 > this.segment.remaining()) {
+                rotate();
+            }
+            int position = this.segment.position();
+            this.segment.putInt(0);
+            this.segment.put(this.record);
+            this.segment.putInt(position, this.segment.position() - position - Integer.BYTES);
+        } catch (IOException e) {
+            addError("Failed to write segment for " + this.file, e);
+        }
+    }
+
+    private void encode(IAccessEvent event) {
+        ((Buffer) this.record).clear();
+        ensure(Long.BYTES * 3 + Integer.BYTES);
+        this.record.putLong(event.getTimeStamp());
+        this.record.putLong(event.getElapsedTime());
+        this.record.putInt(event.getStatusCode());
+        this.record.putLong(event.getContentLength());
+        putString(event.getMethod());
+        putString(event.getProtocol());
+        putString(event.getRequestURI());
+        putString(event.getQueryString());
+        putString(event.getRemoteHost());
+        putString(event.getRemoteUser());
+        putString(event.getThreadName());
+        putHeaders(event.getRequestHeaderMap());
+        putHeaders(event.getResponseHeaderMap());
+        putString(truncate(event.getRequestContent()));
+        putString(truncate(event.getResponseContent()));
+        ((Buffer) this.record).flip();
+    }
+
+    private String truncate(String content) {
+        return content == null || content.length() <= this.maxContentLength ? content : content.substring(0, this.maxContentLength);
+    }
+
+    private void putHeaders(Map<String, String> headers) {
+        ensure(Integer.BYTES);
+        this.record.putInt(headers.size());
+        headers.forEach((name, value) -> {
+            putString(name);
+            putString(value);
+        });
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensure(Integer.BYTES);
+            this.record.putInt(-1);
+            return;
+        }
+        ensure(Integer.BYTES + value.length() * 3);
+        int position = this.record.position();
+        this.record.putInt(0);
+        this.encoder.reset();
+        this.encoder.encode(CharBuffer.wrap(value), this.record, true);
+        this.encoder.flush(this.record);
+        this.record.putInt(position, this.record.position() - position - Integer.BYTES);
+    }
+
+    private void ensure(int length) {
+        if (this.record.remaining() < length) {
+            ByteBuffer record = ByteBuffer.allocate(Math.max(this.record.capacity() * 2, this.record.position() + length));
+            ((Buffer) this.record).flip();
+            record.put(this.record);
+            this.record = record;
+        }
+    }
+
+    private int header() {
+        return Integer.BYTES * 3 + Long.BYTES + (this.hostname == null ? 0 : this.hostname.length() * 3);
+    }
+
+    private void rotate() throws IOException {
+        FileChannel channel = null;
+        MappedByteBuffer segment;
+        try {
+            channel = open();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, this.segmentSize.getSize());
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                close(null, channel);
+            }
+            throw e;
+        }
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(this.pid);
+        if (this.hostname == null) {
+            segment.putInt(-1);
+        } else {
+            byte[] hostname = this.hostname.getBytes(StandardCharsets.UTF_8);
+            segment.putInt(hostname.length);
+            segment.put(hostname);
+        }
+        close();
+        this.channel = channel;
+        this.segment = segment;
+        purge();
+    }
+
+    private FileChannel open() throws IOException {
+        Path parent = Paths.get(this.file).toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        for (int attempt = 0; ; attempt++) {
+            this.sequence = Math.max(this.sequence + 1L, System.currentTimeMillis());
+            Path path = Paths.get(this.file + "." + this.sequence + SUFFIX);
+            try {
+                return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                if (attempt >= 16) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void close() {
+        close(this.segment, this.channel);
+        this.segment = null;
+        this.channel = null;
+    }
+
+    private void close(MappedByteBuffer segment, FileChannel channel) {
+        if (segment != null) {
+            if (segment.remaining() >= Integer.BYTES) {
+                segment.putInt(segment.position(), 0);
+            }
+            segment.force();
+            PlatformDependent.freeDirectBuffer(segment);
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                addWarn("Failed to close segment for " + this.file, e);
+            }
+        }
+    }
+
+    private void purge() throws IOException {
+        if (this.maxHistory <= 0) {
+            return;
+        }
+        Path prefix = Paths.get(this.file).toAbsolutePath();
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(prefix.getParent(), prefix.getFileName() + ".*" + SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(null);
+        for (int index = 0; index < segments.size() - this.maxHistory; index++) {
+            Files.deleteIfExists(segments.get(index));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.f4sitive.gateway.config;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+public class AccessLogSegmentDecoder {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneId.systemDefault());
+    private static final List<String> IDS = Arrays.asList("logId", "traceId", "spanId", "parentId");
+
+    private final JsonGenerator generator;
+
+    AccessLogSegmentDecoder(OutputStream outputStream) throws IOException {
+        this.generator = new JsonFactory().setRootValueSeparator(null).createGenerator(outputStream, JsonEncoding.UTF8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        AccessLogSegmentDecoder decoder = new AccessLogSegmentDecoder(System.out);
+        for (String arg : args) {
+            for (Path path : segments(Paths.get(arg))) {
+                decoder.decode(path);
+            }
+        }
+        decoder.generator.flush();
+    }
+
+    static List<Path> segments(Path path) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + AccessLogSegmentAppender.SUFFIX)) {
+                stream.forEach(segments::add);
+            }
+            segments.sort(null);
+        } else {
+            segments.add(path);
+        }
+        return segments;
+    }
+
+    void decode(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            if (segment.remaining() < Integer.BYTES * 2 || segment.getInt() != AccessLogSegmentAppender.MAGIC) {
+                throw new IOException("Not an access log segment: " + path);
+            }
+            int version = segment.getInt();
+            if (version != AccessLogSegmentAppender.VERSION) {
+                throw new IOException("Unsupported access log segment version " + version + ": " + path);
+            }
+            long pid = segment.getLong();
+            String hostname = getString(segment);
+            while (segment.remaining() >= Integer.BYTES) {
+                int length = segment.getInt();
+                if (length <= 0 || length > segment.remaining()) {
+                    break;
+                }
+                ByteBuffer record = segment.slice();
+                ((Buffer) record).limit(length);
+                ((Buffer) segment).position(segment.position() + length);
+                record(record, pid, hostname);
+            }
+        }
+    }
+
+    private void record(ByteBuffer record, long pid, String hostname) throws IOException {
+        long timestamp = record.getLong();
+        long elapsedTime = record.getLong();
+        int statusCode = record.getInt();
+        long contentLength = record.getLong();
+        String method = getString(record);
+        String protocol = getString(record);
+        String requestURI = getString(record);
+        String queryString = getString(record);
+        String remoteHost = getString(record);
+        String remoteUser = getString(record);
+        String threadName = getString(record);
+        Map<String, String> requestHeaders = getHeaders(record, new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+        Map<String, String> responseHeaders = getHeaders(record, new LinkedHashMap<>());
+        String requestContent = getString(record);
+        String responseContent = getString(record);
+
+        generator.writeStartObject();
+        generator.writeStringField("timestamp", TIMESTAMP.format(Instant.ofEpochMilli(timestamp)));
+        writeStringField("method", method);
+        generator.writeNumberField("status_code", statusCode);
+        generator.writeNumberField("elapsed_time", elapsedTime);
+        writeStringField("protocol", protocol);
+        writeStringField("remote_host", remoteHost);
+        writeStringField("remote_user", remoteUser);
+        generator.writeNumberField("content_length", contentLength);
+        writeStringField("requested_uri", requestURI);
+        writeHeaders("request_headers", requestHeaders);
+        Map<String, String> headers = new LinkedHashMap<>(responseHeaders);
+        headers.keySet().removeIf(name -> IDS.stream().anyMatch(name::equalsIgnoreCase));
+        writeHeaders("response_headers", headers);
+        writeStringField("message", new StringBuilder()
+                .append(dash(remoteHost)).append(" - ").append(dash(remoteUser))
+                .append(" [").append(DATE.format(Instant.ofEpochMilli(timestamp))).append("] \"")
+                .append(method).append(' ').append(requestURI).append(queryString).append(' ').append(protocol)
+                .append("\" ").append(statusCode).append(' ').append(contentLength < 0 ? "-" : Long.toString(contentLength))
+                .append(" \"").append(dash(requestHeaders.get("Referer")))
+                .append("\" \"").append(dash(requestHeaders.get("User-Agent"))).append('"')
+                .toString());
+        generator.writeStringField("type", "access");
+        generator.writeNumberField("pid", pid);
+        writeStringField("hostname", hostname);
+        writeStringField("query_string", queryString);
+        for (String id : IDS) {
+            writeStringField(id, responseHeaders.entrySet().stream()
+                    .filter(entry -> entry.getKey().equalsIgnoreCase(id))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(null));
+        }
+        writeStringField("thread_name", threadName);
+        writeStringField("request_content", requestContent);
+        writeStringField("response_content", responseContent);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private void writeStringField(String name, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private void writeHeaders(String name, Map<String, String> headers) throws IOException {
+        if (!headers.isEmpty()) {
+            generator.writeObjectFieldStart(name);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                generator.writeStringField(header.getKey(), header.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static String dash(String value) {
+        return Optional.ofNullable(value).filter(s -> !s.isEmpty()).orElse("-");
+    }
+
+    private static Map<String, String> getHeaders(ByteBuffer buffer, Map<String, String> headers) {
+        for (int count = buffer.getInt(); count > 0; count--) {
+            headers.put(getString(buffer), getString(buffer));
+        }
+        return headers;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,366 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration(proxyBeanMethods = false)
+public class CacheConfig {
+    @Bean
+    CacheGatewayFilterFactory cacheGatewayFilterFactory(Optional<MeterRegistry> meterRegistry) {
+        return new CacheGatewayFilterFactory(meterRegistry);
+    }
+
+    @Slf4j
+    public static class CacheGatewayFilterFactory extends AbstractGatewayFilterFactory<CacheGatewayFilterFactory.Config> implements DisposableBean {
+        static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList("connection", "keep-alive", "proxy-authenticate", "te", "trailer", "transfer-encoding", "upgrade", "content-length", "age"));
+        private static final List<String> REVALIDATION_ATTRIBUTES = Arrays.asList(
+                ServerWebExchange.LOG_ID_ATTRIBUTE,
+                ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR,
+                ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR,
+                ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE,
+                ServerWebExchangeUtils.URI_TEMPLATE_VARIABLES_ATTRIBUTE
+        );
+        private final Optional<MeterRegistry> meterRegistry;
+        private final Map<String, ResponseCache> caches = new ConcurrentHashMap<>();
+        private final Disposable.Composite revalidations = Disposables.composite();
+        private final AtomicInteger pendingRevalidations = new AtomicInteger();
+
+        CacheGatewayFilterFactory(Optional<MeterRegistry> meterRegistry) {
+            super(Config.class);
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public List<String> shortcutFieldOrder() {
+            return Arrays.asList("maxSize", "maxEntrySize");
+        }
+
+        @Override
+        public GatewayFilter apply(Config config) {
+            ResponseCache cache = caches.computeIfAbsent(Optional.ofNullable(config.getRouteId()).orElse(""), routeId -> new ResponseCache(routeId, config.getMaxSize().toBytes(), meterRegistry));
+            cache.setMaximumBytes(config.getMaxSize().toBytes());
+            long maxEntrySize = config.getMaxEntrySize().toBytes();
+            return new OrderedGatewayFilter((exchange, chain) -> {
+                ServerHttpRequest request = exchange.getRequest();
+                if (request.getMethod() != HttpMethod.GET) {
+                    return chain.filter(exchange);
+                }
+                Map<String, String> directives = ResponseCache.directives(request.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+                if (directives.containsKey("no-store")) {
+                    return chain.filter(exchange);
+                }
+                String key = request.getURI().toString();
+                ResponseCache.Entry entry = Optional.ofNullable(cache.get(key))
+                        .filter(e -> e.matches(request))
+                        .orElse(null);
+                if (entry != null && !directives.containsKey("no-cache") && ResponseCache.seconds(directives.get("max-age")) != 0L) {
+                    long age = entry.age(System.currentTimeMillis());
+                    if (entry.isFresh(age)) {
+                        cache.hit();
+                        return serve(request, exchange.getResponse(), entry.getStatus(), entry.getHeaders(), entry.getBody(), age);
+                    }
+                    if (entry.isStaleWhileRevalidate(age)) {
+                        cache.hit();
+                        revalidate(exchange, chain, cache, key, entry, config.getMaxRevalidations(), maxEntrySize);
+                        return serve(request, exchange.getResponse(), entry.getStatus(), entry.getHeaders(), entry.getBody(), age);
+                    }
+                }
+                cache.miss();
+                return chain.filter(forward(exchange, cache, key, entry, maxEntrySize));
+            }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+        }
+
+        @Override
+        public void destroy() {
+            revalidations.dispose();
+        }
+
+        private void revalidate(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCache cache, String key, ResponseCache.Entry entry, int maxRevalidations, long maxEntrySize) {
+            if (!entry.startRevalidation()) {
+                return;
+            }
+            if (pendingRevalidations.incrementAndGet() > maxRevalidations) {
+                pendingRevalidations.decrementAndGet();
+                entry.endRevalidation();
+                return;
+            }
+            Disposable.Swap revalidation = Disposables.swap();
+            if (!revalidations.add(revalidation)) {
+                pendingRevalidations.decrementAndGet();
+                entry.endRevalidation();
+                return;
+            }
+            revalidation.update(chain.filter(forward(detach(exchange), cache, key, entry, maxEntrySize))
+                    .doFinally(signalType -> {
+                        revalidations.remove(revalidation);
+                        pendingRevalidations.decrementAndGet();
+                        entry.endRevalidation();
+                    })
+                    .subscribe(null, e -> log.warn("Failed to revalidate {}", key, e)));
+        }
+
+        private static ServerWebExchange forward(ServerWebExchange exchange, ResponseCache cache, String key, ResponseCache.Entry entry, long maxEntrySize) {
+            ServerHttpRequest request = exchange.getRequest();
+            ResponseCache.Entry validated = entry != null && entry.getETag() != null && !request.getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH) ? entry : null;
+            return exchange.mutate()
+                    .request(validated == null ? request : new ServerHttpRequestDecorator(request) {
+                        private final HttpHeaders headers = new HttpHeaders();
+
+                        {
+                            headers.putAll(request.getHeaders());
+                            headers.set(HttpHeaders.IF_NONE_MATCH, validated.getETag());
+                        }
+
+                        @Override
+                        public HttpHeaders getHeaders() {
+                            return headers;
+                        }
+                    })
+                    .response(new CachingResponse(exchange.getResponse(), request, cache, key, validated, maxEntrySize))
+                    .build();
+        }
+
+        private static ServerWebExchange detach(ServerWebExchange exchange) {
+            Map<String, Object> attributes = new ConcurrentHashMap<>();
+            for (String name : REVALIDATION_ATTRIBUTES) {
+                Optional.ofNullable(exchange.getAttributes().get(name)).ifPresent(value -> attributes.put(name, value));
+            }
+            Optional.ofNullable(exchange.<Collection<URI>>getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR))
+                    .ifPresent(originalUrls -> attributes.put(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR, new LinkedHashSet<>(originalUrls)));
+            ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return Flux.empty();
+                }
+            };
+            ServerHttpResponse response = new DetachedResponse(exchange.getResponse().bufferFactory());
+            return new ServerWebExchangeDecorator(exchange) {
+                @Override
+                public ServerHttpRequest getRequest() {
+                    return request;
+                }
+
+                @Override
+                public ServerHttpResponse getResponse() {
+                    return response;
+                }
+
+                @Override
+                public Map<String, Object> getAttributes() {
+                    return attributes;
+                }
+            };
+        }
+
+        static Mono<Void> serve(ServerHttpRequest request, ServerHttpResponse response, int status, HttpHeaders headers, byte[] body, long age) {
+            response.getHeaders().putAll(headers);
+            response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+            response.getHeaders().set(HttpHeaders.AGE, String.valueOf(age / 1000L));
+            if (headers.getETag() != null && notModified(request.getHeaders().getIfNoneMatch(), headers.getETag())) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                response.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                return response.setComplete();
+            }
+            response.setRawStatusCode(status);
+            response.getHeaders().setContentLength(body.length);
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+        }
+
+        static boolean notModified(List<String> ifNoneMatch, String etag) {
+            String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+            return ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || opaque.equals(tag.startsWith("W/") ? tag.substring(2) : tag));
+        }
+
+        static ResponseCache.Entry entry(ServerHttpRequest request, int status, HttpHeaders headers, byte[] body, long now) {
+            Map<String, String> directives = ResponseCache.directives(headers.get(HttpHeaders.CACHE_CONTROL));
+            if (directives.containsKey("no-store")
+                    || directives.containsKey("private")
+                    || headers.containsKey(HttpHeaders.SET_COOKIE)
+                    || ResponseCache.Entry.vary(headers).contains("*")
+                    || (authenticated(request) && !directives.containsKey("public") && !directives.containsKey("s-maxage") && !directives.containsKey("must-revalidate"))) {
+                return null;
+            }
+            long freshness = ResponseCache.seconds(directives.get("s-maxage"));
+            if (freshness < 0L) {
+                freshness = ResponseCache.seconds(directives.get("max-age"));
+            }
+            freshness = freshness < 0L ? -1L : freshness * 1000L;
+            if (freshness < 0L && headers.getExpires() >= 0L) {
+                freshness = Math.max(0L, headers.getExpires() - (headers.getDate() >= 0L ? headers.getDate() : now));
+            }
+            if (freshness < 0L && !directives.containsKey("no-cache")) {
+                return null;
+            }
+            HttpHeaders stored = new HttpHeaders();
+            headers.forEach((name, values) -> {
+                if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    stored.put(name, new ArrayList<>(values));
+                }
+            });
+            return new ResponseCache.Entry(status, stored, body, now, Math.max(0L, ResponseCache.seconds(headers.getFirst(HttpHeaders.AGE))) * 1000L, Math.max(0L, freshness), directives, request);
+        }
+
+        private static boolean authenticated(ServerHttpRequest request) {
+            return request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)
+                    || CoalesceConfig.CoalesceGatewayFilterFactory.IDENTITY_HEADERS.stream().anyMatch(request.getHeaders()::containsKey);
+        }
+
+        @Getter
+        @Setter
+        public static class Config implements HasRouteId {
+            private String routeId;
+            private DataSize maxSize = DataSize.ofMegabytes(16L);
+            private DataSize maxEntrySize = DataSize.ofMegabytes(1L);
+            private int maxRevalidations = 64;
+        }
+    }
+
+    static class CachingResponse extends ServerHttpResponseDecorator {
+        private final ServerHttpRequest request;
+        private final ResponseCache cache;
+        private final String key;
+        private final ResponseCache.Entry validated;
+        private final long maxEntrySize;
+
+        CachingResponse(ServerHttpResponse delegate, ServerHttpRequest request, ResponseCache cache, String key, ResponseCache.Entry validated, long maxEntrySize) {
+            super(delegate);
+            this.request = request;
+            this.cache = cache;
+            this.key = key;
+            this.validated = validated;
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Integer status = getRawStatusCode();
+            long now = System.currentTimeMillis();
+            if (validated != null && status != null && status == HttpStatus.NOT_MODIFIED.value()) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.putAll(validated.getHeaders());
+                getHeaders().forEach((name, values) -> {
+                    if (!name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH) && !name.equalsIgnoreCase(HttpHeaders.TRANSFER_ENCODING)) {
+                        headers.put(name, values);
+                    }
+                });
+                ResponseCache.Entry refreshed = CacheGatewayFilterFactory.entry(request, validated.getStatus(), headers, validated.getBody(), now);
+                if (refreshed != null) {
+                    cache.put(key, refreshed);
+                } else {
+                    cache.remove(key);
+                }
+                return Flux.<DataBuffer>from(body)
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.defer(() -> CacheGatewayFilterFactory.serve(request, getDelegate(), validated.getStatus(), headers, validated.getBody(), 0L)));
+            }
+            if (status == null || status != HttpStatus.OK.value() || getHeaders().getContentLength() > maxEntrySize || CacheGatewayFilterFactory.entry(request, status, getHeaders(), new byte[0], now) == null) {
+                return super.writeWith(body);
+            }
+            ByteArrayOutputStream[] output = {new ByteArrayOutputStream()};
+            return super.writeWith(Flux.<DataBuffer>from(body)
+                    .doOnNext(buffer -> {
+                        if (output[0] != null && output[0].size() + buffer.readableByteCount() > maxEntrySize) {
+                            output[0] = null;
+                        }
+                        if (output[0] != null) {
+                            ByteBuffer byteBuffer = buffer.asByteBuffer();
+                            byte[] bytes = new byte[byteBuffer.remaining()];
+                            byteBuffer.get(bytes);
+                            output[0].write(bytes, 0, bytes.length);
+                        }
+                    })
+                    .doOnComplete(() -> Optional.ofNullable(output[0])
+                            .map(ByteArrayOutputStream::toByteArray)
+                            .map(bytes -> CacheGatewayFilterFactory.entry(request, status, getHeaders(), bytes, System.currentTimeMillis()))
+                            .ifPresent(entry -> cache.put(key, entry))));
+        }
+    }
+
+    static class DetachedResponse extends AbstractServerHttpResponse {
+        DetachedResponse(DataBufferFactory dataBufferFactory) {
+            super(dataBufferFactory);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getNativeResponse() {
+            return (T) this;
+        }
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Flux.<DataBuffer>from(body)
+                    .doOnNext(DataBufferUtils::release)
+                    .then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return Flux.<Publisher<? extends DataBuffer>>from(body)
+                    .concatMap(publisher -> Flux.<DataBuffer>from(publisher))
+                    .doOnNext(DataBufferUtils::release)
+                    .then();
+        }
+
+        @Override
+        protected void applyStatusCode() {
+        }
+
+        @Override
+        protected void applyHeaders() {
+        }
+
+        @Override
+        protected void applyCookies() {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Configuration(proxyBeanMethods = false)
+public class CoalesceConfig {
+    @Bean
+    CoalesceGatewayFilterFactory coalesceGatewayFilterFactory(Optional<MeterRegistry> meterRegistry) {
+        return new CoalesceGatewayFilterFactory(meterRegistry);
+    }
+
+    public static class CoalesceGatewayFilterFactory extends AbstractGatewayFilterFactory<CoalesceGatewayFilterFactory.Config> {
+        static final List<String> IDENTITY_HEADERS = Collections.unmodifiableList(Arrays.asList("User-Id", "Device-Id", "Auth-Token"));
+        private final Optional<MeterRegistry> meterRegistry;
+        private final Map<String, RequestCoalescer> coalescers = new ConcurrentHashMap<>();
+
+        CoalesceGatewayFilterFactory(Optional<MeterRegistry> meterRegistry) {
+            super(Config.class);
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public List<String> shortcutFieldOrder() {
+            return Arrays.asList("maxWaiters", "maxSize");
+        }
+
+        @Override
+        public GatewayFilter apply(Config config) {
+            RequestCoalescer coalescer = coalescers.computeIfAbsent(Optional.ofNullable(config.getRouteId()).orElse(""), routeId -> new RequestCoalescer(routeId, meterRegistry));
+            Set<String> vary = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            vary.addAll(config.getVary());
+            vary.add(HttpHeaders.ACCEPT_ENCODING);
+            vary.addAll(IDENTITY_HEADERS);
+            int maxWaiters = Math.max(0, config.getMaxWaiters());
+            long maxSize = config.getMaxSize().toBytes();
+            return new OrderedGatewayFilter((exchange, chain) -> {
+                ServerHttpRequest request = exchange.getRequest();
+                if (request.getMethod() != HttpMethod.GET) {
+                    return chain.filter(exchange);
+                }
+                if ((request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION) && !vary.contains(HttpHeaders.AUTHORIZATION))
+                        || (request.getHeaders().containsKey(HttpHeaders.COOKIE) && !vary.contains(HttpHeaders.COOKIE))
+                        || request.getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH)
+                        || request.getHeaders().containsKey(HttpHeaders.IF_MODIFIED_SINCE)
+                        || request.getHeaders().containsKey(HttpHeaders.RANGE)) {
+                    coalescer.bypass();
+                    return chain.filter(exchange);
+                }
+                StringBuilder key = new StringBuilder(request.getURI().toString());
+                for (String name : vary) {
+                    key.append('\n').append(name).append(':').append(request.getHeaders().getOrDefault(name, Collections.emptyList()));
+                }
+                RequestCoalescer.Flight flight = coalescer.lead(key.toString());
+                if (flight != null) {
+                    return chain.filter(exchange.mutate().response(new CoalescingResponse(exchange.getResponse(), request, flight, maxSize)).build())
+                            .doFinally(signalType -> flight.abandon());
+                }
+                Mono<RequestCoalescer.Result> shared = coalescer.join(key.toString(), maxWaiters);
+                if (shared == null) {
+                    return chain.filter(exchange);
+                }
+                return shared.filter(result -> result.matches(request))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(result -> {
+                            if (result.isPresent()) {
+                                coalescer.share();
+                                return serve(exchange.getResponse(), result.get());
+                            }
+                            coalescer.bypass();
+                            return chain.filter(exchange);
+                        });
+            }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+        }
+
+        private static Mono<Void> serve(ServerHttpResponse response, RequestCoalescer.Result result) {
+            response.setRawStatusCode(result.getStatus());
+            response.getHeaders().putAll(result.getHeaders());
+            response.getHeaders().setContentLength(result.getBody().length);
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(result.getBody())));
+        }
+
+        @Getter
+        @Setter
+        public static class Config implements HasRouteId {
+            private String routeId;
+            private List<String> vary = new ArrayList<>();
+            private int maxWaiters = 1000;
+            private DataSize maxSize = DataSize.ofMegabytes(1L);
+        }
+    }
+
+    static class CoalescingResponse extends ServerHttpResponseDecorator {
+        private static final int INITIAL_SIZE = 8192;
+        private final ServerHttpRequest request;
+        private final RequestCoalescer.Flight flight;
+        private final long maxSize;
+        private byte[] body;
+        private int size;
+
+        CoalescingResponse(ServerHttpResponse delegate, ServerHttpRequest request, RequestCoalescer.Flight flight, long maxSize) {
+            super(delegate);
+            this.request = request;
+            this.flight = flight;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Integer status = getRawStatusCode();
+            Map<String, String> directives = ResponseCache.directives(getHeaders().get(HttpHeaders.CACHE_CONTROL));
+            long contentLength = getHeaders().getContentLength();
+            if (status == null
+                    || directives.containsKey("private")
+                    || directives.containsKey("no-store")
+                    || getHeaders().containsKey(HttpHeaders.SET_COOKIE)
+                    || contentLength > maxSize
+                    || ResponseCache.Entry.vary(getHeaders()).contains("*")) {
+                flight.abandon();
+                return super.writeWith(body);
+            }
+            this.body = new byte[(int) (contentLength >= 0L ? contentLength : Math.min(maxSize, INITIAL_SIZE))];
+            return super.writeWith(Flux.<DataBuffer>from(body)
+                    .doOnNext(this::append)
+                    .doOnComplete(() -> {
+                        if (this.body != null) {
+                            HttpHeaders headers = new HttpHeaders();
+                            getHeaders().forEach((name, values) -> {
+                                if (!CacheConfig.CacheGatewayFilterFactory.HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                                    headers.put(name, new ArrayList<>(values));
+                                }
+                            });
+                            flight.complete(new RequestCoalescer.Result(status, headers, size == this.body.length ? this.body : Arrays.copyOf(this.body, size), request));
+                        }
+                    }));
+        }
+
+        private void append(DataBuffer buffer) {
+            if (body == null) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (size + length > maxSize) {
+                body = null;
+                flight.abandon();
+                return;
+            }
+            if (size + length > body.length) {
+                body = Arrays.copyOf(body, (int) Math.min(maxSize, Math.max(size + length, body.length * 2L)));
+            }
+            buffer.asByteBuffer().get(body, size, length);
+            size += length;
+        }
+    }
+}
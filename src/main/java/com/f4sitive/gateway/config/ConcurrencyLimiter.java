@@ -0,0 +1,182 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+public class ConcurrencyLimiter {
+    /**
+     * Reactor context key set on picks made on behalf of a request that already holds an instance (a repick or
+     * a hedge). A saturated list seen by such a pick is not a rejection of its own; the caller decides.
+     */
+    static final String SECONDARY_PICK = ConcurrencyLimiter.class.getName() + ".SECONDARY_PICK";
+
+    private final LoadBalancerConfig.Limit properties;
+    private final Optional<MeterRegistry> meterRegistry;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final Map<String, List<ServiceInstance>> snapshots = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiter(LoadBalancerConfig.Limit properties, Optional<MeterRegistry> meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public List<ServiceInstance> filter(List<ServiceInstance> serviceInstances) {
+        return filter(serviceInstances, true);
+    }
+
+    List<ServiceInstance> filter(List<ServiceInstance> serviceInstances, boolean countRejection) {
+        if (serviceInstances.isEmpty() || !properties.isEnabled()) {
+            return serviceInstances;
+        }
+        String serviceId = serviceInstances.get(0).getServiceId();
+        if (serviceId != null && snapshots.put(serviceId, serviceInstances) != serviceInstances) {
+            Set<String> keys = serviceInstances.stream().map(ServiceInstances::key).collect(Collectors.toSet());
+            limits.entrySet().removeIf(entry -> serviceId.equals(entry.getValue().serviceId) && !keys.contains(entry.getKey()) && entry.getValue().remove());
+        }
+        List<ServiceInstance> filtered = null;
+        for (int index = 0; index < serviceInstances.size(); index++) {
+            ServiceInstance serviceInstance = serviceInstances.get(index);
+            Limit limit = limits.get(ServiceInstances.key(serviceInstance));
+            if (limit != null && limit.isSaturated()) {
+                if (filtered == null) {
+                    filtered = new ArrayList<>(serviceInstances.subList(0, index));
+                }
+            } else if (filtered != null) {
+                filtered.add(serviceInstance);
+            }
+        }
+        if (filtered == null) {
+            return serviceInstances;
+        }
+        if (filtered.isEmpty() && serviceId != null && countRejection) {
+            reject(serviceId);
+        }
+        return filtered;
+    }
+
+    public Limit tryAcquire(ServiceInstance serviceInstance) {
+        Limit limit = limits.computeIfAbsent(ServiceInstances.key(serviceInstance), key -> limit(key, serviceInstance.getServiceId()));
+        return limit.tryAcquire() ? limit : null;
+    }
+
+    public void reject(String serviceId) {
+        rejections.computeIfAbsent(String.valueOf(serviceId), this::rejection).increment();
+    }
+
+    private Limit limit(String key, String serviceId) {
+        Limit limit = new Limit(serviceId, properties);
+        meterRegistry.ifPresent(registry -> {
+            Tags tags = Tags.of("service", String.valueOf(serviceId), "instance", key);
+            limit.meters.add(Gauge.builder("loadbalancer.concurrency.limit", limit, Limit::getLimit)
+                    .tags(tags)
+                    .register(registry));
+            limit.meters.add(Gauge.builder("loadbalancer.concurrency.inflight", limit, Limit::getInflight)
+                    .tags(tags)
+                    .register(registry));
+            limit.registry = registry;
+        });
+        return limit;
+    }
+
+    private LongAdder rejection(String serviceId) {
+        LongAdder rejected = new LongAdder();
+        meterRegistry.ifPresent(registry -> FunctionCounter.builder("loadbalancer.concurrency.rejected", rejected, LongAdder::sum)
+                .tags("service", serviceId)
+                .register(registry));
+        return rejected;
+    }
+
+    public static class Limit {
+        private final String serviceId;
+        private final LoadBalancerConfig.Limit properties;
+        private final List<Meter> meters = new ArrayList<>();
+        private volatile MeterRegistry registry;
+        private volatile double limit;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private double longRtt;
+
+        Limit(String serviceId, LoadBalancerConfig.Limit properties) {
+            this.serviceId = serviceId;
+            this.properties = properties;
+            this.limit = properties.getInitialLimit();
+        }
+
+        public double getLimit() {
+            return limit;
+        }
+
+        public int getInflight() {
+            return inflight.get();
+        }
+
+        boolean isSaturated() {
+            return inflight.get() >= (int) limit;
+        }
+
+        boolean tryAcquire() {
+            for (;;) {
+                int current = inflight.get();
+                if (current >= (int) limit) {
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            inflight.updateAndGet(current -> Math.max(0, current - 1));
+        }
+
+        synchronized void release(long rtt, boolean dropped) {
+            int inflight = this.inflight.getAndUpdate(current -> Math.max(0, current - 1));
+            if (dropped) {
+                limit = clamp(limit * properties.getBackoffRatio());
+                return;
+            }
+            if (rtt <= 0L) {
+                return;
+            }
+            double window = Math.max(1, properties.getLongWindow());
+            longRtt = longRtt == 0.0D ? rtt : longRtt * (1.0D - 1.0D / window) + rtt / window;
+            if (longRtt / rtt > 2.0D) {
+                longRtt *= 0.95D;
+            }
+            if (inflight < limit / 2.0D) {
+                return;
+            }
+            double gradient = Math.max(0.5D, Math.min(1.0D, properties.getRttTolerance() * longRtt / rtt));
+            double next = limit * gradient + Math.sqrt(limit);
+            limit = clamp(limit * (1.0D - properties.getSmoothing()) + next * properties.getSmoothing());
+        }
+
+        private double clamp(double limit) {
+            return Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), limit));
+        }
+
+        boolean remove() {
+            Optional.ofNullable(registry).ifPresent(registry -> meters.forEach(registry::remove));
+            return true;
+        }
+    }
+}
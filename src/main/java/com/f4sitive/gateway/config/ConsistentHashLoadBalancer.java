@@ -0,0 +1,232 @@
+package com.f4sitive.gateway.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.server.PathContainer;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class ConsistentHashLoadBalancer implements ReactorServiceInstanceLoadBalancer, LoadBalancerConfig.InflightTracking {
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    private final LoadBalancerConfig.Hash properties;
+    private final PathPattern pathPattern;
+    private final Map<String, AtomicLong> loads = new ConcurrentHashMap<>();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicInteger position = new AtomicInteger();
+    private volatile Ring ring = Ring.EMPTY;
+
+    public ConsistentHashLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider, LoadBalancerConfig.Hash properties) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.properties = properties;
+        this.pathPattern = Optional.ofNullable(properties.getPath())
+                .filter(StringUtils::hasText)
+                .map(PathPatternParser.defaultInstance::parse)
+                .orElse(null);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        String key = request.getContext() instanceof RequestDataContext ? key(((RequestDataContext) request.getContext()).getClientRequest()) : null;
+        return supplier.get(request).next().map(serviceInstances -> {
+            List<ServiceInstance> membership = supplier instanceof LoadBalancerConfig.ServiceInstanceListSupplierConfig ? ((LoadBalancerConfig.ServiceInstanceListSupplierConfig) supplier).getMembership() : serviceInstances;
+            Response<ServiceInstance> response = choose(membership.isEmpty() ? serviceInstances : membership, serviceInstances, key);
+            if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+                ((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+            }
+            return response;
+        });
+    }
+
+    String key(RequestData requestData) {
+        if (requestData == null) {
+            return null;
+        }
+        for (String header : properties.getHeaders()) {
+            String value = requestData.getHeaders().getFirst(header);
+            if (StringUtils.hasText(value)) {
+                return value;
+            }
+        }
+        for (String cookie : properties.getCookies()) {
+            String value = Optional.ofNullable(requestData.getCookies()).map(cookies -> cookies.getFirst(cookie)).orElse(null);
+            if (StringUtils.hasText(value)) {
+                return value;
+            }
+        }
+        if (pathPattern != null && requestData.getUrl() != null) {
+            PathPattern.PathMatchInfo matchInfo = pathPattern.matchAndExtract(PathContainer.parsePath(requestData.getUrl().getRawPath()));
+            if (matchInfo != null && !matchInfo.getUriVariables().isEmpty()) {
+                return String.join("/", matchInfo.getUriVariables().values());
+            }
+        }
+        return null;
+    }
+
+    Response<ServiceInstance> choose(List<ServiceInstance> membership, List<ServiceInstance> serviceInstances, String key) {
+        if (serviceInstances.isEmpty()) {
+            return new EmptyResponse();
+        }
+        if (this.loads.size() > membership.size() * 2) {
+            Set<String> keys = membership.stream().map(ServiceInstances::key).collect(Collectors.toSet());
+            this.loads.keySet().retainAll(keys);
+        }
+        if (serviceInstances.size() == 1) {
+            return new DefaultResponse(serviceInstances.get(0));
+        }
+        if (key == null) {
+            return new DefaultResponse(serviceInstances.get((position.getAndIncrement() & Integer.MAX_VALUE) % serviceInstances.size()));
+        }
+        Map<String, ServiceInstance> eligible = new HashMap<>(serviceInstances.size() * 2);
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            eligible.put(ServiceInstances.key(serviceInstance), serviceInstance);
+        }
+        Ring ring = ring(membership);
+        long capacity = (long) Math.ceil((total.get() + 1L) * Math.max(1.0D, properties.getLoadFactor()) / serviceInstances.size());
+        int index = ring.search(hash(key));
+        boolean[] visited = new boolean[ring.keys.length];
+        int remaining = eligible.size();
+        ServiceInstance fallback = null;
+        for (int step = 0; step < ring.hashes.length && remaining > 0; step++) {
+            int owner = ring.owners[(index + step) % ring.hashes.length];
+            if (visited[owner]) {
+                continue;
+            }
+            visited[owner] = true;
+            ServiceInstance serviceInstance = eligible.get(ring.keys[owner]);
+            if (serviceInstance == null) {
+                continue;
+            }
+            remaining--;
+            if (fallback == null) {
+                fallback = serviceInstance;
+            }
+            if (load(serviceInstance) < capacity) {
+                return new DefaultResponse(serviceInstance);
+            }
+        }
+        if (fallback == null) {
+            fallback = serviceInstances.get((position.getAndIncrement() & Integer.MAX_VALUE) % serviceInstances.size());
+        }
+        return new DefaultResponse(fallback);
+    }
+
+    private Ring ring(List<ServiceInstance> membership) {
+        Ring ring = this.ring;
+        if (!ring.matches(membership)) {
+            ring = new Ring(membership, Math.max(1, properties.getReplicas()));
+            this.ring = ring;
+        }
+        return ring;
+    }
+
+    private long load(ServiceInstance serviceInstance) {
+        return Optional.ofNullable(loads.get(ServiceInstances.key(serviceInstance))).map(AtomicLong::get).orElse(0L);
+    }
+
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public void onStart(ServiceInstance serviceInstance) {
+        loads.computeIfAbsent(ServiceInstances.key(serviceInstance), key -> new AtomicLong()).incrementAndGet();
+        total.incrementAndGet();
+    }
+
+    @Override
+    public void onFinally(ServiceInstance serviceInstance, SignalType signalType, long latency) {
+        AtomicLong load = loads.get(ServiceInstances.key(serviceInstance));
+        if (load != null && load.getAndUpdate(value -> Math.max(0L, value - 1L)) > 0L) {
+            total.getAndUpdate(value -> Math.max(0L, value - 1L));
+        }
+    }
+
+    static class Ring {
+        static final Ring EMPTY = new Ring(null, 1);
+
+        private final List<ServiceInstance> serviceInstances;
+        private final String[] keys;
+        private final long[] hashes;
+        private final int[] owners;
+
+        Ring(List<ServiceInstance> serviceInstances, int replicas) {
+            this.serviceInstances = serviceInstances;
+            this.keys = serviceInstances == null ? new String[0] : serviceInstances.stream().map(ServiceInstances::key).toArray(String[]::new);
+            int size = this.keys.length * replicas;
+            long[] points = new long[size];
+            Integer[] order = new Integer[size];
+            for (int point = 0; point < size; point++) {
+                points[point] = hash(this.keys[point / replicas] + "#" + point % replicas);
+                order[point] = point;
+            }
+            Arrays.sort(order, Comparator.comparingLong(point -> points[point]));
+            this.hashes = new long[size];
+            this.owners = new int[size];
+            for (int index = 0; index < size; index++) {
+                this.hashes[index] = points[order[index]];
+                this.owners[index] = order[index] / replicas;
+            }
+        }
+
+        boolean matches(List<ServiceInstance> serviceInstances) {
+            if (this.serviceInstances == serviceInstances) {
+                return true;
+            }
+            if (this.keys.length != serviceInstances.size()) {
+                return false;
+            }
+            for (int index = 0; index < this.keys.length; index++) {
+                if (!this.keys[index].equals(ServiceInstances.key(serviceInstances.get(index)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int search(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == hashes.length ? 0 : index;
+        }
+    }
+}
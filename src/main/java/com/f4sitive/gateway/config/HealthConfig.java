@@ -1,49 +1,128 @@
 package com.f4sitive.gateway.config;
 
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.actuate.endpoint.annotation.Selector;
 import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
 import org.springframework.boot.actuate.health.*;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
 import org.springframework.cloud.client.serviceregistry.Registration;
 import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 @Configuration(proxyBeanMethods = false)
+@ConfigurationProperties("health")
 public class HealthConfig {
-    private Health health = Health.up().build();
+    private Health health = Health.outOfService().build();
+    private int port;
     private final Optional<Registration> registration;
     private final Optional<ServiceRegistry> serviceRegistry;
+    private final RegistrationGate registrationGate;
+    private final ApplicationEventPublisher publisher;
 
-    HealthConfig(Optional<Registration> registration, Optional<ServiceRegistry> serviceRegistry) {
+    @Getter
+    private final Warmup warmup = new Warmup();
+
+    HealthConfig(Optional<Registration> registration, Optional<ServiceRegistry> serviceRegistry, RegistrationGate registrationGate, ApplicationEventPublisher publisher) {
         this.registration = registration;
         this.serviceRegistry = serviceRegistry;
+        this.registrationGate = registrationGate;
+        this.publisher = publisher;
+    }
+
+    Mono<Health> health(String health, UpstreamWarmup upstreamWarmup) {
+        boolean up = Stream.of("true", "on", "yes", "1", "t", "y", "o", "enable").anyMatch(health::equalsIgnoreCase);
+        if (up && !Status.UP.equals(this.health.getStatus())) {
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+            return upstreamWarmup.warmup(port)
+                    .then(Mono.fromSupplier(() -> health(true)))
+                    .doFinally(signalType -> AvailabilityChangeEvent.publish(publisher, this, ReadinessState.ACCEPTING_TRAFFIC));
+        }
+        return Mono.just(health(up));
     }
 
-    Health health(String health) {
-        this.health = Stream.of("true", "on", "yes", "1", "t", "y", "o", "enable").anyMatch(health::equalsIgnoreCase) ? Health.up().build() : Health.down().build();
+    private Health health(boolean up) {
+        this.health = up ? Health.up().build() : Health.down().build();
+        if (up) {
+            this.registrationGate.open();
+        }
         this.serviceRegistry
                 .<Consumer<Registration>>map(serviceRegistry -> Status.UP.equals(this.health.getStatus()) ? serviceRegistry::register : serviceRegistry::deregister)
                 .ifPresent(this.registration::ifPresent);
+        if (!up) {
+            this.registrationGate.close();
+        }
         return this.health;
     }
 
+    @Bean
+    static RegistrationGate registrationGate() {
+        return new RegistrationGate();
+    }
+
+    @Bean
+    UpstreamWarmup upstreamWarmup(HttpClient httpClient, ObjectProvider<ClientHttpConnector> clientHttpConnector, RouteLocator routeLocator, ObjectProvider<ReactiveDiscoveryClient> discoveryClient) {
+        return new UpstreamWarmup(httpClient, Optional.ofNullable(clientHttpConnector.getIfAvailable()), routeLocator, Optional.ofNullable(discoveryClient.getIfAvailable()), warmup);
+    }
+
+    @Bean
+    ApplicationListener<ApplicationStartedEvent> upstreamWarmupListener(UpstreamWarmup upstreamWarmup) {
+        return event -> {
+            if (event.getApplicationContext() instanceof WebServerApplicationContext) {
+                port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+            }
+            upstreamWarmup.warmup(port)
+                    .then(Mono.fromSupplier(() -> health(true)))
+                    .block();
+        };
+    }
+
     @Bean
     ReactiveHealthIndicator reactiveHealthIndicator() {
         return () -> Mono.just(health);
     }
 
     @Bean
-    ReactiveHealthEndpointWebExtension reactiveHealthEndpointWebExtension(ReactiveHealthContributorRegistry reactiveHealthContributorRegistry, HealthEndpointGroups groups) {
+    ReactiveHealthEndpointWebExtension reactiveHealthEndpointWebExtension(ReactiveHealthContributorRegistry reactiveHealthContributorRegistry, HealthEndpointGroups groups, UpstreamWarmup upstreamWarmup) {
         return new ReactiveHealthEndpointWebExtension(reactiveHealthContributorRegistry, groups) {
             @WriteOperation
             public Mono<Health> health(@Selector String health) {
-                return Mono.just(HealthConfig.this.health(health));
+                return HealthConfig.this.health(health, upstreamWarmup);
             }
         };
     }
+
+    /**
+     * Off by default: the startup warm-up blocks until it finishes (up to {@code timeout}) so that readiness is
+     * not reported before the pools are primed, which is a cost every boot, including test contexts, would pay.
+     */
+    @Getter
+    @Setter
+    public static class Warmup {
+        private boolean enabled;
+        private int connections = 4;
+        private Duration timeout = Duration.ofSeconds(30L);
+        private List<String> requests = new ArrayList<>();
+        private int iterations = 100;
+    }
 }
@@ -0,0 +1,223 @@
+package com.f4sitive.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.NumberUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+public class HealthProbeScheduler implements DisposableBean {
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED = (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+    private static final Duration MAX_INITIAL_JITTER = Duration.ofSeconds(1L);
+
+    private final WebClient webClient;
+    private final LoadBalancerProperties.HealthCheck healthCheck;
+    private final LoadBalancerConfig.Probe properties;
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+    private final Sinks.Many<Probe> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final Sinks.Many<Probe> changes = Sinks.many().multicast().directBestEffort();
+    private final Disposable worker;
+
+    public HealthProbeScheduler(WebClient webClient, LoadBalancerProperties.HealthCheck healthCheck, LoadBalancerConfig.Probe properties) {
+        this.webClient = webClient;
+        this.healthCheck = healthCheck;
+        this.properties = properties;
+        this.worker = queue.asFlux()
+                .flatMap(this::run, Math.max(1, properties.getMaxConcurrency()))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        worker.dispose();
+        probes.values().forEach(Probe::cancel);
+        probes.clear();
+    }
+
+    public Flux<List<ServiceInstance>> healthy(List<ServiceInstance> serviceInstances) {
+        return Flux.defer(() -> {
+            Map<ServiceInstance, Probe> registered = new IdentityHashMap<>();
+            for (ServiceInstance serviceInstance : serviceInstances) {
+                Optional.ofNullable(register(serviceInstance)).ifPresent(probe -> registered.put(serviceInstance, probe));
+            }
+            if (registered.isEmpty()) {
+                return Flux.just(serviceInstances);
+            }
+            Set<Probe> own = Collections.newSetFromMap(new IdentityHashMap<>());
+            own.addAll(registered.values());
+            return Flux.merge(changes.asFlux().filter(own::contains), Mono.just(Probe.NONE))
+                    .map(probe -> alive(serviceInstances, registered))
+                    .distinctUntilChanged()
+                    .doFinally(signalType -> registered.values().forEach(this::unregister));
+        });
+    }
+
+    private static List<ServiceInstance> alive(List<ServiceInstance> serviceInstances, Map<ServiceInstance, Probe> registered) {
+        List<ServiceInstance> alive = new ArrayList<>(serviceInstances.size());
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            Probe probe = registered.get(serviceInstance);
+            if (probe == null || !Boolean.FALSE.equals(probe.status)) {
+                alive.add(serviceInstance);
+            }
+        }
+        return alive;
+    }
+
+    private Probe register(ServiceInstance serviceInstance) {
+        String metadataPath = serviceInstance.getMetadata().get("health-check.path");
+        String healthCheckPath = Optional.ofNullable(healthCheck.getPath().get(serviceInstance.getServiceId()))
+                .orElseGet(() -> healthCheck.getPath().getOrDefault("default", "/actuator/health"));
+        if (!StringUtils.hasText(healthCheckPath) && !StringUtils.hasText(metadataPath)) {
+            return null;
+        }
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUri(serviceInstance.getUri());
+        builder.path(Optional.ofNullable(metadataPath).filter(StringUtils::hasText).orElse(healthCheckPath));
+        Optional.ofNullable(serviceInstance.getMetadata().get("management.port")).map(managementPort -> NumberUtils.parseNumber(managementPort, Integer.class)).ifPresent(builder::port);
+        URI uri = builder.build().toUri();
+        String username = serviceInstance.getMetadata().get("user.name");
+        String password = serviceInstance.getMetadata().getOrDefault("user.password", "");
+        String key = uri + "#" + Objects.toString(username, "");
+        boolean[] created = new boolean[1];
+        boolean[] resumed = new boolean[1];
+        Probe probe = probes.compute(key, (k, existing) -> {
+            if (existing == null) {
+                created[0] = true;
+                existing = new Probe(k, uri, username, password);
+            }
+            if (existing.references.incrementAndGet() == 1 && !created[0]) {
+                resumed[0] = true;
+                Optional.ofNullable(existing.expiry).ifPresent(Disposable::dispose);
+                existing.expiry = null;
+            }
+            return existing;
+        });
+        long age = System.nanoTime() - probe.checkedAt;
+        if (created[0]) {
+            schedule(probe, initialDelay());
+        } else if (probe.status == null) {
+            if (resumed[0]) {
+                schedule(probe, Duration.ZERO);
+            }
+        } else if (age > properties.getTtl().toNanos()) {
+            schedule(probe, Duration.ZERO);
+        } else if (resumed[0]) {
+            schedule(probe, healthCheck.getInterval().minusNanos(age));
+        }
+        return probe;
+    }
+
+    private void unregister(Probe probe) {
+        probes.computeIfPresent(probe.key, (key, existing) -> {
+            if (existing.references.decrementAndGet() > 0) {
+                return existing;
+            }
+            existing.next.update(Disposables.disposed());
+            existing.expiry = Mono.delay(properties.getTtl()).subscribe(tick -> expire(existing));
+            return existing;
+        });
+    }
+
+    private void expire(Probe probe) {
+        probes.computeIfPresent(probe.key, (key, existing) -> existing == probe && existing.references.get() <= 0 ? null : existing);
+    }
+
+    int size() {
+        return probes.size();
+    }
+
+    Duration initialDelay() {
+        long bound = Math.min(MAX_INITIAL_JITTER.toNanos(), (long) (healthCheck.getInterval().toNanos() * properties.getJitter()));
+        return healthCheck.getInitialDelay().plusNanos(bound <= 0L ? 0L : ThreadLocalRandom.current().nextLong(bound));
+    }
+
+    Duration jitter(Duration delay, Duration spread) {
+        long bound = (long) (spread.toNanos() * Math.max(0.0D, Math.min(1.0D, properties.getJitter())));
+        return bound <= 0L ? delay : delay.plusNanos(ThreadLocalRandom.current().nextLong(-bound, bound));
+    }
+
+    /**
+     * Replaces the pending timer atomically. The slot is installed before the timer is subscribed, so a
+     * reschedule racing with this one (or with a zero-delay tick) disposes whichever timer lost.
+     */
+    private void schedule(Probe probe, Duration delay) {
+        Disposable.Swap next = Disposables.swap();
+        probe.next.update(next);
+        next.update(Mono.delay(delay.isNegative() ? Duration.ZERO : delay).subscribe(tick -> queue.emitNext(probe, RETRY_NON_SERIALIZED)));
+    }
+
+    private Mono<Void> run(Probe probe) {
+        if (probe.references.get() <= 0) {
+            return Mono.empty();
+        }
+        return webClient.get()
+                .uri(probe.uri)
+                .headers(headers -> Optional.ofNullable(probe.username).ifPresent(username -> headers.setBasicAuth(username, probe.password)))
+                .exchangeToMono(clientResponse -> clientResponse.releaseBody().thenReturn(HttpStatus.OK.value() == clientResponse.rawStatusCode()))
+                .timeout(healthCheck.getInterval())
+                .doOnError(e -> log.debug("Exception occurred during health check of {}", probe.uri, e))
+                .onErrorReturn(false)
+                .defaultIfEmpty(false)
+                .doOnNext(status -> {
+                    Boolean previous = probe.status;
+                    probe.status = status;
+                    probe.checkedAt = System.nanoTime();
+                    if (!status.equals(previous)) {
+                        changes.emitNext(probe, RETRY_NON_SERIALIZED);
+                    }
+                    if (probe.references.get() > 0) {
+                        schedule(probe, jitter(healthCheck.getInterval(), healthCheck.getInterval()));
+                    }
+                })
+                .then();
+    }
+
+    static class Probe {
+        static final Probe NONE = new Probe("", null, null, null);
+
+        private final String key;
+        private final URI uri;
+        private final String username;
+        private final String password;
+        private final AtomicInteger references = new AtomicInteger();
+        private volatile Boolean status;
+        private volatile long checkedAt;
+        private final Disposable.Swap next = Disposables.swap();
+        private volatile Disposable expiry;
+
+        Probe(String key, URI uri, String username, String password) {
+            this.key = key;
+            this.uri = uri;
+            this.username = username;
+            this.password = password;
+        }
+
+        void cancel() {
+            next.dispose();
+            Optional.ofNullable(expiry).ifPresent(Disposable::dispose);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerUriTools;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.DelegatingServiceInstance;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+@Configuration(proxyBeanMethods = false)
+@ConfigurationProperties("route")
+public class HedgeConfig {
+    @Getter
+    private final Hedge hedge = new Hedge();
+
+    @Bean
+    HedgeGatewayFilterFactory hedgeGatewayFilterFactory(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters, HttpClientProperties properties, ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory, ConcurrencyLimiter concurrencyLimiter, OutlierDetector outlierDetector, Optional<MeterRegistry> meterRegistry) {
+        return new HedgeGatewayFilterFactory(hedge, httpClient, headersFilters, properties, loadBalancerClientFactory, concurrencyLimiter, outlierDetector, meterRegistry);
+    }
+
+    @Getter
+    @Setter
+    public static class Hedge {
+        private final RetryConfig.Budget budget = new RetryConfig.Budget();
+        private Duration minDelay = Duration.ofMillis(5L);
+        private double percentile = 0.95D;
+        private int samples = 512;
+
+        public Hedge() {
+            budget.setRatio(0.1D);
+            budget.setMinRetriesPerSecond(0);
+        }
+    }
+
+    public static class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgeGatewayFilterFactory.Config> {
+        private final Hedge properties;
+        private final HttpClient httpClient;
+        private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+        private final HttpClientProperties httpClientProperties;
+        private final ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory;
+        private final ConcurrencyLimiter concurrencyLimiter;
+        private final OutlierDetector outlierDetector;
+        private final Optional<MeterRegistry> meterRegistry;
+        private final Map<String, Hedging> hedging = new ConcurrentHashMap<>();
+
+        HedgeGatewayFilterFactory(Hedge properties, HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters, HttpClientProperties httpClientProperties, ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory, ConcurrencyLimiter concurrencyLimiter, OutlierDetector outlierDetector, Optional<MeterRegistry> meterRegistry) {
+            super(Config.class);
+            this.properties = properties;
+            this.httpClient = httpClient;
+            this.headersFilters = headersFilters;
+            this.httpClientProperties = httpClientProperties;
+            this.loadBalancerClientFactory = loadBalancerClientFactory;
+            this.concurrencyLimiter = concurrencyLimiter;
+            this.outlierDetector = outlierDetector;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public List<String> shortcutFieldOrder() {
+            return Collections.singletonList("delay");
+        }
+
+        @Override
+        public GatewayFilter apply(Config config) {
+            Hedging hedging = hedging(Optional.ofNullable(config.getRouteId()).orElse(""));
+            return new OrderedGatewayFilter((exchange, chain) -> {
+                Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+                URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+                HttpMethod method = exchange.getRequest().getMethod();
+                Optional<ServiceInstance> primary = LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange);
+                if (route == null || requestUrl == null || !primary.isPresent()
+                        || ServerWebExchangeUtils.isAlreadyRouted(exchange)
+                        || TransportConfig.TransportRoutingFilter.transport(route) != TransportConfig.Transport.NETTY
+                        || (method != HttpMethod.GET && method != HttpMethod.HEAD)
+                        || !"lb".equalsIgnoreCase(route.getUri().getScheme())
+                        || (!"http".equalsIgnoreCase(requestUrl.getScheme()) && !"https".equalsIgnoreCase(requestUrl.getScheme()))) {
+                    return chain.filter(exchange);
+                }
+                hedging.deposit();
+                Duration delay = Optional.ofNullable(config.getDelay()).orElseGet(() -> hedging.delay(properties));
+                ServerWebExchangeUtils.setAlreadyRouted(exchange);
+                Queue<Attempt> alternates = new ConcurrentLinkedQueue<>();
+                return hedge(route, exchange, primary.get(), requestUrl, delay, hedging, alternates)
+                        .flatMap(attempt -> {
+                            if (attempt.hedged) {
+                                exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, attempt.uri);
+                                exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(attempt.serviceInstance));
+                            }
+                            exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR, attempt.response);
+                            exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, attempt.connection);
+                            HttpHeaders headers = new HttpHeaders();
+                            attempt.response.responseHeaders().forEach(entry -> headers.add(entry.getKey(), entry.getValue()));
+                            TransportConfig.TransportRoutingFilter.setResponse(exchange, headersFilters.getIfAvailable(), attempt.response.status().code(), headers);
+                            return chain.filter(exchange);
+                        })
+                        .doOnSuccess(aVoid -> finish(alternates, SignalType.ON_COMPLETE))
+                        .doOnError(throwable -> finish(alternates, SignalType.ON_ERROR))
+                        .doOnCancel(() -> finish(alternates, SignalType.CANCEL));
+            }, NettyRoutingFilter.ORDER - 2);
+        }
+
+        private static void finish(Queue<Attempt> attempts, SignalType signalType) {
+            attempts.forEach(attempt -> attempt.finish(signalType));
+        }
+
+        Hedging hedging(String routeId) {
+            return hedging.computeIfAbsent(routeId, key -> new Hedging(key, properties, meterRegistry));
+        }
+
+        Mono<Attempt> hedge(Route route, ServerWebExchange exchange, ServiceInstance primary, URI requestUrl, Duration delay, Hedging hedging, Queue<Attempt> alternates) {
+            HttpHeaders filtered = HttpHeadersFilter.filterRequest(headersFilters.getIfAvailable(), exchange);
+            Queue<Attempt> failures = new ConcurrentLinkedQueue<>();
+            Sinks.Empty<Void> failed = Sinks.empty();
+            long startTime = System.nanoTime();
+            Mono<Attempt> first = send(route, exchange, filtered, new Attempt(primary, requestUrl, false))
+                    .flatMap(attempt -> successful(attempt, failures))
+                    .doOnError(e -> failed.tryEmitEmpty());
+            Mono<Attempt> responseMono = first;
+            if (delay != null) {
+                Mono<Attempt> second = Mono.firstWithSignal(Mono.delay(delay).then(), failed.asMono())
+                        .then(Mono.defer(() -> alternate(route, exchange, primary)))
+                        .flatMap(serviceInstance -> Mono.justOrEmpty(acquire(route, serviceInstance, requestUrl)))
+                        .filter(attempt -> hedging.withdraw() || attempt.abandon())
+                        .doOnNext(alternates::add)
+                        .flatMap(attempt -> send(route, exchange, filtered, attempt)
+                                .flatMap(sent -> successful(sent, failures))
+                                .doOnError(e -> attempt.finish(SignalType.ON_ERROR))
+                                .doOnCancel(() -> attempt.finish(SignalType.CANCEL)));
+                responseMono = Mono.firstWithValue(first, second);
+            }
+            responseMono = responseMono
+                    .doOnNext(attempt -> {
+                        hedging.record(System.nanoTime() - startTime);
+                        if (attempt.hedged) {
+                            hedging.won.increment();
+                        }
+                    })
+                    .onErrorResume(e -> Optional.ofNullable(failures.peek())
+                            .map(Mono::just)
+                            .orElseGet(() -> Mono.error(first(e))))
+                    .doOnNext(attempt -> {
+                        boolean primaryFailed = false;
+                        for (Attempt failure : failures) {
+                            primaryFailed |= !failure.hedged;
+                            if (failure != attempt) {
+                                failure.connection.dispose();
+                                outlierDetector.failure(failure.serviceInstance);
+                            }
+                        }
+                        if (attempt.hedged && !primaryFailed) {
+                            outlierDetector.failure(primary);
+                        }
+                    });
+            Duration responseTimeout = Optional.ofNullable(route.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR))
+                    .map(timeout -> Duration.ofMillis(Long.parseLong(String.valueOf(timeout))))
+                    .orElse(httpClientProperties.getResponseTimeout());
+            if (responseTimeout != null) {
+                responseMono = responseMono
+                        .timeout(responseTimeout, Mono.error(new TimeoutException("Response took longer than timeout: " + responseTimeout)))
+                        .onErrorMap(TimeoutException.class, th -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, th.getMessage(), th));
+            }
+            return responseMono;
+        }
+
+        private static Mono<Attempt> successful(Attempt attempt, Queue<Attempt> failures) {
+            if (attempt.response.status().code() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                return Mono.just(attempt);
+            }
+            failures.add(attempt);
+            return Mono.error(new ResponseStatusException(HttpStatus.valueOf(attempt.response.status().code())));
+        }
+
+        private static Throwable first(Throwable e) {
+            return Arrays.stream(e.getSuppressed())
+                    .filter(suppressed -> !(suppressed instanceof NoSuchElementException))
+                    .findFirst()
+                    .orElse(e);
+        }
+
+        private Mono<Attempt> send(Route route, ServerWebExchange exchange, HttpHeaders filtered, Attempt attempt) {
+            ServerHttpRequest request = exchange.getRequest();
+            boolean preserveHost = exchange.getAttributeOrDefault(ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE, false);
+            return Optional.ofNullable(route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR))
+                    .map(connectTimeout -> httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(String.valueOf(connectTimeout))))
+                    .orElse(httpClient)
+                    .headers(headers -> {
+                        filtered.forEach(headers::set);
+                        headers.remove(HttpHeaders.HOST);
+                        if (preserveHost) {
+                            headers.set(HttpHeaders.HOST, request.getHeaders().getFirst(HttpHeaders.HOST));
+                        }
+                    })
+                    .request(io.netty.handler.codec.http.HttpMethod.valueOf(request.getMethodValue()))
+                    .uri(attempt.uri.toASCIIString())
+                    .responseConnection((response, connection) -> {
+                        attempt.latency = System.nanoTime() - attempt.startTime;
+                        attempt.response = response;
+                        attempt.connection = connection;
+                        return Mono.just(attempt);
+                    })
+                    .next();
+        }
+
+        private Attempt acquire(Route route, ServiceInstance serviceInstance, URI requestUrl) {
+            ConcurrencyLimiter.Limit limit = null;
+            if (concurrencyLimiter.isEnabled()) {
+                limit = concurrencyLimiter.tryAcquire(serviceInstance);
+                if (limit == null) {
+                    return null;
+                }
+            }
+            Attempt attempt = new Attempt(serviceInstance, LoadBalancerUriTools.reconstructURI(new DelegatingServiceInstance(serviceInstance, requestUrl.getScheme()), requestUrl), true);
+            attempt.limit = limit;
+            ReactorServiceInstanceLoadBalancer loadBalancer = loadBalancer(route);
+            if (loadBalancer instanceof LoadBalancerConfig.InflightTracking) {
+                attempt.tracking = (LoadBalancerConfig.InflightTracking) loadBalancer;
+                attempt.tracking.onStart(serviceInstance);
+            }
+            return attempt;
+        }
+
+        private ReactorServiceInstanceLoadBalancer loadBalancer(Route route) {
+            LoadBalancerClientFactory clientFactory = loadBalancerClientFactory.getIfAvailable();
+            return clientFactory == null ? null : clientFactory.getInstance(route.getUri().getHost(), ReactorServiceInstanceLoadBalancer.class);
+        }
+
+        private Mono<ServiceInstance> alternate(Route route, ServerWebExchange exchange, ServiceInstance primary) {
+            ReactorServiceInstanceLoadBalancer loadBalancer = loadBalancer(route);
+            if (loadBalancer == null) {
+                return Mono.empty();
+            }
+            DefaultRequest<RequestDataContext> request = new DefaultRequest<>(new RequestDataContext(new RequestData(exchange.getRequest())));
+            String key = ServiceInstances.key(primary);
+            return Flux.range(0, 2)
+                    .concatMap(attempt -> loadBalancer.choose(request).contextWrite(Context.of(ConcurrencyLimiter.SECONDARY_PICK, true)))
+                    .filter(org.springframework.cloud.client.loadbalancer.Response::hasServer)
+                    .map(org.springframework.cloud.client.loadbalancer.Response::getServer)
+                    .filter(serviceInstance -> !key.equals(ServiceInstances.key(serviceInstance)))
+                    .next();
+        }
+
+        @Getter
+        @Setter
+        public static class Config implements HasRouteId {
+            private String routeId;
+            private Duration delay;
+        }
+    }
+
+    static class Hedging {
+        private final RetryConfig.RetryBudget budget;
+        private final double percentile;
+        private final long[] samples;
+        private long count;
+        private volatile long quantile = -1L;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder won = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+
+        Hedging(String routeId, Hedge properties, Optional<MeterRegistry> meterRegistry) {
+            this.budget = new RetryConfig.RetryBudget(properties.getBudget().getRatio(), properties.getBudget());
+            this.percentile = Math.max(0.0D, Math.min(1.0D, properties.getPercentile()));
+            this.samples = new long[Math.max(16, properties.getSamples())];
+            meterRegistry.ifPresent(registry -> {
+                FunctionCounter.builder("route.hedge.sent", sent, LongAdder::sum)
+                        .tags("route", routeId)
+                        .register(registry);
+                FunctionCounter.builder("route.hedge.won", won, LongAdder::sum)
+                        .tags("route", routeId)
+                        .register(registry);
+                FunctionCounter.builder("route.hedge.budget.exhausted", exhausted, LongAdder::sum)
+                        .tags("route", routeId)
+                        .register(registry);
+            });
+        }
+
+        Duration delay(Hedge properties) {
+            long quantile = this.quantile;
+            return quantile < 0L ? null : Duration.ofNanos(Math.max(properties.getMinDelay().toNanos(), quantile));
+        }
+
+        synchronized void record(long latency) {
+            samples[(int) (count++ % samples.length)] = latency;
+            if (count % 16L == 0L && count >= samples.length / 4) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+                Arrays.sort(sorted);
+                quantile = sorted[Math.max(0, (int) Math.ceil(sorted.length * percentile) - 1)];
+            }
+        }
+
+        void deposit() {
+            budget.deposit();
+        }
+
+        boolean withdraw() {
+            if (!budget.canWithdraw()) {
+                exhausted.increment();
+                return false;
+            }
+            budget.withdraw();
+            sent.increment();
+            return true;
+        }
+    }
+
+    static class Attempt {
+        private final ServiceInstance serviceInstance;
+        private final URI uri;
+        private final boolean hedged;
+        private final long startTime = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long latency = -1L;
+        private ConcurrencyLimiter.Limit limit;
+        private LoadBalancerConfig.InflightTracking tracking;
+        private HttpClientResponse response;
+        private Connection connection;
+
+        Attempt(ServiceInstance serviceInstance, URI uri, boolean hedged) {
+            this.serviceInstance = serviceInstance;
+            this.uri = uri;
+            this.hedged = hedged;
+        }
+
+        /**
+         * Gives back the concurrency permit and in-flight slot taken for a hedged attempt, once, whether it
+         * lost the race or served the response.
+         */
+        void finish(SignalType signalType) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            long latency = this.latency < 0L ? System.nanoTime() - startTime : this.latency;
+            if (limit != null) {
+                if (signalType == SignalType.CANCEL) {
+                    limit.release();
+                } else {
+                    limit.release(latency, false);
+                }
+            }
+            if (tracking != null) {
+                tracking.onFinally(serviceInstance, signalType, latency);
+            }
+        }
+
+        boolean abandon() {
+            finish(SignalType.CANCEL);
+            return false;
+        }
+    }
+}
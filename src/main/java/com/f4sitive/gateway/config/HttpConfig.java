@@ -1,36 +1,60 @@
 package com.f4sitive.gateway.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.HttpExchange;
 import org.eclipse.jetty.client.HttpProxy;
 import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.client.SendFailure;
+import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.http.HttpDestinationOverHTTP;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.http.client.reactive.JettyClientHttpConnector;
 import org.springframework.http.client.reactive.JettyResourceFactory;
-import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import reactor.core.publisher.Mono;
 
-import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Slf4j(topic = "HTTP")
 @Configuration(proxyBeanMethods = false)
@@ -39,9 +63,15 @@ public class HttpConfig {
     @Getter
     private final Proxy proxy = new Proxy();
 
+    @Getter
+    private final Destination destination = new Destination();
+
     @Setter
     private long threshold;
 
+    @Setter
+    private DataSize maxContentSize = DataSize.ofBytes(2048L);
+
     @Bean
     WebClientCustomizer noContentCustomizer() {
         return builder -> builder.filter(ExchangeFilterFunction.ofResponseProcessor(clientResponse -> Mono.just(HttpStatus.NO_CONTENT.equals(clientResponse.statusCode()) ? clientResponse.mutate().body("").build() : clientResponse)));
@@ -54,41 +84,75 @@ public class HttpConfig {
 
     @Bean
     @Lazy
-    ClientHttpConnector clientHttpConnector(Optional<JettyResourceFactory> jettyResourceFactory) {
-        HttpClient httpClient = new HttpClient(new SslContextFactory.Client(true)) {
+    ClientHttpConnector clientHttpConnector(Optional<JettyResourceFactory> jettyResourceFactory, Optional<MeterRegistry> meterRegistry) {
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP() {
             @Override
-            public Request newRequest(URI uri) {
-                Request newRequest = super.newRequest(uri);
-                newRequest.attribute("elapsed_time", System.nanoTime());
-                newRequest.onRequestContent((request, content) -> {
-                    try (InputStream inputStream = DefaultDataBufferFactory.sharedInstance.wrap(content.asReadOnlyBuffer()).asInputStream()) {
-                        request.attribute("request_content", new String(StreamUtils.copyToByteArray(inputStream)));
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
+            public HttpDestination newHttpDestination(Origin origin) {
+                Pool pool = destination.pool(origin.getAddress().getHost());
+                Tags tags = Tags.of("destination", origin.getAddress().asString());
+                Timer queueWait = meterRegistry.map(registry -> Timer.builder("http.client.queue.wait")
+                                .tags(tags)
+                                .register(registry))
+                        .orElse(null);
+                HttpDestination httpDestination = new HttpDestinationOverHTTP(getHttpClient(), origin) {
+                    @Override
+                    protected boolean enqueue(Queue<HttpExchange> queue, HttpExchange exchange) {
+                        if (queue.size() >= pool.getMaxRequestsQueued()) {
+                            return false;
+                        }
+                        if (queueWait != null) {
+                            exchange.getRequest().attribute("queued_time", System.nanoTime());
+                        }
+                        return super.enqueue(queue, exchange);
                     }
-                });
-                newRequest.onResponseContent((response, content) -> {
-                    try (InputStream inputStream = DefaultDataBufferFactory.sharedInstance.wrap(content.asReadOnlyBuffer()).asInputStream()) {
-                        response.getRequest().attribute("response_content", new String(StreamUtils.copyToByteArray(inputStream)));
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
+
+                    @Override
+                    protected SendFailure send(Connection connection, HttpExchange exchange) {
+                        if (queueWait != null) {
+                            Optional.ofNullable((Long) exchange.getRequest().getAttributes().get("queued_time"))
+                                    .ifPresent(queuedTime -> queueWait.record(System.nanoTime() - queuedTime, TimeUnit.NANOSECONDS));
+                        }
+                        return super.send(connection, exchange);
                     }
+                };
+                meterRegistry.ifPresent(registry -> {
+                    Gauge.builder("http.client.connections", httpDestination, d -> ((AbstractConnectionPool) d.getConnectionPool()).getActiveConnectionCount())
+                            .tags(tags.and("state", "active"))
+                            .register(registry);
+                    Gauge.builder("http.client.connections", httpDestination, d -> ((AbstractConnectionPool) d.getConnectionPool()).getIdleConnectionCount())
+                            .tags(tags.and("state", "idle"))
+                            .register(registry);
+                    Gauge.builder("http.client.connections", httpDestination, d -> ((AbstractConnectionPool) d.getConnectionPool()).getPendingConnectionCount())
+                            .tags(tags.and("state", "pending"))
+                            .register(registry);
+                    Gauge.builder("http.client.connections.max", httpDestination, d -> ((AbstractConnectionPool) d.getConnectionPool()).getMaxConnectionCount())
+                            .tags(tags)
+                            .register(registry);
+                    Gauge.builder("http.client.requests.queued", httpDestination, HttpDestination::getQueuedRequestCount)
+                            .tags(tags)
+                            .register(registry);
                 });
+                return httpDestination;
+            }
+        };
+        transport.setConnectionPoolFactory(httpDestination -> new DuplexConnectionPool(httpDestination, destination.pool(httpDestination.getHost()).getMaxConnections(), httpDestination));
+        HttpClient httpClient = new HttpClient(transport, new SslContextFactory.Client(true)) {
+            @Override
+            public Request newRequest(URI uri) {
+                Request newRequest = super.newRequest(uri);
+                newRequest.attribute("elapsed_time", System.nanoTime());
+                if (!log.isInfoEnabled()) {
+                    return newRequest;
+                }
+                ContentCapture requestContent = new ContentCapture((int) maxContentSize.toBytes());
+                ContentCapture responseContent = new ContentCapture((int) maxContentSize.toBytes());
+                newRequest.onRequestContent((request, content) -> requestContent.accept(content));
+                newRequest.onResponseContent((response, content) -> responseContent.accept(content));
                 newRequest.onComplete(complete -> {
                     long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - (long) complete.getRequest().getAttributes().get("elapsed_time"));
                     int statusCode = complete.getResponse().getStatus();
                     if (threshold <= elapsedTime || complete.getFailure() != null || Optional.ofNullable(HttpStatus.resolve(statusCode)).map(HttpStatus::isError).orElse(true)) {
-                        StringBuilder requestContent = Optional.ofNullable((String) complete.getRequest().getAttributes().get("request_content"))
-                                .orElseGet(String::new)
-                                .codePoints()
-                                .limit(2048)
-                                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append);
                         HttpHeaders requestHeaders = complete.getRequest().getHeaders().stream().collect(HttpHeaders::new, (headers, httpField) -> headers.add(httpField.getName(), httpField.getValue()), HttpHeaders::putAll);
-                        StringBuilder responseContent = Optional.ofNullable((String) complete.getRequest().getAttributes().get("response_content"))
-                                .orElseGet(String::new)
-                                .codePoints()
-                                .limit(2048)
-                                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append);
                         HttpHeaders responseHeaders = complete.getResponse().getHeaders().stream().collect(HttpHeaders::new, (headers, httpField) -> headers.add(httpField.getName(), httpField.getValue()), HttpHeaders::putAll);
                         log.info("elapsed_time: {}, method: {}, requested_uri: {}, status_code: {}, request_headers: {}, response_headers: {}, request_content: {}, response_content: {}",
                                 elapsedTime,
@@ -115,11 +179,76 @@ public class HttpConfig {
         httpClient.setConnectTimeout(Duration.ofSeconds(2L).toMillis());
         httpClient.setAddressResolutionTimeout(Duration.ofSeconds(2L).toMillis());
         httpClient.setIdleTimeout(Duration.ofMinutes(10L).toMillis());
+        httpClient.setMaxConnectionsPerDestination(destination.getMaxConnections());
+        httpClient.setMaxRequestsQueuedPerDestination(Stream.concat(Stream.of(destination), destination.getHosts().values().stream()).mapToInt(Pool::getMaxRequestsQueued).max().orElse(destination.getMaxRequestsQueued()));
         httpClient.setFollowRedirects(false);
         httpClient.setUserAgentField(null);
         return new JettyClientHttpConnector(httpClient, jettyResourceFactory.orElse(null));
     }
 
+    @Getter
+    @Setter
+    public static class Pool {
+        private int maxConnections = 64;
+        private int maxRequestsQueued = 1024;
+    }
+
+    public static class Destination extends Pool {
+        @Getter
+        private final Map<String, Pool> hosts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        Pool pool(String host) {
+            return hosts.getOrDefault(host, this);
+        }
+    }
+
+    static class ContentCapture {
+        private final int maxSize;
+        private byte[] content;
+        private int length;
+        private boolean truncated;
+
+        ContentCapture(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        void accept(ByteBuffer buffer) {
+            int size = Math.min(buffer.remaining(), this.maxSize - this.length);
+            this.truncated |= size < buffer.remaining();
+            if (size <= 0) {
+                return;
+            }
+            if (this.content == null) {
+                this.content = new byte[Math.min(this.maxSize, Math.max(size, 256))];
+            } else if (this.content.length < this.length + size) {
+                this.content = Arrays.copyOf(this.content, Math.min(this.maxSize, Math.max(this.length + size, this.content.length * 2)));
+            }
+            buffer.duplicate().get(this.content, this.length, size);
+            this.length += size;
+        }
+
+        @Override
+        public String toString() {
+            if (this.content == null) {
+                return "";
+            }
+            return new String(this.content, 0, this.truncated ? utf8Length(this.content, this.length) : this.length, StandardCharsets.UTF_8);
+        }
+
+        static int utf8Length(byte[] content, int length) {
+            int start = length - 1;
+            while (start > 0 && start > length - 4 && (content[start] & 0xC0) == 0x80) {
+                start--;
+            }
+            if (start < 0) {
+                return length;
+            }
+            int lead = content[start] & 0xFF;
+            int size = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            return start + size > length ? start : length;
+        }
+    }
+
     @Getter
     @Setter
     public static class Proxy {
@@ -128,12 +257,143 @@ public class HttpConfig {
         private int port = -1;
         private Set<String> included = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
         private Set<String> excluded = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private int cacheSize = 1024;
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private volatile Map<String, Boolean> decisions;
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private volatile HostMatcher includedMatcher;
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private volatile HostMatcher excludedMatcher;
+
+        public void setIncluded(Set<String> included) {
+            this.included = included;
+            this.includedMatcher = null;
+        }
+
+        public void setExcluded(Set<String> excluded) {
+            this.excluded = excluded;
+            this.excludedMatcher = null;
+        }
 
         public boolean matches(String host) {
-            if (host.equals(LOOPBACK_ADDRESS.getHostName()) || host.equals(this.host) || this.port == -1) {
+            if (host.equalsIgnoreCase(LOOPBACK_ADDRESS.getHostName()) || host.equalsIgnoreCase(this.host) || this.port == -1) {
+                return false;
+            }
+            HostMatcher includedMatcher = this.includedMatcher;
+            HostMatcher excludedMatcher = this.excludedMatcher;
+            Map<String, Boolean> decisions = this.decisions;
+            if (includedMatcher == null || excludedMatcher == null || decisions == null) {
+                includedMatcher = this.includedMatcher = new HostMatcher(this.included);
+                excludedMatcher = this.excludedMatcher = new HostMatcher(this.excluded);
+                decisions = this.decisions = new ConcurrentHashMap<>();
+            }
+            String key = host.toLowerCase(Locale.ROOT);
+            Boolean decision = decisions.get(key);
+            if (decision == null) {
+                decision = includedMatcher.matches(key) && !excludedMatcher.matches(key);
+                if (decisions.size() >= this.cacheSize) {
+                    decisions.clear();
+                }
+                decisions.put(key, decision);
+            }
+            return decision;
+        }
+    }
+
+    static class HostMatcher {
+        private final Set<String> names = new HashSet<>();
+        private final Set<String> suffixes = new HashSet<>();
+        private final Map<Integer, Set<ByteBuffer>> networks = new TreeMap<>();
+        private boolean any;
+
+        HostMatcher(Collection<String> rules) {
+            for (String rule : rules) {
+                String value = rule.trim().toLowerCase(Locale.ROOT);
+                int slash = value.indexOf('/');
+                if ("*".equals(value)) {
+                    this.any = true;
+                } else if (value.startsWith("*.")) {
+                    this.suffixes.add(value.substring(1));
+                } else if (value.startsWith(".")) {
+                    this.suffixes.add(value);
+                } else if (slash > 0) {
+                    byte[] address = address(value.substring(0, slash));
+                    if (address == null) {
+                        throw new IllegalArgumentException("Invalid CIDR rule: " + rule);
+                    }
+                    int prefix = Integer.parseInt(value.substring(slash + 1));
+                    if (prefix < 0 || prefix > address.length * 8) {
+                        throw new IllegalArgumentException("Invalid CIDR prefix: " + rule);
+                    }
+                    this.networks.computeIfAbsent(prefix, key -> new HashSet<>()).add(mask(address, prefix));
+                } else if (!value.isEmpty()) {
+                    this.names.add(value);
+                    Optional.ofNullable(address(value))
+                            .ifPresent(address -> this.networks.computeIfAbsent(address.length * 8, key -> new HashSet<>()).add(ByteBuffer.wrap(address)));
+                }
+            }
+        }
+
+        boolean matches(String host) {
+            if (this.any || this.names.contains(host)) {
+                return true;
+            }
+            for (int index = host.indexOf('.'); index >= 0; index = host.indexOf('.', index + 1)) {
+                if (this.suffixes.contains(host.substring(index))) {
+                    return true;
+                }
+            }
+            if (this.networks.isEmpty()) {
+                return false;
+            }
+            byte[] address = address(host);
+            if (address == null) {
                 return false;
             }
-            return this.included.stream().anyMatch(included -> included.equals(host)) && this.excluded.stream().noneMatch(excluded -> excluded.equals(host));
+            for (Map.Entry<Integer, Set<ByteBuffer>> network : this.networks.entrySet()) {
+                if (network.getKey() <= address.length * 8 && network.getValue().contains(mask(address, network.getKey()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static ByteBuffer mask(byte[] address, int prefix) {
+            byte[] masked = new byte[address.length];
+            for (int index = 0; index < address.length && prefix > 0; index++, prefix -= 8) {
+                masked[index] = (byte) (address[index] & (prefix >= 8 ? 0xff : 0xff << (8 - prefix)));
+            }
+            return ByteBuffer.wrap(masked);
+        }
+
+        static byte[] address(String host) {
+            if (host.indexOf(':') >= 0) {
+                try {
+                    return InetAddress.getByName(host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host).getAddress();
+                } catch (UnknownHostException e) {
+                    return null;
+                }
+            }
+            String[] octets = StringUtils.delimitedListToStringArray(host, ".");
+            if (octets.length != 4) {
+                return null;
+            }
+            byte[] address = new byte[4];
+            for (int index = 0; index < octets.length; index++) {
+                String octet = octets[index];
+                if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                    return null;
+                }
+                int value = Integer.parseInt(octet);
+                if (value > 255) {
+                    return null;
+                }
+                address[index] = (byte) value;
+            }
+            return address;
         }
     }
 }
@@ -1,73 +1,127 @@
 package com.f4sitive.gateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerUriTools;
 import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.DelegatingServiceInstance;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClientSpecification;
 import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.core.DiscoveryClientServiceInstanceListSupplier;
-import org.springframework.cloud.loadbalancer.core.HealthCheckServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.RandomLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
 import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.http.HttpStatus;
-import org.springframework.util.NumberUtils;
-import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import reactor.retry.Repeat;
+import reactor.util.context.Context;
 
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 @Configuration(proxyBeanMethods = false)
+@ConfigurationProperties("loadbalancer")
 public class LoadBalancerConfig {
+    @Getter
+    private final Clients clients = new Clients();
+
+    @Getter
+    private final Probe probe = new Probe();
+
+    @Getter
+    private final Outlier outlier = new Outlier();
+
+    @Getter
+    private final Limit limit = new Limit();
+
     @Bean
     LoadBalancerClientFactory loadBalancerClientFactory(ObjectProvider<List<LoadBalancerClientSpecification>> configurations) {
         LoadBalancerClientFactory clientFactory = new LoadBalancerClientFactory();
         List<LoadBalancerClientSpecification> loadBalancerClientSpecifications = configurations.getIfAvailable(ArrayList::new);
         loadBalancerClientSpecifications.add(new LoadBalancerClientSpecification("default." + ServiceInstanceListSupplier.class.getName(), new Class[]{ServiceInstanceListSupplierConfig.class}));
+        loadBalancerClientSpecifications.add(new LoadBalancerClientSpecification("default." + ReactorServiceInstanceLoadBalancer.class.getName(), new Class[]{ReactorServiceInstanceLoadBalancerConfig.class}));
         clientFactory.setConfigurations(loadBalancerClientSpecifications);
         return clientFactory;
     }
 
-    private static ServiceInstanceListSupplier serviceInstanceListSupplier(ConfigurableApplicationContext context) {
-        LoadBalancerProperties properties = context.getBean(LoadBalancerProperties.class);
-        WebClient webClient = context.getBean(WebClient.Builder.class).build();
+    @Bean
+    HealthProbeScheduler healthProbeScheduler(WebClient.Builder builder, LoadBalancerProperties properties) {
+        return new HealthProbeScheduler(builder.build(), properties.getHealthCheck(), probe);
+    }
+
+    @Bean
+    OutlierDetector outlierDetector() {
+        return new OutlierDetector(outlier);
+    }
+
+    @Bean
+    OutlierDetectionFilter outlierDetectionFilter(OutlierDetector outlierDetector) {
+        return new OutlierDetectionFilter(outlierDetector);
+    }
+
+    @Bean
+    InflightTrackingFilter inflightTrackingFilter(ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory) {
+        return new InflightTrackingFilter(loadBalancerClientFactory);
+    }
+
+    @Bean
+    ConcurrencyLimiter concurrencyLimiter(Optional<MeterRegistry> meterRegistry) {
+        return new ConcurrencyLimiter(limit, meterRegistry);
+    }
+
+    @Bean
+    ConcurrencyLimitFilter concurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter, ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory) {
+        return new ConcurrencyLimitFilter(concurrencyLimiter, loadBalancerClientFactory);
+    }
+
+    private static ServiceInstanceListSupplier serviceInstanceListSupplier(ConfigurableApplicationContext context, ServiceInstanceListSupplier membership) {
         ServiceInstanceListSupplier serviceInstanceListSupplier = ServiceInstanceListSupplier.builder()
-                .withBase(new DelegatingServiceInstanceListSupplier(Optional.ofNullable(context.getBeanProvider(ReactiveDiscoveryClient.class).getIfAvailable())
-                        .map(reactiveDiscoveryClient -> new DiscoveryClientServiceInstanceListSupplier(reactiveDiscoveryClient, context.getEnvironment()))
-                        .orElseGet(() -> Optional.ofNullable(context.getBeanProvider(DiscoveryClient.class).getIfAvailable())
-                                .map(discoveryClient -> new DiscoveryClientServiceInstanceListSupplier(discoveryClient, context.getEnvironment()))
-                                .orElseThrow(() -> new IllegalArgumentException("DiscoveryClient may not be null")))) {
-                    @Override
-                    public Flux<List<ServiceInstance>> get() {
-                        return delegate.get().repeatWhen(Repeat.onlyIf(repeatContext -> properties.getHealthCheck().getRefetchInstances()).fixedBackoff(properties.getHealthCheck().getRefetchInstancesInterval()));
-                    }
-                })
+                .withBase(new HealthProbeServiceInstanceListSupplier(membership, context.getBean(HealthProbeScheduler.class)))
                 .build(context);
         serviceInstanceListSupplier = ServiceInstanceListSupplier.builder()
-                .withBase(new HealthCheckServiceInstanceListSupplier(serviceInstanceListSupplier, properties.getHealthCheck(), (serviceInstance, healthCheckPath) -> {
-                    if (StringUtils.hasText(healthCheckPath) || StringUtils.hasText(serviceInstance.getMetadata().get("health-check.path"))) {
-                        UriComponentsBuilder builder = UriComponentsBuilder.fromUri(serviceInstance.getUri());
-                        builder.path(Optional.ofNullable(serviceInstance.getMetadata().get("health-check.path")).filter(StringUtils::hasText).orElse(healthCheckPath));
-                        Optional.ofNullable(serviceInstance.getMetadata().get("management.port")).map(managementPort -> NumberUtils.parseNumber(managementPort, Integer.class)).ifPresent(builder::port);
-                        return webClient.get()
-                                .uri(builder.build().toUri())
-                                .headers(headers -> Optional.ofNullable(serviceInstance.getMetadata().get("user.name")).ifPresent(username -> headers.setBasicAuth(username, serviceInstance.getMetadata().getOrDefault("user.password", ""))))
-                                .exchangeToMono(clientResponse -> clientResponse.releaseBody().thenReturn(HttpStatus.OK.value() == clientResponse.rawStatusCode()));
-                    } else {
-                        return Mono.just(true);
-                    }
-                }))
+                .withBase(new OutlierDetectionServiceInstanceListSupplier(serviceInstanceListSupplier, context.getBean(OutlierDetector.class)))
+                .build(context);
+        serviceInstanceListSupplier = ServiceInstanceListSupplier.builder()
+                .withBase(new ConcurrencyLimitServiceInstanceListSupplier(serviceInstanceListSupplier, context.getBean(ConcurrencyLimiter.class)))
                 .build(context);
         return ServiceInstanceListSupplier.builder()
                 .withBase(serviceInstanceListSupplier)
@@ -77,8 +131,20 @@ public class LoadBalancerConfig {
     }
 
     protected static class ServiceInstanceListSupplierConfig extends DelegatingServiceInstanceListSupplier {
+        private final MembershipServiceInstanceListSupplier membership;
+
+        @Autowired
         ServiceInstanceListSupplierConfig(ConfigurableApplicationContext context) {
-            super(serviceInstanceListSupplier(context));
+            this(context, new MembershipServiceInstanceListSupplier(context));
+        }
+
+        private ServiceInstanceListSupplierConfig(ConfigurableApplicationContext context, MembershipServiceInstanceListSupplier membership) {
+            super(serviceInstanceListSupplier(context, membership));
+            this.membership = membership;
+        }
+
+        ServiceInstances getMembership() {
+            return membership.membership;
         }
 
         @Override
@@ -91,4 +157,372 @@ public class LoadBalancerConfig {
             return delegate.get(request);
         }
     }
-}
\ No newline at end of file
+
+    static class MembershipServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+        private final LoadBalancerProperties properties;
+        private volatile ServiceInstances membership = ServiceInstances.empty();
+
+        MembershipServiceInstanceListSupplier(ConfigurableApplicationContext context) {
+            super(Optional.ofNullable(context.getBeanProvider(ReactiveDiscoveryClient.class).getIfAvailable())
+                    .map(reactiveDiscoveryClient -> new DiscoveryClientServiceInstanceListSupplier(reactiveDiscoveryClient, context.getEnvironment()))
+                    .orElseGet(() -> Optional.ofNullable(context.getBeanProvider(DiscoveryClient.class).getIfAvailable())
+                            .map(discoveryClient -> new DiscoveryClientServiceInstanceListSupplier(discoveryClient, context.getEnvironment()))
+                            .orElseThrow(() -> new IllegalArgumentException("DiscoveryClient may not be null"))));
+            this.properties = context.getBean(LoadBalancerProperties.class);
+        }
+
+        @Override
+        public Flux<List<ServiceInstance>> get() {
+            return delegate.get().repeatWhen(Repeat.onlyIf(repeatContext -> properties.getHealthCheck().getRefetchInstances()).fixedBackoff(properties.getHealthCheck().getRefetchInstancesInterval()))
+                    .scan(ServiceInstances.empty(), ServiceInstances::update)
+                    .skip(1L)
+                    .distinctUntilChanged(Function.identity(), (previous, next) -> previous == next)
+                    .doOnNext(serviceInstances -> this.membership = serviceInstances)
+                    .<List<ServiceInstance>>map(Function.identity());
+        }
+    }
+
+    static class HealthProbeServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+        private final Flux<List<ServiceInstance>> aliveInstancesReplay;
+        private Disposable healthCheckDisposable;
+
+        HealthProbeServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, HealthProbeScheduler healthProbeScheduler) {
+            super(delegate);
+            this.aliveInstancesReplay = Flux.defer(delegate)
+                    .switchMap(healthProbeScheduler::healthy)
+                    .replay(1)
+                    .refCount(1);
+        }
+
+        @Override
+        public void afterPropertiesSet() throws Exception {
+            super.afterPropertiesSet();
+            Optional.ofNullable(healthCheckDisposable).ifPresent(Disposable::dispose);
+            healthCheckDisposable = aliveInstancesReplay.subscribe();
+        }
+
+        @Override
+        public void destroy() throws Exception {
+            Optional.ofNullable(healthCheckDisposable).ifPresent(Disposable::dispose);
+            super.destroy();
+        }
+
+        @Override
+        public Flux<List<ServiceInstance>> get() {
+            return aliveInstancesReplay;
+        }
+    }
+
+    static class OutlierDetectionServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+        private final OutlierDetector outlierDetector;
+
+        OutlierDetectionServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, OutlierDetector outlierDetector) {
+            super(delegate);
+            this.outlierDetector = outlierDetector;
+        }
+
+        @Override
+        public Flux<List<ServiceInstance>> get() {
+            return delegate.get().map(outlierDetector::filter);
+        }
+    }
+
+    static class ConcurrencyLimitServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+        private final ConcurrencyLimiter concurrencyLimiter;
+
+        ConcurrencyLimitServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, ConcurrencyLimiter concurrencyLimiter) {
+            super(delegate);
+            this.concurrencyLimiter = concurrencyLimiter;
+        }
+
+        @Override
+        public Flux<List<ServiceInstance>> get() {
+            return delegate.get().transformDeferredContextual((serviceInstances, context) -> serviceInstances
+                    .map(list -> concurrencyLimiter.filter(list, !context.hasKey(ConcurrencyLimiter.SECONDARY_PICK))));
+        }
+    }
+
+    static class ConcurrencyLimitFilter implements GlobalFilter, Ordered {
+        private static final int MAX_REPICKS = 2;
+
+        private final ConcurrencyLimiter concurrencyLimiter;
+        private final ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory;
+
+        ConcurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter, ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            this.loadBalancerClientFactory = loadBalancerClientFactory;
+        }
+
+        @Override
+        public int getOrder() {
+            return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            if (!concurrencyLimiter.isEnabled()) {
+                return chain.filter(exchange);
+            }
+            return OutlierDetectionFilter.serviceInstance(exchange)
+                    .map(serviceInstance -> acquire(exchange, serviceInstance, MAX_REPICKS)
+                            .switchIfEmpty(Mono.defer(() -> {
+                                concurrencyLimiter.reject(serviceInstance.getServiceId());
+                                return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Concurrency limit reached for " + serviceInstance.getServiceId()));
+                            }))
+                            .flatMap(limit -> {
+                                ResponseTimer responseTimer = new ResponseTimer(exchange);
+                                return chain.filter(exchange)
+                                        .doOnSuccess(aVoid -> limit.release(responseTimer.latency(), false))
+                                        .doOnError(throwable -> limit.release(responseTimer.latency(), throwable instanceof TimeoutException || throwable.getCause() instanceof TimeoutException))
+                                        .doOnCancel(limit::release);
+                            }))
+                    .orElseGet(() -> chain.filter(exchange));
+        }
+
+        private Mono<ConcurrencyLimiter.Limit> acquire(ServerWebExchange exchange, ServiceInstance serviceInstance, int repicks) {
+            return Mono.defer(() -> {
+                ConcurrencyLimiter.Limit limit = concurrencyLimiter.tryAcquire(serviceInstance);
+                if (limit != null) {
+                    return Mono.just(limit);
+                }
+                return repicks <= 0 ? Mono.empty() : repick(exchange, serviceInstance).flatMap(next -> acquire(exchange, next, repicks - 1));
+            });
+        }
+
+        private Mono<ServiceInstance> repick(ServerWebExchange exchange, ServiceInstance saturated) {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            LoadBalancerClientFactory clientFactory = loadBalancerClientFactory.getIfAvailable();
+            if (route == null || requestUrl == null || clientFactory == null || !"lb".equalsIgnoreCase(route.getUri().getScheme())) {
+                return Mono.empty();
+            }
+            ReactorServiceInstanceLoadBalancer loadBalancer = clientFactory.getInstance(route.getUri().getHost(), ReactorServiceInstanceLoadBalancer.class);
+            if (loadBalancer == null) {
+                return Mono.empty();
+            }
+            String key = ServiceInstances.key(saturated);
+            return loadBalancer.choose(new DefaultRequest<>(new RequestDataContext(new RequestData(exchange.getRequest()))))
+                    .contextWrite(Context.of(ConcurrencyLimiter.SECONDARY_PICK, true))
+                    .filter(Response::hasServer)
+                    .map(Response::getServer)
+                    .filter(serviceInstance -> !key.equals(ServiceInstances.key(serviceInstance)))
+                    .doOnNext(serviceInstance -> {
+                        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, LoadBalancerUriTools.reconstructURI(new DelegatingServiceInstance(serviceInstance, requestUrl.getScheme()), requestUrl));
+                        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(serviceInstance));
+                    });
+        }
+    }
+
+    /**
+     * Measures upstream latency up to the moment the response is committed, so that streaming the body
+     * to a slow client is not mistaken for a slow instance. Falls back to the elapsed time when the
+     * exchange ends before anything was committed.
+     */
+    static class ResponseTimer {
+        private final long startTime = System.nanoTime();
+        private volatile long latency = -1L;
+
+        ResponseTimer(ServerWebExchange exchange) {
+            exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> {
+                if (latency < 0L) {
+                    latency = System.nanoTime() - startTime;
+                }
+            }));
+        }
+
+        long latency() {
+            long latency = this.latency;
+            return latency < 0L ? System.nanoTime() - startTime : latency;
+        }
+    }
+
+    interface InflightTracking {
+        void onStart(ServiceInstance serviceInstance);
+
+        void onFinally(ServiceInstance serviceInstance, SignalType signalType, long latency);
+    }
+
+    static class InflightTrackingFilter implements GlobalFilter, Ordered {
+        private final ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory;
+
+        InflightTrackingFilter(ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory) {
+            this.loadBalancerClientFactory = loadBalancerClientFactory;
+        }
+
+        @Override
+        public int getOrder() {
+            return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 2;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            Optional<ServiceInstance> serviceInstance = OutlierDetectionFilter.serviceInstance(exchange);
+            LoadBalancerClientFactory clientFactory = loadBalancerClientFactory.getIfAvailable();
+            if (route == null || !serviceInstance.isPresent() || clientFactory == null || !"lb".equalsIgnoreCase(route.getUri().getScheme())) {
+                return chain.filter(exchange);
+            }
+            ReactorServiceInstanceLoadBalancer loadBalancer = clientFactory.getInstance(route.getUri().getHost(), ReactorServiceInstanceLoadBalancer.class);
+            if (!(loadBalancer instanceof InflightTracking)) {
+                return chain.filter(exchange);
+            }
+            InflightTracking tracking = (InflightTracking) loadBalancer;
+            return Mono.defer(() -> {
+                tracking.onStart(serviceInstance.get());
+                ResponseTimer responseTimer = new ResponseTimer(exchange);
+                return chain.filter(exchange)
+                        .doFinally(signalType -> tracking.onFinally(serviceInstance.get(), signalType, responseTimer.latency()));
+            });
+        }
+    }
+
+    static class OutlierDetectionFilter implements GlobalFilter, Ordered {
+        private final OutlierDetector outlierDetector;
+
+        OutlierDetectionFilter(OutlierDetector outlierDetector) {
+            this.outlierDetector = outlierDetector;
+        }
+
+        @Override
+        public int getOrder() {
+            return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 3;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            return chain.filter(exchange)
+                    .doOnSuccess(aVoid -> serviceInstance(exchange).ifPresent(serviceInstance -> {
+                        Integer statusCode = exchange.getResponse().getRawStatusCode();
+                        if (statusCode != null && statusCode >= 500) {
+                            outlierDetector.failure(serviceInstance);
+                        } else {
+                            outlierDetector.success(serviceInstance);
+                        }
+                    }))
+                    .doOnError(throwable -> serviceInstance(exchange)
+                            .filter(serviceInstance -> isFailure(throwable))
+                            .ifPresent(outlierDetector::failure));
+        }
+
+        static Optional<ServiceInstance> serviceInstance(ServerWebExchange exchange) {
+            return Optional.ofNullable(exchange.<Response<ServiceInstance>>getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR))
+                    .filter(Response::hasServer)
+                    .map(Response::getServer);
+        }
+
+        static boolean isFailure(Throwable throwable) {
+            if (throwable instanceof ResponseStatusException) {
+                return ((ResponseStatusException) throwable).getStatus().is5xxServerError();
+            }
+            return throwable instanceof TimeoutException
+                    || throwable instanceof IOException
+                    || throwable.getCause() instanceof IOException
+                    || throwable.getCause() instanceof TimeoutException;
+        }
+    }
+
+    protected static class ReactorServiceInstanceLoadBalancerConfig implements ReactorServiceInstanceLoadBalancer, InflightTracking {
+        private final ReactorServiceInstanceLoadBalancer delegate;
+
+        ReactorServiceInstanceLoadBalancerConfig(ConfigurableApplicationContext context) {
+            String serviceId = context.getEnvironment().getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+            ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider = context.getBeanProvider(ServiceInstanceListSupplier.class);
+            Client client = context.getBean(LoadBalancerConfig.class).getClients().client(serviceId);
+            switch (client.getType()) {
+                case RANDOM:
+                    this.delegate = new RandomLoadBalancer(serviceInstanceListSupplierProvider, serviceId);
+                    break;
+                case PEAK_EWMA:
+                    this.delegate = new PeakEwmaLoadBalancer(serviceInstanceListSupplierProvider, client.getDecay());
+                    break;
+                case CONSISTENT_HASH:
+                    this.delegate = new ConsistentHashLoadBalancer(serviceInstanceListSupplierProvider, client.getHash());
+                    break;
+                default:
+                    this.delegate = new RoundRobinLoadBalancer(serviceInstanceListSupplierProvider, serviceId);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Mono<Response<ServiceInstance>> choose(Request request) {
+            return delegate.choose(request);
+        }
+
+        @Override
+        public void onStart(ServiceInstance serviceInstance) {
+            if (delegate instanceof InflightTracking) {
+                ((InflightTracking) delegate).onStart(serviceInstance);
+            }
+        }
+
+        @Override
+        public void onFinally(ServiceInstance serviceInstance, SignalType signalType, long latency) {
+            if (delegate instanceof InflightTracking) {
+                ((InflightTracking) delegate).onFinally(serviceInstance, signalType, latency);
+            }
+        }
+    }
+
+    public enum Type {
+        ROUND_ROBIN, RANDOM, PEAK_EWMA, CONSISTENT_HASH
+    }
+
+    @Getter
+    @Setter
+    public static class Client {
+        private Type type = Type.ROUND_ROBIN;
+        private Duration decay = Duration.ofSeconds(10L);
+        private final Hash hash = new Hash();
+    }
+
+    @Getter
+    @Setter
+    public static class Hash {
+        private List<String> headers = new ArrayList<>(Arrays.asList("User-Id", "Device-Id"));
+        private List<String> cookies = new ArrayList<>();
+        private String path;
+        private int replicas = 160;
+        private double loadFactor = 1.25D;
+    }
+
+    @Getter
+    @Setter
+    public static class Probe {
+        private double jitter = 0.2D;
+        private int maxConcurrency = 16;
+        private Duration ttl = Duration.ofSeconds(30L);
+    }
+
+    @Getter
+    @Setter
+    public static class Outlier {
+        private boolean enabled = true;
+        private int consecutiveErrors = 5;
+        private Duration baseEjectionTime = Duration.ofSeconds(30L);
+        private Duration maxEjectionTime = Duration.ofMinutes(5L);
+        private int maxEjectionPercent = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class Limit {
+        private boolean enabled;
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 1000;
+        private double rttTolerance = 1.5D;
+        private double smoothing = 0.2D;
+        private int longWindow = 600;
+        private double backoffRatio = 0.9D;
+    }
+
+    public static class Clients extends Client {
+        @Getter
+        private final Map<String, Client> services = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        Client client(String serviceId) {
+            return serviceId == null ? this : services.getOrDefault(serviceId, this);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LocalRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> implements DisposableBean {
+    public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+    public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+    private final RateLimiterConfig.Local properties;
+    private final Optional<MeterRegistry> meterRegistry;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private final Disposable eviction;
+
+    public LocalRateLimiter(RateLimiterConfig.Local properties, ConfigurationService configurationService, Optional<MeterRegistry> meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Duration interval = properties.getEvictionInterval().isNegative() || properties.getEvictionInterval().isZero() ? Duration.ofSeconds(10L) : properties.getEvictionInterval();
+        this.eviction = Flux.interval(interval, interval).subscribe(tick -> evict(System.nanoTime()));
+    }
+
+    @Override
+    public void destroy() {
+        eviction.dispose();
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Limiter limiter = limiters.computeIfAbsent(routeId, this::limiter);
+        Rate rate = limiter.rate(getConfig().get(routeId), properties);
+        long now = System.nanoTime();
+        AtomicLong bucket = limiter.bucket(id, now, properties.getMaxKeys());
+        long increment = rate.interval * rate.requestedTokens;
+        while (true) {
+            long tat = bucket.get();
+            long base = tat - now > 0L ? tat : now;
+            long next = base + increment;
+            if (next - now > rate.tolerance) {
+                limiter.denied.increment();
+                return Mono.just(new Response(false, headers(rate, (rate.tolerance - (base - now)) / rate.interval)));
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                limiter.allowed.increment();
+                return Mono.just(new Response(true, headers(rate, (rate.tolerance - (next - now)) / rate.interval)));
+            }
+        }
+    }
+
+    void evict(long now) {
+        limiters.values().forEach(limiter -> limiter.evict(now));
+    }
+
+    private Map<String, String> headers(Rate rate, long remaining) {
+        if (!properties.isIncludeHeaders()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> headers = new HashMap<>(8);
+        headers.put(REMAINING_HEADER, Long.toString(Math.max(0L, remaining)));
+        headers.put(REPLENISH_RATE_HEADER, Integer.toString(rate.replenishRate));
+        headers.put(BURST_CAPACITY_HEADER, Integer.toString(rate.burstCapacity));
+        headers.put(REQUESTED_TOKENS_HEADER, Integer.toString(rate.requestedTokens));
+        return headers;
+    }
+
+    private Limiter limiter(String routeId) {
+        Limiter limiter = new Limiter();
+        meterRegistry.ifPresent(registry -> {
+            FunctionCounter.builder("rate.limiter.requests", limiter.allowed, LongAdder::sum)
+                    .tags("route", routeId, "result", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("rate.limiter.requests", limiter.denied, LongAdder::sum)
+                    .tags("route", routeId, "result", "denied")
+                    .register(registry);
+            Gauge.builder("rate.limiter.keys", limiter.buckets, Map::size)
+                    .tags("route", routeId)
+                    .register(registry);
+        });
+        return limiter;
+    }
+
+    static class Limiter {
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong overflow = new AtomicLong(System.nanoTime());
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder denied = new LongAdder();
+        private volatile Rate rate;
+
+        Rate rate(Config config, RateLimiterConfig.Local properties) {
+            Rate rate = this.rate;
+            if (rate == null || rate.config != config) {
+                rate = new Rate(config, properties);
+                this.rate = rate;
+            }
+            return rate;
+        }
+
+        AtomicLong bucket(String id, long now, int maxKeys) {
+            AtomicLong bucket = buckets.get(id);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() >= maxKeys) {
+                evict(now);
+                if (buckets.size() >= maxKeys) {
+                    return overflow;
+                }
+            }
+            return buckets.computeIfAbsent(id, key -> new AtomicLong(now));
+        }
+
+        void evict(long now) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0L);
+        }
+    }
+
+    static class Rate {
+        private final Config config;
+        private final int replenishRate;
+        private final int burstCapacity;
+        private final int requestedTokens;
+        private final long interval;
+        private final long tolerance;
+
+        Rate(Config config, RateLimiterConfig.Local properties) {
+            this.config = config;
+            Config source = Optional.ofNullable(config).orElseGet(Config::new);
+            this.replenishRate = Math.max(1, Optional.ofNullable(source.getReplenishRate()).orElse(properties.getReplenishRate()));
+            this.requestedTokens = Math.max(1, Optional.ofNullable(source.getRequestedTokens()).orElse(properties.getRequestedTokens()));
+            int burstCapacity = Math.max(1, Optional.ofNullable(source.getBurstCapacity()).orElse(properties.getBurstCapacity()));
+            int replicas = Optional.ofNullable(source.getGlobal()).orElse(properties.isGlobal()) ? Math.max(1, properties.getReplicas()) : 1;
+            this.burstCapacity = Math.max(requestedTokens, (burstCapacity + replicas - 1) / replicas);
+            this.interval = Math.max(1L, TimeUnit.SECONDS.toNanos(replicas) / replenishRate);
+            this.tolerance = interval * this.burstCapacity;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+        private Integer replenishRate;
+        private Integer burstCapacity;
+        private Integer requestedTokens;
+        private Boolean global;
+    }
+}
@@ -0,0 +1,126 @@
+package com.f4sitive.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class OutlierDetector {
+    private final LoadBalancerConfig.Outlier properties;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Map<String, List<ServiceInstance>> snapshots = new ConcurrentHashMap<>();
+
+    public OutlierDetector(LoadBalancerConfig.Outlier properties) {
+        this.properties = properties;
+    }
+
+    public void success(ServiceInstance serviceInstance) {
+        State state = states.get(ServiceInstances.key(serviceInstance));
+        if (state != null) {
+            state.success();
+        }
+    }
+
+    public void failure(ServiceInstance serviceInstance) {
+        failure(serviceInstance, System.nanoTime());
+    }
+
+    void failure(ServiceInstance serviceInstance, long now) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String key = ServiceInstances.key(serviceInstance);
+        State state = states.computeIfAbsent(key, k -> new State());
+        state.serviceId = serviceInstance.getServiceId();
+        if (state.failure(now, properties.getConsecutiveErrors()) && ejectable(serviceInstance.getServiceId(), now)) {
+            long ejectionTime = state.eject(now, properties.getBaseEjectionTime().toNanos(), properties.getMaxEjectionTime().toNanos());
+            log.warn("Ejected {} of service {} for {}ms after {} consecutive errors", key, serviceInstance.getServiceId(), ejectionTime / 1_000_000L, properties.getConsecutiveErrors());
+        }
+    }
+
+    private boolean ejectable(String serviceId, long now) {
+        int size = serviceId == null ? 0 : snapshots.getOrDefault(serviceId, Collections.emptyList()).size();
+        return size > 0 && ejected(serviceId, now) + 1 <= maxEjected(size);
+    }
+
+    private long ejected(String serviceId, long now) {
+        return states.values().stream().filter(state -> serviceId.equals(state.serviceId) && state.isEjected(now)).count();
+    }
+
+    private int maxEjected(int size) {
+        return (int) Math.floor(size * Math.max(0, Math.min(100, properties.getMaxEjectionPercent())) / 100.0D);
+    }
+
+    public List<ServiceInstance> filter(List<ServiceInstance> serviceInstances) {
+        return filter(serviceInstances, System.nanoTime());
+    }
+
+    List<ServiceInstance> filter(List<ServiceInstance> serviceInstances, long now) {
+        if (serviceInstances.isEmpty()) {
+            return serviceInstances;
+        }
+        String serviceId = serviceInstances.get(0).getServiceId();
+        if (serviceId != null && snapshots.put(serviceId, serviceInstances) != serviceInstances) {
+            Set<String> keys = serviceInstances.stream().map(ServiceInstances::key).collect(Collectors.toSet());
+            states.entrySet().removeIf(entry -> serviceId.equals(entry.getValue().serviceId) && !keys.contains(entry.getKey()));
+        }
+        if (states.isEmpty() || !properties.isEnabled()) {
+            return serviceInstances;
+        }
+        int remaining = maxEjected(serviceInstances.size());
+        List<ServiceInstance> filtered = null;
+        for (int index = 0; index < serviceInstances.size(); index++) {
+            ServiceInstance serviceInstance = serviceInstances.get(index);
+            State state = states.get(ServiceInstances.key(serviceInstance));
+            if (state != null) {
+                state.serviceId = serviceInstance.getServiceId();
+            }
+            if (remaining > 0 && state != null && state.isEjected(now)) {
+                remaining--;
+                if (filtered == null) {
+                    filtered = new ArrayList<>(serviceInstances.subList(0, index));
+                }
+            } else if (filtered != null) {
+                filtered.add(serviceInstance);
+            }
+        }
+        return filtered == null ? serviceInstances : filtered;
+    }
+
+    static class State {
+        private volatile String serviceId;
+        private int consecutive;
+        private int ejections;
+        private long ejectedUntil;
+
+        synchronized void success() {
+            this.consecutive = 0;
+        }
+
+        synchronized boolean failure(long now, int threshold) {
+            return !isEjected(now) && ++this.consecutive >= threshold;
+        }
+
+        synchronized long eject(long now, long baseEjectionTime, long maxEjectionTime) {
+            if (this.ejections > 0 && now - this.ejectedUntil > maxEjectionTime) {
+                this.ejections = 0;
+            }
+            long ejectionTime = Math.min(maxEjectionTime, baseEjectionTime << Math.min(this.ejections, 16));
+            this.ejections++;
+            this.consecutive = 0;
+            this.ejectedUntil = now + ejectionTime;
+            return ejectionTime;
+        }
+
+        synchronized boolean isEjected(long now) {
+            return this.ejections > 0 && this.ejectedUntil - now > 0L;
+        }
+    }
+}
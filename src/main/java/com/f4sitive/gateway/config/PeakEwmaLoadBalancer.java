@@ -0,0 +1,128 @@
+package com.f4sitive.gateway.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+public class PeakEwmaLoadBalancer implements ReactorServiceInstanceLoadBalancer, LoadBalancerConfig.InflightTracking {
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    private final double decay;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public PeakEwmaLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider, Duration decay) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.decay = decay.toNanos();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(serviceInstances -> {
+            Response<ServiceInstance> response = choose(serviceInstances);
+            if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+                ((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+            }
+            return response;
+        });
+    }
+
+    Response<ServiceInstance> choose(List<ServiceInstance> serviceInstances) {
+        if (serviceInstances.isEmpty()) {
+            return new EmptyResponse();
+        }
+        if (this.stats.size() > serviceInstances.size() * 2) {
+            Set<String> keys = serviceInstances.stream().map(ServiceInstances::key).collect(Collectors.toSet());
+            this.stats.keySet().retainAll(keys);
+        }
+        if (serviceInstances.size() == 1) {
+            return new DefaultResponse(serviceInstances.get(0));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(serviceInstances.size());
+        int second = random.nextInt(serviceInstances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        long now = System.nanoTime();
+        ServiceInstance a = serviceInstances.get(first);
+        ServiceInstance b = serviceInstances.get(second);
+        return new DefaultResponse(stats(a).cost(now) <= stats(b).cost(now) ? a : b);
+    }
+
+    private Stats stats(ServiceInstance serviceInstance) {
+        return this.stats.computeIfAbsent(ServiceInstances.key(serviceInstance), key -> new Stats(this.decay));
+    }
+
+    @Override
+    public void onStart(ServiceInstance serviceInstance) {
+        stats(serviceInstance).start();
+    }
+
+    @Override
+    public void onFinally(ServiceInstance serviceInstance, SignalType signalType, long latency) {
+        if (signalType == SignalType.CANCEL) {
+            stats(serviceInstance).cancel();
+        } else {
+            stats(serviceInstance).complete(System.nanoTime(), latency);
+        }
+    }
+
+    static class Stats {
+        private final double decay;
+        private long pending;
+        private double cost;
+        private long timestamp = System.nanoTime();
+
+        Stats(double decay) {
+            this.decay = decay;
+        }
+
+        synchronized void start() {
+            this.pending++;
+        }
+
+        synchronized void cancel() {
+            this.pending = Math.max(0L, this.pending - 1L);
+        }
+
+        synchronized void complete(long now, long rtt) {
+            this.pending = Math.max(0L, this.pending - 1L);
+            if (rtt > this.cost) {
+                this.cost = rtt;
+            } else {
+                double weight = Math.exp(-(now - this.timestamp) / this.decay);
+                this.cost = this.cost * weight + rtt * (1.0D - weight);
+            }
+            this.timestamp = now;
+        }
+
+        synchronized double cost(long now) {
+            double weight = Math.exp(-Math.max(0L, now - this.timestamp) / this.decay);
+            double cost = this.cost * weight;
+            if (cost == 0.0D && this.pending != 0L) {
+                return PENALTY + this.pending;
+            }
+            return cost * (this.pending + 1L);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@Configuration(proxyBeanMethods = false)
+@ConfigurationProperties("rate-limiter")
+public class RateLimiterConfig {
+    @Getter
+    private final Local local = new Local();
+
+    @Bean
+    LocalRateLimiter localRateLimiter(ConfigurationService configurationService, Optional<MeterRegistry> meterRegistry) {
+        return new LocalRateLimiter(local, configurationService, meterRegistry);
+    }
+
+    @Bean
+    KeyResolver requestKeyResolver() {
+        return exchange -> Mono.justOrEmpty(key(exchange.getRequest(), local.isTrustIdentityHeaders()));
+    }
+
+    static String key(ServerHttpRequest request, boolean trustIdentityHeaders) {
+        if (trustIdentityHeaders) {
+            String userId = request.getHeaders().getFirst("User-Id");
+            if (StringUtils.hasText(userId)) {
+                return "user:" + userId;
+            }
+            String deviceId = request.getHeaders().getFirst("Device-Id");
+            if (StringUtils.hasText(deviceId)) {
+                return "device:" + deviceId;
+            }
+        }
+        return Optional.ofNullable(request.getRemoteAddress())
+                .map(address -> address.getAddress() == null ? address.getHostString() : address.getAddress().getHostAddress())
+                .map(address -> "address:" + address)
+                .orElse(null);
+    }
+
+    @Getter
+    @Setter
+    public static class Local {
+        private int replenishRate = 100;
+        private int burstCapacity = 200;
+        private int requestedTokens = 1;
+        private boolean global = false;
+        private int replicas = 1;
+        private int maxKeys = 100_000;
+        private Duration evictionInterval = Duration.ofSeconds(10L);
+        private boolean includeHeaders = true;
+        /**
+         * Key on User-Id/Device-Id only when an authenticating layer in front of the gateway sets them;
+         * otherwise a client can rotate the headers to get a fresh bucket per request.
+         */
+        private boolean trustIdentityHeaders = false;
+    }
+}
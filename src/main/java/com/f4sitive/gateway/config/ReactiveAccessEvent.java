@@ -0,0 +1,638 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.access.AccessConstants;
+import ch.qos.logback.access.spi.IAccessEvent;
+import ch.qos.logback.access.spi.ServerAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import ch.qos.logback.core.pattern.PatternLayoutBase;
+import ch.qos.logback.core.pattern.parser.CompositeNode;
+import ch.qos.logback.core.pattern.parser.Node;
+import ch.qos.logback.core.pattern.parser.Parser;
+import ch.qos.logback.core.pattern.parser.SimpleKeywordNode;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.ScanException;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import net.logstash.logback.composite.AbstractNestedJsonProvider;
+import net.logstash.logback.composite.AbstractPatternJsonProvider;
+import net.logstash.logback.composite.JsonProvider;
+import net.logstash.logback.composite.accessevent.RequestHeadersJsonProvider;
+import net.logstash.logback.composite.accessevent.ResponseHeadersJsonProvider;
+import net.logstash.logback.encoder.CompositeJsonEncoder;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+class ReactiveAccessEvent implements IAccessEvent, ServerAdapter {
+    private static final String REMOTE_USER_ATTRIBUTE = "org.apache.catalina.AccessLog.RemoteUser";
+    private static final String[] EMPTY = new String[0];
+
+    private final Fields fields;
+    private final ServerWebExchange exchange;
+    private final long timeStamp;
+    private final long elapsedTime;
+    private final String method;
+    private final String requestURI;
+    private final String rawQuery;
+    private final String protocol;
+    private final InetSocketAddress remoteAddress;
+    private final String remoteUser;
+    private final int statusCode;
+    private final long contentLength;
+    private final String[] requestHeaders;
+    private final String[] responseHeaders;
+    private final String[][] requestParameters;
+    private final String[] cookies;
+    private final String[] attributes;
+    private final AccessLogConfig.ContentCapture input;
+    private final AccessLogConfig.ContentCapture output;
+    private String threadName;
+    private String queryString;
+    private String requestURL;
+    private String requestContent;
+    private String responseContent;
+    private Map<String, String> requestHeaderMap;
+    private Map<String, String> responseHeaderMap;
+    private Map<String, String[]> requestParameterMap;
+
+    ReactiveAccessEvent(Fields fields, ServerWebExchange exchange) {
+        this.fields = fields;
+        this.exchange = exchange;
+        this.timeStamp = System.currentTimeMillis();
+        Long nanoTime = exchange.getAttribute("elapsed_time");
+        this.elapsedTime = nanoTime == null ? -1L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanoTime);
+        this.method = exchange.getRequest().getMethodValue();
+        this.requestURI = exchange.getRequest().getURI().getPath();
+        this.rawQuery = exchange.getRequest().getURI().getRawQuery();
+        this.remoteAddress = exchange.getRequest().getRemoteAddress();
+        this.remoteUser = exchange.getAttribute(REMOTE_USER_ATTRIBUTE);
+        Integer rawStatusCode = exchange.getResponse().getRawStatusCode();
+        this.statusCode = rawStatusCode == null ? SENTINEL : rawStatusCode;
+        this.input = exchange.getAttribute(AccessConstants.LB_INPUT_BUFFER);
+        this.output = exchange.getAttribute(AccessConstants.LB_OUTPUT_BUFFER);
+        this.contentLength = this.output == null ? exchange.getResponse().getHeaders().getContentLength() : this.output.getLength();
+        Object nativeRequest = ServerHttpRequestDecorator.getNativeRequest(exchange.getRequest());
+        Object nativeResponse = ServerHttpResponseDecorator.getNativeResponse(exchange.getResponse());
+        if (nativeRequest instanceof HttpServerRequest) {
+            this.protocol = ((HttpServerRequest) nativeRequest).version().text();
+            this.requestHeaders = snapshot(((HttpServerRequest) nativeRequest).requestHeaders(), fields.requestHeaderNames, fields.allRequestHeaders);
+        } else {
+            this.protocol = NA;
+            this.requestHeaders = snapshot(headers(exchange.getRequest().getHeaders()), fields.requestHeaderNames, fields.allRequestHeaders);
+        }
+        if (nativeResponse instanceof HttpServerResponse) {
+            this.responseHeaders = snapshot(((HttpServerResponse) nativeResponse).responseHeaders(), fields.responseHeaderNames, fields.allResponseHeaders);
+        } else {
+            this.responseHeaders = snapshot(headers(exchange.getResponse().getHeaders()), fields.responseHeaderNames, fields.allResponseHeaders);
+        }
+        this.requestParameters = parameters(exchange, fields.requestParameterNames, fields.allRequestParameters);
+        this.cookies = cookies(exchange, fields.cookieNames);
+        this.attributes = attributes(exchange, fields.attributeNames);
+    }
+
+    private static HttpHeaders headers(org.springframework.http.HttpHeaders headers) {
+        HttpHeaders nettyHeaders = new DefaultHttpHeaders(false);
+        headers.forEach(nettyHeaders::add);
+        return nettyHeaders;
+    }
+
+    private static String[] snapshot(HttpHeaders headers, String[] names, boolean all) {
+        if (all) {
+            String[] snapshot = new String[headers.size() * 2];
+            int index = 0;
+            for (Iterator<Map.Entry<CharSequence, CharSequence>> iterator = headers.iteratorCharSequence(); iterator.hasNext() && index < snapshot.length; index += 2) {
+                Map.Entry<CharSequence, CharSequence> entry = iterator.next();
+                snapshot[index] = entry.getKey().toString();
+                snapshot[index + 1] = entry.getValue().toString();
+            }
+            return snapshot;
+        }
+        if (names.length == 0) {
+            return EMPTY;
+        }
+        String[] snapshot = new String[names.length];
+        for (int index = 0; index < names.length; index++) {
+            List<String> values = headers.getAll(names[index]);
+            snapshot[index] = values.isEmpty() ? null : values.size() == 1 ? values.get(0) : String.join(",", values);
+        }
+        return snapshot;
+    }
+
+    private static String header(String[] snapshot, String[] names, boolean all, String key) {
+        if (all) {
+            String value = null;
+            for (int index = 0; index < snapshot.length; index += 2) {
+                if (key.equalsIgnoreCase(snapshot[index])) {
+                    value = value == null ? snapshot[index + 1] : value + "," + snapshot[index + 1];
+                }
+            }
+            return value;
+        }
+        for (int index = 0; index < names.length; index++) {
+            if (key.equalsIgnoreCase(names[index])) {
+                return snapshot[index];
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> headerMap(String[] snapshot, String[] names, boolean all, Map<String, String> map) {
+        if (all) {
+            for (int index = 0; index < snapshot.length; index += 2) {
+                map.merge(snapshot[index], snapshot[index + 1], (value, next) -> value + "," + next);
+            }
+        } else {
+            for (int index = 0; index < names.length; index++) {
+                if (snapshot[index] != null) {
+                    map.put(names[index], snapshot[index]);
+                }
+            }
+        }
+        return map;
+    }
+
+    private static String[][] parameters(ServerWebExchange exchange, String[] names, boolean all) {
+        if (!all && names.length == 0) {
+            return null;
+        }
+        MultiValueMap<String, String> queryParams = exchange.getRequest().getQueryParams();
+        if (all) {
+            String[][] parameters = new String[queryParams.size() * 2][];
+            int index = 0;
+            for (Map.Entry<String, List<String>> entry : queryParams.entrySet()) {
+                parameters[index++] = new String[]{entry.getKey()};
+                parameters[index++] = entry.getValue().toArray(EMPTY);
+            }
+            return parameters;
+        }
+        String[][] parameters = new String[names.length][];
+        for (int index = 0; index < names.length; index++) {
+            List<String> values = queryParams.get(names[index]);
+            parameters[index] = values == null ? null : values.toArray(EMPTY);
+        }
+        return parameters;
+    }
+
+    private static String[] cookies(ServerWebExchange exchange, String[] names) {
+        if (names.length == 0) {
+            return EMPTY;
+        }
+        String[] cookies = new String[names.length];
+        for (int index = 0; index < names.length; index++) {
+            cookies[index] = Optional.ofNullable(exchange.getRequest().getCookies().getFirst(names[index]))
+                    .map(HttpCookie::getValue)
+                    .orElse(NA);
+        }
+        return cookies;
+    }
+
+    private static String[] attributes(ServerWebExchange exchange, String[] names) {
+        if (names.length == 0) {
+            return EMPTY;
+        }
+        String[] attributes = new String[names.length];
+        for (int index = 0; index < names.length; index++) {
+            Object value = exchange.getAttribute(names[index]);
+            attributes[index] = value == null ? NA : value.toString();
+        }
+        return attributes;
+    }
+
+    private String content(AccessLogConfig.ContentCapture capture) {
+        return capture == null || !capture.isRetained(this.statusCode, this.elapsedTime) ? "" : capture.getContent();
+    }
+
+    @Override
+    public HttpServletRequest getRequest() {
+        return null;
+    }
+
+    @Override
+    public HttpServletResponse getResponse() {
+        return null;
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return this.timeStamp;
+    }
+
+    @Override
+    public long getRequestTimestamp() {
+        return this.elapsedTime < 0 ? -1L : this.timeStamp - this.elapsedTime;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return this.elapsedTime < 0 ? this.elapsedTime : this.elapsedTime / 1000L;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return this.requestURI;
+    }
+
+    @Override
+    public String getRequestURL() {
+        if (this.requestURL == null) {
+            this.requestURL = this.method + " " + this.requestURI + getQueryString() + " " + this.protocol;
+        }
+        return this.requestURL;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return this.remoteAddress == null ? "" : this.remoteAddress.getHostString();
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return this.remoteUser;
+    }
+
+    @Override
+    public String getProtocol() {
+        return this.protocol;
+    }
+
+    @Override
+    public String getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public String getServerName() {
+        return this.exchange.getRequest().getURI().getHost();
+    }
+
+    @Override
+    public String getSessionID() {
+        return NA;
+    }
+
+    @Override
+    public void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    @Override
+    public String getThreadName() {
+        return this.threadName == null ? NA : this.threadName;
+    }
+
+    @Override
+    public String getQueryString() {
+        if (this.queryString == null) {
+            this.queryString = this.rawQuery == null || this.rawQuery.isEmpty() ? "" : "?" + this.rawQuery;
+        }
+        return this.queryString;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        if (this.remoteAddress == null) {
+            return NA;
+        }
+        return this.remoteAddress.getAddress() == null ? this.remoteAddress.getHostString() : this.remoteAddress.getAddress().getHostAddress();
+    }
+
+    @Override
+    public String getRequestHeader(String key) {
+        String value = this.fields.allRequestHeaders || this.fields.isRequestHeader(key)
+                ? header(this.requestHeaders, this.fields.requestHeaderNames, this.fields.allRequestHeaders, key)
+                : String.join(",", this.exchange.getRequest().getHeaders().getOrEmpty(key));
+        return value == null || value.isEmpty() ? NA : value;
+    }
+
+    @Override
+    public Enumeration<String> getRequestHeaderNames() {
+        return Collections.enumeration(getRequestHeaderMap().keySet());
+    }
+
+    @Override
+    public Map<String, String> getRequestHeaderMap() {
+        if (this.requestHeaderMap == null) {
+            this.requestHeaderMap = headerMap(this.requestHeaders, this.fields.requestHeaderNames, this.fields.allRequestHeaders, new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+        }
+        return this.requestHeaderMap;
+    }
+
+    @Override
+    public Map<String, String[]> getRequestParameterMap() {
+        if (this.requestParameterMap == null) {
+            this.requestParameterMap = new LinkedHashMap<>();
+            if (this.requestParameters != null) {
+                if (this.fields.allRequestParameters) {
+                    for (int index = 0; index < this.requestParameters.length; index += 2) {
+                        this.requestParameterMap.put(this.requestParameters[index][0], this.requestParameters[index + 1]);
+                    }
+                } else {
+                    for (int index = 0; index < this.fields.requestParameterNames.length; index++) {
+                        if (this.requestParameters[index] != null) {
+                            this.requestParameterMap.put(this.fields.requestParameterNames[index], this.requestParameters[index]);
+                        }
+                    }
+                }
+            }
+        }
+        return this.requestParameterMap;
+    }
+
+    @Override
+    public String getAttribute(String key) {
+        for (int index = 0; index < this.fields.attributeNames.length; index++) {
+            if (this.fields.attributeNames[index].equals(key)) {
+                return this.attributes[index];
+            }
+        }
+        Object value = this.exchange.getAttribute(key);
+        return value == null ? NA : value.toString();
+    }
+
+    @Override
+    public String[] getRequestParameter(String key) {
+        String[] value = getRequestParameterMap().get(key);
+        if (value == null && !this.fields.allRequestParameters && !this.fields.isRequestParameter(key)) {
+            value = Optional.ofNullable(this.exchange.getRequest().getQueryParams().get(key))
+                    .map(values -> values.toArray(EMPTY))
+                    .orElse(null);
+        }
+        return value == null ? new String[]{NA} : value;
+    }
+
+    @Override
+    public String getCookie(String key) {
+        for (int index = 0; index < this.fields.cookieNames.length; index++) {
+            if (this.fields.cookieNames[index].equals(key)) {
+                return this.cookies[index];
+            }
+        }
+        return Optional.ofNullable(this.exchange.getRequest().getCookies().getFirst(key))
+                .map(HttpCookie::getValue)
+                .orElse(NA);
+    }
+
+    @Override
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
+    @Override
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    @Override
+    public String getRequestContent() {
+        if (this.requestContent == null) {
+            this.requestContent = content(this.input);
+        }
+        return this.requestContent;
+    }
+
+    @Override
+    public String getResponseContent() {
+        if (this.responseContent == null) {
+            this.responseContent = content(this.output);
+        }
+        return this.responseContent;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return Optional.ofNullable(this.exchange.getRequest().getLocalAddress())
+                .map(InetSocketAddress::getPort)
+                .orElse(SENTINEL);
+    }
+
+    @Override
+    public ServerAdapter getServerAdapter() {
+        return this;
+    }
+
+    @Override
+    public String getResponseHeader(String key) {
+        if (this.fields.allResponseHeaders || this.fields.isResponseHeader(key)) {
+            return header(this.responseHeaders, this.fields.responseHeaderNames, this.fields.allResponseHeaders, key);
+        }
+        List<String> values = this.exchange.getResponse().getHeaders().get(key);
+        return values == null ? null : String.join(",", values);
+    }
+
+    @Override
+    public Map<String, String> getResponseHeaderMap() {
+        if (this.responseHeaderMap == null) {
+            this.responseHeaderMap = headerMap(this.responseHeaders, this.fields.responseHeaderNames, this.fields.allResponseHeaders, new LinkedHashMap<>());
+        }
+        return this.responseHeaderMap;
+    }
+
+    @Override
+    public Map<String, String> buildResponseHeaderMap() {
+        return getResponseHeaderMap();
+    }
+
+    @Override
+    public List<String> getResponseHeaderNameList() {
+        return new ArrayList<>(getResponseHeaderMap().keySet());
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+        if (this.fields.requestContent) {
+            getRequestContent();
+        }
+        if (this.fields.responseContent) {
+            getResponseContent();
+        }
+    }
+
+    static class Fields {
+        private final Set<String> requestHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private final Set<String> responseHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private final Set<String> requestParameters = new TreeSet<>();
+        private final Set<String> cookies = new TreeSet<>();
+        private final Set<String> attributes = new TreeSet<>();
+        private boolean allRequestHeaders;
+        private boolean allResponseHeaders;
+        private boolean allRequestParameters;
+        private boolean requestContent;
+        private boolean responseContent;
+        private String[] requestHeaderNames = EMPTY;
+        private String[] responseHeaderNames = EMPTY;
+        private String[] requestParameterNames = EMPTY;
+        private String[] cookieNames = EMPTY;
+        private String[] attributeNames = EMPTY;
+
+        static Fields of(AppenderAttachable<IAccessEvent> appenders) {
+            Fields fields = new Fields();
+            fields.appenders(appenders);
+            fields.requestHeaderNames = fields.requestHeaders.toArray(EMPTY);
+            fields.responseHeaderNames = fields.responseHeaders.toArray(EMPTY);
+            fields.requestParameterNames = fields.requestParameters.toArray(EMPTY);
+            fields.cookieNames = fields.cookies.toArray(EMPTY);
+            fields.attributeNames = fields.attributes.toArray(EMPTY);
+            return fields;
+        }
+
+        boolean isRequestHeader(String name) {
+            return this.requestHeaders.contains(name);
+        }
+
+        boolean isResponseHeader(String name) {
+            return this.responseHeaders.contains(name);
+        }
+
+        boolean isRequestParameter(String name) {
+            return this.requestParameters.contains(name);
+        }
+
+        private void all() {
+            this.allRequestHeaders = true;
+            this.allResponseHeaders = true;
+            this.allRequestParameters = true;
+            this.requestContent = true;
+            this.responseContent = true;
+        }
+
+        private void appenders(AppenderAttachable<IAccessEvent> appenders) {
+            for (Iterator<Appender<IAccessEvent>> iterator = appenders.iteratorForAppenders(); iterator.hasNext(); ) {
+                appender(iterator.next());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void appender(Appender<IAccessEvent> appender) {
+            if (appender instanceof AppenderAttachable) {
+                appenders((AppenderAttachable<IAccessEvent>) appender);
+            } else if (appender instanceof OutputStreamAppender) {
+                encoder(((OutputStreamAppender<IAccessEvent>) appender).getEncoder());
+            } else if (appender instanceof AccessLogSegmentAppender) {
+                this.allRequestHeaders = true;
+                this.allResponseHeaders = true;
+                this.requestContent = true;
+                this.responseContent = true;
+            } else {
+                all();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void encoder(Encoder<IAccessEvent> encoder) {
+            if (encoder instanceof LayoutWrappingEncoder && ((LayoutWrappingEncoder<IAccessEvent>) encoder).getLayout() instanceof PatternLayoutBase) {
+                pattern(((PatternLayoutBase<IAccessEvent>) ((LayoutWrappingEncoder<IAccessEvent>) encoder).getLayout()).getPattern());
+            } else if (encoder instanceof CompositeJsonEncoder) {
+                ((CompositeJsonEncoder<IAccessEvent>) encoder).getProviders().getProviders().forEach(this::provider);
+            } else {
+                all();
+            }
+        }
+
+        private void provider(JsonProvider<IAccessEvent> provider) {
+            if (provider instanceof RequestHeadersJsonProvider) {
+                this.allRequestHeaders = true;
+            } else if (provider instanceof ResponseHeadersJsonProvider) {
+                this.allResponseHeaders = true;
+            } else if (provider instanceof AbstractPatternJsonProvider) {
+                pattern(((AbstractPatternJsonProvider<IAccessEvent>) provider).getPattern());
+            } else if (provider instanceof AbstractNestedJsonProvider) {
+                ((AbstractNestedJsonProvider<IAccessEvent>) provider).getProviders().getProviders().forEach(this::provider);
+            } else if (!provider.getClass().getName().startsWith("net.logstash.logback.composite.")) {
+                all();
+            }
+        }
+
+        private void pattern(String pattern) {
+            try {
+                node(new Parser<IAccessEvent>(pattern).parse());
+            } catch (ScanException e) {
+                all();
+            }
+        }
+
+        private void node(Node node) {
+            for (; node != null; node = node.getNext()) {
+                if (node instanceof CompositeNode) {
+                    node(((CompositeNode) node).getChildNode());
+                }
+                if (node instanceof SimpleKeywordNode) {
+                    List<String> options = ((SimpleKeywordNode) node).getOptions();
+                    keyword(String.valueOf(node.getValue()), options == null || options.isEmpty() ? null : options.get(0));
+                }
+            }
+        }
+
+        private void keyword(String keyword, String option) {
+            switch (keyword) {
+                case "i":
+                case "header":
+                    add(this.requestHeaders, option);
+                    break;
+                case "responseHeader":
+                    add(this.responseHeaders, option);
+                    break;
+                case "reqParameter":
+                case "requestParameter":
+                    add(this.requestParameters, option);
+                    break;
+                case "reqCookie":
+                case "requestCookie":
+                    add(this.cookies, option);
+                    break;
+                case "reqAttribute":
+                case "requestAttribute":
+                    add(this.attributes, option);
+                    break;
+                case "requestContent":
+                    this.requestContent = true;
+                    break;
+                case "responseContent":
+                    this.responseContent = true;
+                    break;
+                case "fullRequest":
+                    this.allRequestHeaders = true;
+                    this.requestContent = true;
+                    break;
+                case "fullResponse":
+                    this.allResponseHeaders = true;
+                    this.responseContent = true;
+                    break;
+                default:
+            }
+        }
+
+        private static void add(Set<String> names, String name) {
+            if (name != null) {
+                names.add(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.f4sitive.gateway.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * Holds {@link ServiceRegistry#register} calls until the gateway has warmed up, so registry
+ * auto-registration stays on (and deregisters on shutdown) without advertising a cold instance.
+ */
+public class RegistrationGate implements BeanPostProcessor, MethodInterceptor {
+    private volatile boolean open;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ServiceRegistry)) {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(!Modifier.isFinal(bean.getClass().getModifiers()));
+        proxyFactory.addAdvice(this);
+        return proxyFactory.getProxy();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!open && "register".equals(invocation.getMethod().getName())) {
+            return null;
+        }
+        return invocation.proceed();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    void open() {
+        open = true;
+    }
+
+    void close() {
+        open = false;
+    }
+}
@@ -0,0 +1,135 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RequestCoalescer {
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public RequestCoalescer(String routeId, Optional<MeterRegistry> meterRegistry) {
+        meterRegistry.ifPresent(registry -> {
+            FunctionCounter.builder("coalesce.requests", leaders, LongAdder::sum)
+                    .tags("route", routeId, "result", "leader")
+                    .register(registry);
+            FunctionCounter.builder("coalesce.requests", shared, LongAdder::sum)
+                    .tags("route", routeId, "result", "shared")
+                    .register(registry);
+            FunctionCounter.builder("coalesce.requests", bypassed, LongAdder::sum)
+                    .tags("route", routeId, "result", "bypass")
+                    .register(registry);
+            Gauge.builder("coalesce.ratio", this, RequestCoalescer::getRatio)
+                    .tags("route", routeId)
+                    .register(registry);
+            Gauge.builder("coalesce.inflight", flights, Map::size)
+                    .tags("route", routeId)
+                    .register(registry);
+        });
+    }
+
+    public double getRatio() {
+        long shared = this.shared.sum();
+        long total = shared + leaders.sum() + bypassed.sum();
+        return total == 0L ? 0.0D : (double) shared / total;
+    }
+
+    public Flight lead(String key) {
+        Flight flight = new Flight(key);
+        if (flights.putIfAbsent(key, flight) != null) {
+            return null;
+        }
+        leaders.increment();
+        return flight;
+    }
+
+    public Mono<Result> join(String key, int maxWaiters) {
+        Flight flight = flights.get(key);
+        if (flight == null || flight.waiters.incrementAndGet() > maxWaiters) {
+            bypassed.increment();
+            return null;
+        }
+        return flight.sink.asMono();
+    }
+
+    void share() {
+        shared.increment();
+    }
+
+    void bypass() {
+        bypassed.increment();
+    }
+
+    public class Flight {
+        private final String key;
+        private final Sinks.One<Result> sink = Sinks.one();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        public void complete(Result result) {
+            flights.remove(key, this);
+            sink.tryEmitValue(result);
+        }
+
+        public void abandon() {
+            flights.remove(key, this);
+            sink.tryEmitEmpty();
+        }
+    }
+
+    public static class Result {
+        private final int status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final Map<String, List<String>> vary = new LinkedHashMap<>();
+
+        public Result(int status, HttpHeaders headers, byte[] body, ServerHttpRequest request) {
+            this.status = status;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            for (String name : ResponseCache.Entry.vary(headers)) {
+                vary.put(name, request.getHeaders().getOrDefault(name, Collections.emptyList()));
+            }
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            for (Map.Entry<String, List<String>> entry : vary.entrySet()) {
+                if (!Objects.equals(entry.getValue(), request.getHeaders().getOrDefault(entry.getKey(), Collections.emptyList()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
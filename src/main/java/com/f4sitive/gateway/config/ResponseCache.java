@@ -0,0 +1,417 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+public class ResponseCache {
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75F, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75F, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final ReadBuffer readBuffer = new ReadBuffer();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long maximumBytes;
+    private long windowBytes;
+    private long mainBytes;
+
+    public ResponseCache(String routeId, long maximumBytes, Optional<MeterRegistry> meterRegistry) {
+        setMaximumBytes(maximumBytes);
+        meterRegistry.ifPresent(registry -> {
+            FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                    .tags("route", routeId, "result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                    .tags("route", routeId, "result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                    .tags("route", routeId)
+                    .register(registry);
+            Gauge.builder("cache.size", this, ResponseCache::getBytes)
+                    .tags("route", routeId)
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+    }
+
+    public long getBytes() {
+        evictionLock.lock();
+        try {
+            return windowBytes + mainBytes;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void setMaximumBytes(long maximumBytes) {
+        evictionLock.lock();
+        try {
+            drain();
+            this.maximumBytes = Math.max(0L, maximumBytes);
+            this.sketch.ensureCapacity(this.maximumBytes);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public Entry get(String key) {
+        Entry entry = data.get(key);
+        if (readBuffer.offer(key) && evictionLock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) {
+        evictionLock.lock();
+        try {
+            drain();
+            discard(key);
+            if (entry.size > maximumBytes) {
+                return;
+            }
+            sketch.increment(key);
+            data.put(key, entry);
+            window.put(key, entry);
+            windowBytes += entry.size;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void remove(String key) {
+        evictionLock.lock();
+        try {
+            discard(key);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    private void drain() {
+        readBuffer.drain(key -> {
+            sketch.increment(key);
+            if (window.get(key) == null) {
+                main.get(key);
+            }
+        });
+    }
+
+    private void discard(String key) {
+        data.remove(key);
+        Entry entry = window.remove(key);
+        if (entry != null) {
+            windowBytes -= entry.size;
+        }
+        entry = main.remove(key);
+        if (entry != null) {
+            mainBytes -= entry.size;
+        }
+    }
+
+    private void evict() {
+        long windowMaximum = maximumBytes / 100L;
+        Iterator<Map.Entry<String, Entry>> victims = main.entrySet().iterator();
+        while (mainBytes > maximumBytes - windowMaximum && victims.hasNext()) {
+            Map.Entry<String, Entry> victim = victims.next();
+            victims.remove();
+            data.remove(victim.getKey());
+            mainBytes -= victim.getValue().size;
+            evictions.increment();
+        }
+        Iterator<Map.Entry<String, Entry>> candidates = window.entrySet().iterator();
+        while (windowBytes > windowMaximum && candidates.hasNext()) {
+            Map.Entry<String, Entry> candidate = candidates.next();
+            candidates.remove();
+            windowBytes -= candidate.getValue().size;
+            if (admit(candidate.getKey(), candidate.getValue())) {
+                main.put(candidate.getKey(), candidate.getValue());
+                mainBytes += candidate.getValue().size;
+            } else {
+                data.remove(candidate.getKey());
+                evictions.increment();
+            }
+        }
+    }
+
+    private boolean admit(String key, Entry candidate) {
+        long mainMaximum = maximumBytes - maximumBytes / 100L;
+        if (candidate.size > mainMaximum) {
+            return false;
+        }
+        int frequency = sketch.frequency(key);
+        List<String> victims = new ArrayList<>();
+        long released = 0L;
+        for (Map.Entry<String, Entry> victim : main.entrySet()) {
+            if (mainBytes - released + candidate.size <= mainMaximum) {
+                break;
+            }
+            if (sketch.frequency(victim.getKey()) >= frequency) {
+                return false;
+            }
+            victims.add(victim.getKey());
+            released += victim.getValue().size;
+        }
+        for (String victim : victims) {
+            data.remove(victim);
+            mainBytes -= main.remove(victim).size;
+            evictions.increment();
+        }
+        return true;
+    }
+
+    public static Map<String, String> directives(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> directives = new LinkedHashMap<>();
+        for (String value : values) {
+            for (String directive : StringUtils.tokenizeToStringArray(value, ",")) {
+                int index = directive.indexOf('=');
+                String name = (index < 0 ? directive : directive.substring(0, index)).trim().toLowerCase(Locale.ROOT);
+                String argument = index < 0 ? "" : StringUtils.trimTrailingCharacter(StringUtils.trimLeadingCharacter(directive.substring(index + 1).trim(), '"'), '"');
+                directives.putIfAbsent(name, argument);
+            }
+        }
+        return directives;
+    }
+
+    static long seconds(String value) {
+        try {
+            return value == null ? -1L : Math.max(0L, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    public static class Entry {
+        private final int status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final long storedAt;
+        private final long initialAge;
+        private final long freshness;
+        private final long staleWhileRevalidate;
+        private final boolean noCache;
+        private final List<String> vary;
+        private final List<List<String>> varyValues;
+        private final long size;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        Entry(int status, HttpHeaders headers, byte[] body, long storedAt, long initialAge, long freshness, Map<String, String> directives, ServerHttpRequest request) {
+            this.status = status;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            this.storedAt = storedAt;
+            this.initialAge = initialAge;
+            this.freshness = freshness;
+            this.staleWhileRevalidate = Math.max(0L, seconds(directives.get("stale-while-revalidate"))) * 1000L;
+            this.noCache = directives.containsKey("no-cache");
+            this.vary = vary(headers);
+            this.varyValues = new ArrayList<>(vary.size());
+            long size = 64L + body.length;
+            for (String name : vary) {
+                List<String> values = request.getHeaders().getOrDefault(name, Collections.emptyList());
+                varyValues.add(values);
+            }
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                size += header.getKey().length() + header.getValue().stream().mapToInt(String::length).sum();
+            }
+            this.size = size;
+        }
+
+        static List<String> vary(HttpHeaders headers) {
+            List<String> vary = new ArrayList<>();
+            for (String value : headers.getOrDefault(HttpHeaders.VARY, Collections.emptyList())) {
+                Collections.addAll(vary, StringUtils.tokenizeToStringArray(value.toLowerCase(Locale.ROOT), ","));
+            }
+            return vary;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return headers.getETag();
+        }
+
+        long age(long now) {
+            return initialAge + Math.max(0L, now - storedAt);
+        }
+
+        boolean isFresh(long age) {
+            return !noCache && age < freshness;
+        }
+
+        boolean isStaleWhileRevalidate(long age) {
+            return !noCache && age < freshness + staleWhileRevalidate;
+        }
+
+        boolean startRevalidation() {
+            return revalidating.compareAndSet(false, true);
+        }
+
+        void endRevalidation() {
+            revalidating.set(false);
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            for (int index = 0; index < vary.size(); index++) {
+                if (!Objects.equals(varyValues.get(index), request.getHeaders().getOrDefault(vary.get(index), Collections.emptyList()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class ReadBuffer {
+        private static final int BUFFER_SIZE = 16;
+        private static final int MASK = BUFFER_SIZE - 1;
+        private final AtomicReferenceArray<String>[] buffers;
+        private final AtomicLong[] writes;
+        private final AtomicLong[] reads;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ReadBuffer() {
+            int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+            this.buffers = new AtomicReferenceArray[stripes];
+            this.writes = new AtomicLong[stripes];
+            this.reads = new AtomicLong[stripes];
+            for (int index = 0; index < stripes; index++) {
+                this.buffers[index] = new AtomicReferenceArray<>(BUFFER_SIZE);
+                this.writes[index] = new AtomicLong();
+                this.reads[index] = new AtomicLong();
+            }
+        }
+
+        boolean offer(String key) {
+            int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & (buffers.length - 1);
+            AtomicLong write = writes[stripe];
+            long tail = write.get();
+            long size = tail - reads[stripe].get();
+            if (size >= BUFFER_SIZE) {
+                return true;
+            }
+            if (write.compareAndSet(tail, tail + 1L)) {
+                buffers[stripe].lazySet((int) (tail & MASK), key);
+                return size + 1L >= BUFFER_SIZE;
+            }
+            return false;
+        }
+
+        void drain(Consumer<String> consumer) {
+            for (int stripe = 0; stripe < buffers.length; stripe++) {
+                AtomicReferenceArray<String> buffer = buffers[stripe];
+                long head = reads[stripe].get();
+                long tail = writes[stripe].get();
+                for (; head < tail; head++) {
+                    int index = (int) (head & MASK);
+                    String key = buffer.get(index);
+                    if (key == null) {
+                        break;
+                    }
+                    buffer.lazySet(index, null);
+                    consumer.accept(key);
+                }
+                reads[stripe].lazySet(head);
+            }
+        }
+    }
+
+    static class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private int[] table = new int[0];
+        private int additions;
+        private int sampleSize;
+
+        void ensureCapacity(long maximumBytes) {
+            int capacity = Integer.highestOneBit((int) Math.max(256L, Math.min(1 << 22, maximumBytes / 1024L)) - 1) << 1;
+            if (table.length >= capacity) {
+                return;
+            }
+            table = new int[capacity];
+            sampleSize = capacity * 10;
+            additions = 0;
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = Integer.MAX_VALUE;
+            for (long seed : SEEDS) {
+                frequency = Math.min(frequency, table[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (long seed : SEEDS) {
+                int index = index(hash, seed);
+                if (table[index] < 15) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int index = 0; index < table.length; index++) {
+                    table[index] >>>= 1;
+                }
+                additions >>>= 1;
+            }
+        }
+
+        private int index(int hash, long seed) {
+            long h = (hash + seed) * seed;
+            h ^= h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.retry.Backoff;
+import reactor.retry.Jitter;
+import reactor.retry.Repeat;
+import reactor.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Configuration(proxyBeanMethods = false)
+@ConfigurationProperties("retry")
+public class RetryConfig {
+    @Getter
+    private final Budget budget = new Budget();
+
+    @Bean
+    RetryBudgetGatewayFilterFactory retryBudgetGatewayFilterFactory(Optional<MeterRegistry> meterRegistry) {
+        return new RetryBudgetGatewayFilterFactory(budget, meterRegistry);
+    }
+
+    @Getter
+    @Setter
+    public static class Budget {
+        private double ratio = 0.2D;
+        private int minRetriesPerSecond = 10;
+        private Duration ttl = Duration.ofSeconds(10L);
+    }
+
+    static class RetryBudget {
+        private final double ratio;
+        private final long reserve;
+        private final Bucket[] buckets;
+
+        RetryBudget(double ratio, Budget properties) {
+            this.ratio = ratio;
+            int seconds = (int) Math.max(1L, properties.getTtl().getSeconds());
+            this.reserve = (long) properties.getMinRetriesPerSecond() * seconds;
+            this.buckets = new Bucket[seconds];
+            for (int index = 0; index < seconds; index++) {
+                this.buckets[index] = new Bucket();
+            }
+        }
+
+        void deposit() {
+            deposit(second());
+        }
+
+        void deposit(long second) {
+            bucket(second).requests.increment();
+        }
+
+        boolean canWithdraw() {
+            return canWithdraw(second());
+        }
+
+        boolean canWithdraw(long now) {
+            long requests = 0L;
+            long retries = 0L;
+            for (Bucket bucket : buckets) {
+                if (now - bucket.second < buckets.length) {
+                    requests += bucket.requests.sum();
+                    retries += bucket.retries.sum();
+                }
+            }
+            return retries < reserve + (long) (requests * ratio);
+        }
+
+        void withdraw() {
+            withdraw(second());
+        }
+
+        void withdraw(long second) {
+            bucket(second).retries.increment();
+        }
+
+        private static long second() {
+            return System.nanoTime() / 1_000_000_000L;
+        }
+
+        private Bucket bucket(long second) {
+            Bucket bucket = buckets[(int) (second % buckets.length)];
+            if (bucket.second != second) {
+                synchronized (bucket) {
+                    if (bucket.second != second) {
+                        bucket.requests.reset();
+                        bucket.retries.reset();
+                        bucket.second = second;
+                    }
+                }
+            }
+            return bucket;
+        }
+
+        static class Bucket {
+            private final LongAdder requests = new LongAdder();
+            private final LongAdder retries = new LongAdder();
+            private volatile long second = Long.MIN_VALUE;
+        }
+    }
+
+    public static class RetryBudgetGatewayFilterFactory extends AbstractGatewayFilterFactory<RetryBudgetGatewayFilterFactory.Config> {
+        private final RetryGatewayFilterFactory retryGatewayFilterFactory = new RetryGatewayFilterFactory();
+        private final Budget properties;
+        private final Optional<MeterRegistry> meterRegistry;
+        private final RetryBudget budget;
+        private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> exhausted = new ConcurrentHashMap<>();
+
+        RetryBudgetGatewayFilterFactory(Budget properties, Optional<MeterRegistry> meterRegistry) {
+            super(Config.class);
+            this.properties = properties;
+            this.meterRegistry = meterRegistry;
+            this.budget = new RetryBudget(properties.getRatio(), properties);
+        }
+
+        @Override
+        public String name() {
+            return "RetryBudget";
+        }
+
+        @Override
+        public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
+            super.setApplicationEventPublisher(publisher);
+            retryGatewayFilterFactory.setApplicationEventPublisher(publisher);
+        }
+
+        @Override
+        public GatewayFilter apply(Config config) {
+            config.validate();
+            String routeId = Optional.ofNullable(config.getRouteId()).orElse("");
+            RetryBudget routeBudget = Optional.ofNullable(config.getBudget()).map(ratio -> new RetryBudget(ratio, properties)).orElse(null);
+            LongAdder retried = retries.computeIfAbsent(routeId, key -> counter("retry.attempts", key));
+            LongAdder denied = exhausted.computeIfAbsent(routeId, key -> counter("retry.budget.exhausted", key));
+            Backoff backoff = Optional.ofNullable(config.getBackoff())
+                    .map(backoffConfig -> Backoff.exponential(backoffConfig.getFirstBackoff(), backoffConfig.getMaxBackoff(), backoffConfig.getFactor(), backoffConfig.isBasedOnPreviousValue()))
+                    .orElse(Backoff.zero());
+            Jitter jitter = config.getJitter() > 0.0D && config.getBackoff() != null ? Jitter.random(Math.min(1.0D, config.getJitter())) : Jitter.noJitter();
+            Repeat<ServerWebExchange> repeat = null;
+            if (!config.getStatuses().isEmpty() || !config.getSeries().isEmpty()) {
+                repeat = Repeat.<ServerWebExchange>onlyIf(repeatContext -> {
+                    ServerWebExchange exchange = repeatContext.applicationContext();
+                    HttpStatus statusCode = exchange.getResponse().getStatusCode();
+                    return statusCode != null
+                            && (config.getStatuses().contains(statusCode) || config.getSeries().contains(statusCode.series()))
+                            && retryable(exchange, config)
+                            && withdraw(routeBudget, denied);
+                })
+                        .doOnRepeat(repeatContext -> {
+                            retried.increment();
+                            reset(repeatContext.applicationContext());
+                        })
+                        .repeatMax(config.getRetries())
+                        .backoff(backoff)
+                        .jitter(jitter);
+            }
+            Retry<ServerWebExchange> retry = null;
+            if (!config.getExceptions().isEmpty()) {
+                retry = Retry.<ServerWebExchange>onlyIf(retryContext -> {
+                    Throwable exception = retryContext.exception();
+                    return config.getExceptions().stream().anyMatch(exceptionClass -> exceptionClass.isInstance(exception) || exceptionClass.isInstance(exception.getCause()))
+                            && retryable(retryContext.applicationContext(), config)
+                            && withdraw(routeBudget, denied);
+                })
+                        .doOnRetry(retryContext -> {
+                            retried.increment();
+                            reset(retryContext.applicationContext());
+                        })
+                        .retryMax(config.getRetries())
+                        .backoff(backoff)
+                        .jitter(jitter);
+            }
+            GatewayFilter gatewayFilter = retryGatewayFilterFactory.apply(config.getRouteId(), repeat, retry);
+            return (exchange, chain) -> {
+                budget.deposit();
+                Optional.ofNullable(routeBudget).ifPresent(RetryBudget::deposit);
+                return gatewayFilter.filter(exchange, chain);
+            };
+        }
+
+        private static void reset(ServerWebExchange exchange) {
+            ServerWebExchangeUtils.reset(exchange);
+            ServerWebExchangeUtils.removeAlreadyRouted(exchange);
+        }
+
+        private boolean retryable(ServerWebExchange exchange, Config config) {
+            return !retryGatewayFilterFactory.exceedsMaxIterations(exchange, config)
+                    && config.getMethods().contains(exchange.getRequest().getMethod());
+        }
+
+        private boolean withdraw(RetryBudget routeBudget, LongAdder denied) {
+            if (!budget.canWithdraw() || (routeBudget != null && !routeBudget.canWithdraw())) {
+                denied.increment();
+                return false;
+            }
+            budget.withdraw();
+            Optional.ofNullable(routeBudget).ifPresent(RetryBudget::withdraw);
+            return true;
+        }
+
+        private LongAdder counter(String name, String routeId) {
+            LongAdder counter = new LongAdder();
+            meterRegistry.ifPresent(registry -> FunctionCounter.builder(name, counter, LongAdder::sum)
+                    .tags("route", routeId)
+                    .register(registry));
+            return counter;
+        }
+
+        @Getter
+        @Setter
+        public static class Config extends RetryGatewayFilterFactory.RetryConfig {
+            private double jitter = 0.5D;
+            private Double budget;
+
+            public Config() {
+                setMethods(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
+                setBackoff(Duration.ofMillis(50L), Duration.ofMillis(500L), 2, false);
+            }
+        }
+    }
+}
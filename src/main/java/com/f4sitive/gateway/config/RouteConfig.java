@@ -1,11 +1,6 @@
 package com.f4sitive.gateway.config;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.swagger.v3.oas.models.OpenAPI;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
@@ -34,6 +29,8 @@ import java.util.*;
 
 @Configuration(proxyBeanMethods = false)
 public class RouteConfig {
+    static final String ROUTE_PREFIX_ATTR = RouteConfig.class.getName() + ".routePrefix";
+
     @Bean
     AbstractGatewayFilterFactory<Object> stickySessionGatewayFilterFactory(Optional<LoadBalancerProperties> properties) {
         return new AbstractGatewayFilterFactory<Object>() {
@@ -46,16 +43,7 @@ public class RouteConfig {
                                     .filter(Response::hasServer)
                                     .map(response -> {
                                         ResponseCookie.ResponseCookieBuilder builder = ResponseCookie.from(stickySession.getInstanceIdCookieName(), response.getServer().getInstanceId());
-                                        Optional.ofNullable(exchange.<URI>getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR))
-                                                .map(URI::getPath)
-                                                .map(requestUriPath -> StringUtils.trimTrailingCharacter(requestUriPath, '/'))
-                                                .filter(StringUtils::hasText)
-                                                .flatMap(requestUriPath -> Optional.ofNullable(exchange.<Collection<URI>>getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR))
-                                                        .flatMap(originalUris -> originalUris.stream().map(URI::getPath).map(originalUriPath -> StringUtils.trimTrailingCharacter(originalUriPath, '/')).filter(StringUtils::hasText).findFirst())
-                                                        .filter(originalUriPath -> requestUriPath.length() <= originalUriPath.length())
-                                                        .map(originalUriPath -> originalUriPath.replaceAll(requestUriPath + "$", ""))
-                                                        .filter(StringUtils::hasText))
-                                                .ifPresent(builder::path);
+                                        routePrefix(exchange).ifPresent(builder::path);
                                         return builder.build();
                                     }))
                             .ifPresent(responseCookie -> exchange.getResponse().addCookie(responseCookie));
@@ -76,78 +64,64 @@ public class RouteConfig {
         return new PropertiesRouteDefinitionLocator(properties);
     }
 
+    static Optional<String> routePrefix(ServerWebExchange exchange) {
+        String routePrefix = (String) exchange.getAttributes().computeIfAbsent(ROUTE_PREFIX_ATTR, key -> routePrefix(exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR), exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR)));
+        return routePrefix.isEmpty() ? Optional.empty() : Optional.of(routePrefix);
+    }
+
+    /**
+     * The part of the first non-root original path that was stripped before forwarding. When the forwarded path
+     * is not a suffix of it (the path was rewritten rather than stripped) the whole original path is the prefix,
+     * which is what sticky-session cookie paths and Swagger base paths have always been scoped to; a forwarded
+     * path longer than the original yields no prefix.
+     */
+    static String routePrefix(URI requestUrl, Collection<URI> originalUrls) {
+        String requestUriPath = requestUrl == null ? null : requestUrl.getPath();
+        int requestLength = trimmedLength(requestUriPath);
+        if (requestLength == 0 || originalUrls == null) {
+            return "";
+        }
+        for (URI originalUrl : originalUrls) {
+            String originalUriPath = originalUrl.getPath();
+            int originalLength = trimmedLength(originalUriPath);
+            if (originalLength == 0) {
+                continue;
+            }
+            if (requestLength > originalLength) {
+                return "";
+            }
+            if (!originalUriPath.regionMatches(originalLength - requestLength, requestUriPath, 0, requestLength)) {
+                return originalUriPath.substring(0, originalLength);
+            }
+            return originalUriPath.substring(0, originalLength - requestLength);
+        }
+        return "";
+    }
+
+    private static int trimmedLength(String path) {
+        int length = path == null ? 0 : path.length();
+        while (length > 0 && path.charAt(length - 1) == '/') {
+            length--;
+        }
+        return length;
+    }
+
     @Bean
     RewriteFunction<JsonNode, JsonNode> swaggerRewriteFunction(OpenAPI openAPI) {
-        JsonNode securitySchemes = new ObjectMapper()
-                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-                .configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true)
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-                .configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, true)
-                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
-                .valueToTree(Optional.ofNullable(openAPI.getComponents().getSecuritySchemes()).orElse(Collections.emptyMap()));
-        Optional.ofNullable(securitySchemes.get("OAuth2"))
-                .filter(JsonNode::isObject)
-                .flatMap(oauth2 -> Optional.ofNullable(oauth2.get("flows"))
-                        .filter(JsonNode::isObject)
-                        .map(flows -> flows.get("authorizationCode"))
-                        .filter(JsonNode::isObject))
-                .ifPresent(authorizationCode -> {
-                    ((ObjectNode) securitySchemes.get("OAuth2")).put("flow", "accessCode");
-                    ((ObjectNode) securitySchemes.get("OAuth2")).setAll((ObjectNode) authorizationCode);
-                });
+        SwaggerRewriter swaggerRewriter = new SwaggerRewriter(openAPI);
         return (exchange, jsonNode) -> Optional.ofNullable(jsonNode)
                 .filter(JsonNode::isObject)
-                .map(readTree -> {
-                    UriComponentsBuilder builder = UriComponentsBuilder.fromUri(exchange.getRequest().getURI());
-                    Optional.ofNullable(exchange.<URI>getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR))
-                            .map(URI::getPath)
-                            .map(requestUriPath -> StringUtils.trimTrailingCharacter(requestUriPath, '/'))
-                            .filter(StringUtils::hasText)
-                            .flatMap(requestUriPath -> Optional.ofNullable(exchange.<Collection<URI>>getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR))
-                                    .flatMap(originalUris -> originalUris.stream().map(URI::getPath).map(originalUriPath -> StringUtils.trimTrailingCharacter(originalUriPath, '/')).filter(StringUtils::hasText).findFirst())
-                                    .filter(originalUriPath -> requestUriPath.length() <= originalUriPath.length())
-                                    .map(originalUriPath -> originalUriPath.replaceAll(requestUriPath + "$", ""))
-                                    .filter(StringUtils::hasText))
-                            .ifPresent(builder::replacePath);
-                    URI uri = builder.query(null).build(Collections.emptyMap());
-                    Optional.ofNullable(readTree.get("servers"))
-                            .filter(JsonNode::isArray)
-                            .map(JsonNode::elements)
-                            .ifPresent(servers -> servers.forEachRemaining(element -> Optional.ofNullable(element).filter(JsonNode::isObject).ifPresent(server -> ((ObjectNode) server).put("url", uri.toString()))));
-                    ((ObjectNode) readTree).put("host", uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort()));
-                    ((ObjectNode) readTree).put("basePath", uri.getPath());
-                    ((ObjectNode) readTree).set("securityDefinitions", securitySchemes);
-                    ((ObjectNode) readTree).putArray("security").add(securitySchemes);
-                    Optional.ofNullable(readTree.get("components"))
-                            .filter(JsonNode::isObject)
-                            .ifPresent(components -> ((ObjectNode) components).set("securitySchemes", securitySchemes));
-                    Optional.ofNullable(readTree.get("paths"))
-                            .filter(JsonNode::isObject)
-                            .ifPresent(paths -> {
-                                for (Iterator<JsonNode> path = paths.iterator(); path.hasNext(); ) {
-                                    for (JsonNode method : path.next()) {
-                                        Optional.ofNullable(method.get("parameters"))
-                                                .filter(JsonNode::isArray)
-                                                .ifPresent(parameters -> {
-                                                    for (Iterator<JsonNode> parameter = parameters.iterator(); parameter.hasNext(); ) {
-                                                        JsonNode next = parameter.next();
-                                                        if (next.isObject() && Optional.ofNullable(next.get("in")).map(in -> "header".equals(in.asText())).orElse(false)) {
-                                                            Optional.ofNullable(next.get("name"))
-                                                                    .filter(name -> "User-Id".equals(name.asText()) || "Device-Id".equals(name.asText()) || "Auth-Token".equals(name.asText()))
-                                                                    .ifPresent(name -> parameter.remove());
-                                                        }
-                                                    }
-                                                });
-                                    }
-                                }
-                            });
-                    return readTree;
-                })
+                .map(readTree -> swaggerRewriter.rewrite(readTree, swaggerUri(exchange)))
                 .map(Mono::just)
                 .orElse(Mono.empty());
     }
 
+    static URI swaggerUri(ServerWebExchange exchange) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUri(exchange.getRequest().getURI());
+        routePrefix(exchange).ifPresent(builder::replacePath);
+        return builder.query(null).build(Collections.emptyMap());
+    }
+
     @Bean
     AbstractChangeRequestUriGatewayFilterFactory<Object> hostChangeRequestUriGatewayFilterFactory() {
         return new AbstractChangeRequestUriGatewayFilterFactory<Object>(Object.class) {
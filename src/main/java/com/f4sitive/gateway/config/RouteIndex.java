@@ -0,0 +1,173 @@
+package com.f4sitive.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+public class RouteIndex implements ApplicationListener<RefreshRoutesResultEvent> {
+    private final RouteLocator routeLocator;
+    private final RouteDefinitionLocator routeDefinitionLocator;
+    private volatile Index index;
+
+    public RouteIndex(RouteLocator routeLocator, RouteDefinitionLocator routeDefinitionLocator) {
+        this.routeLocator = routeLocator;
+        this.routeDefinitionLocator = routeDefinitionLocator;
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        if (!event.isSuccess()) {
+            return;
+        }
+        Mono.zip(routeLocator.getRoutes().collectList(), routeDefinitionLocator.getRouteDefinitions().collectMap(RouteDefinition::getId))
+                .map(tuple -> new Index(tuple.getT1(), tuple.getT2()))
+                .subscribe(index -> {
+                    this.index = index;
+                    log.debug("Indexed {} route(s), {} evaluated linearly", index.routes.length, index.fallback.cardinality());
+                }, e -> {
+                    this.index = null;
+                    log.warn("Failed to index routes", e);
+                });
+    }
+
+    public List<Route> candidates(ServerHttpRequest request) {
+        Index index = this.index;
+        String path = request.getPath().pathWithinApplication().value();
+        String host = Optional.ofNullable(request.getHeaders().getFirst(HttpHeaders.HOST)).orElse("");
+        if (index == null || path.indexOf('%') >= 0 || path.indexOf(';') >= 0 || path.contains("//") || host.contains("..")) {
+            return null;
+        }
+        int hostLength = host.length();
+        while (hostLength > 0 && host.charAt(hostLength - 1) == '.') {
+            hostLength--;
+        }
+        BitSet matches = (BitSet) index.fallback.clone();
+        index.hosts.collect(host, hostLength, true, matches);
+        index.paths.collect(path, path.length(), false, matches);
+        List<Route> candidates = new ArrayList<>(matches.cardinality());
+        for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+            candidates.add(index.routes[position]);
+        }
+        return candidates;
+    }
+
+    static class Index {
+        private final Route[] routes;
+        private final BitSet fallback = new BitSet();
+        private final Node hosts = new Node();
+        private final Node paths = new Node();
+
+        Index(List<Route> routes, Map<String, RouteDefinition> definitions) {
+            this.routes = routes.toArray(new Route[0]);
+            for (int position = 0; position < this.routes.length; position++) {
+                RouteDefinition definition = definitions.get(this.routes[position].getId());
+                if (definition == null || !(index(definition, "Host", hosts, true, position) || index(definition, "Path", paths, false, position))) {
+                    fallback.set(position);
+                }
+            }
+        }
+
+        private static boolean index(RouteDefinition definition, String name, Node root, boolean reversed, int position) {
+            for (PredicateDefinition predicate : definition.getPredicates()) {
+                if (name.equals(predicate.getName())) {
+                    List<String> keys = reversed ? hostKeys(predicate.getArgs().values()) : pathKeys(predicate.getArgs());
+                    if (keys != null) {
+                        keys.forEach(key -> root.add(key, reversed, position));
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        static List<String> hostKeys(Collection<String> patterns) {
+            List<String> keys = new ArrayList<>();
+            for (String pattern : patterns) {
+                if (pattern == null || pattern.contains("#{") || pattern.contains("..")) {
+                    return null;
+                }
+                int end = pattern.length();
+                while (end > 0 && pattern.charAt(end - 1) == '.') {
+                    end--;
+                }
+                int start = end;
+                while (start > 0 && !isWildcard(pattern.charAt(start - 1))) {
+                    start--;
+                }
+                if (start > 0 && start < end && pattern.charAt(start) == '.') {
+                    start++;
+                }
+                keys.add(pattern.substring(start, end));
+            }
+            return keys.isEmpty() ? null : keys;
+        }
+
+        static List<String> pathKeys(Map<String, String> args) {
+            List<String> keys = new ArrayList<>();
+            for (Map.Entry<String, String> arg : args.entrySet()) {
+                String pattern = arg.getValue();
+                if (arg.getKey().startsWith("match") || "true".equalsIgnoreCase(pattern) || "false".equalsIgnoreCase(pattern)) {
+                    continue;
+                }
+                if (pattern == null || !pattern.startsWith("/") || pattern.contains("#{")) {
+                    return null;
+                }
+                int end = 0;
+                while (end < pattern.length() && !isWildcard(pattern.charAt(end))) {
+                    end++;
+                }
+                while (end > 0 && pattern.charAt(end - 1) == '/') {
+                    end--;
+                }
+                keys.add(pattern.substring(0, end));
+            }
+            return keys.isEmpty() ? null : keys;
+        }
+
+        private static boolean isWildcard(char c) {
+            return c == '*' || c == '?' || c == '{' || c == '}';
+        }
+    }
+
+    static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final BitSet routes = new BitSet();
+
+        void add(String key, boolean reversed, int position) {
+            Node node = this;
+            for (int index = 0; index < key.length(); index++) {
+                node = node.children.computeIfAbsent(key.charAt(reversed ? key.length() - 1 - index : index), c -> new Node());
+            }
+            node.routes.set(position);
+        }
+
+        void collect(String value, int length, boolean reversed, BitSet matches) {
+            Node node = this;
+            matches.or(node.routes);
+            for (int index = 0; index < length; index++) {
+                node = node.children.get(value.charAt(reversed ? length - 1 - index : index));
+                if (node == null) {
+                    return;
+                }
+                matches.or(node.routes);
+            }
+        }
+    }
+}
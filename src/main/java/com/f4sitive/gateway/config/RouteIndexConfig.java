@@ -0,0 +1,74 @@
+package com.f4sitive.gateway.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Configuration(proxyBeanMethods = false)
+public class RouteIndexConfig {
+    @Bean
+    RouteIndex routeIndex(RouteLocator routeLocator, RouteDefinitionLocator routeDefinitionLocator) {
+        return new RouteIndex(routeLocator, routeDefinitionLocator);
+    }
+
+    @Bean
+    static BeanPostProcessor routePredicateHandlerMappingBeanPostProcessor(ObjectProvider<FilteringWebHandler> webHandler, ObjectProvider<RouteLocator> routeLocator, ObjectProvider<GlobalCorsProperties> globalCorsProperties, ObjectProvider<RouteIndex> routeIndex, Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof RoutePredicateHandlerMapping && !(bean instanceof IndexedRoutePredicateHandlerMapping)) {
+                    IndexedRoutePredicateHandlerMapping handlerMapping = new IndexedRoutePredicateHandlerMapping(webHandler.getObject(), routeLocator.getObject(), globalCorsProperties.getObject(), environment, routeIndex.getObject());
+                    handlerMapping.setApplicationContext(((RoutePredicateHandlerMapping) bean).getApplicationContext());
+                    return handlerMapping;
+                } else {
+                    return bean;
+                }
+            }
+        };
+    }
+
+    static class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping {
+        private final RouteIndex routeIndex;
+
+        IndexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator, GlobalCorsProperties globalCorsProperties, Environment environment, RouteIndex routeIndex) {
+            super(webHandler, routeLocator, globalCorsProperties, environment);
+            this.routeIndex = routeIndex;
+        }
+
+        @Override
+        protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+            List<Route> candidates = routeIndex.candidates(exchange.getRequest());
+            if (candidates == null) {
+                return super.lookupRoute(exchange);
+            }
+            return Flux.fromIterable(candidates)
+                    .concatMap(route -> Mono.just(route)
+                            .filterWhen(r -> {
+                                exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                                return r.getPredicate().apply(exchange);
+                            })
+                            .doOnError(e -> logger.error("Error applying predicate for route: " + route.getId(), e))
+                            .onErrorResume(e -> Mono.empty()))
+                    .next()
+                    .map(route -> {
+                        validateRoute(route, exchange);
+                        return route;
+                    });
+        }
+    }
+}
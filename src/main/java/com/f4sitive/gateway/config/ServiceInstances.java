@@ -0,0 +1,86 @@
+package com.f4sitive.gateway.config;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+
+public final class ServiceInstances extends AbstractList<ServiceInstance> implements RandomAccess {
+    private static final ServiceInstances EMPTY = new ServiceInstances(new ServiceInstance[0], Collections.emptyMap());
+
+    private final ServiceInstance[] serviceInstances;
+    private final Map<String, ServiceInstance> index;
+
+    private ServiceInstances(ServiceInstance[] serviceInstances, Map<String, ServiceInstance> index) {
+        this.serviceInstances = serviceInstances;
+        this.index = index;
+    }
+
+    public static String key(ServiceInstance serviceInstance) {
+        return Optional.ofNullable(serviceInstance.getInstanceId()).orElseGet(() -> serviceInstance.getHost() + ":" + serviceInstance.getPort());
+    }
+
+    public static ServiceInstances empty() {
+        return EMPTY;
+    }
+
+    public static ServiceInstances of(List<ServiceInstance> serviceInstances) {
+        if (serviceInstances instanceof ServiceInstances) {
+            return (ServiceInstances) serviceInstances;
+        }
+        if (serviceInstances.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, ServiceInstance> index = new HashMap<>(serviceInstances.size() * 2);
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            index.putIfAbsent(key(serviceInstance), serviceInstance);
+        }
+        return new ServiceInstances(serviceInstances.toArray(new ServiceInstance[0]), Collections.unmodifiableMap(index));
+    }
+
+    public ServiceInstances update(List<ServiceInstance> serviceInstances) {
+        if (serviceInstances.size() != this.serviceInstances.length) {
+            return of(serviceInstances);
+        }
+        Set<String> keys = new HashSet<>(this.index.size() * 2);
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            String key = key(serviceInstance);
+            if (!same(this.index.get(key), serviceInstance)) {
+                return of(serviceInstances);
+            }
+            keys.add(key);
+        }
+        return keys.size() == this.index.size() ? this : of(serviceInstances);
+    }
+
+    static boolean same(ServiceInstance current, ServiceInstance next) {
+        return current != null
+                && current.getPort() == next.getPort()
+                && current.isSecure() == next.isSecure()
+                && Objects.equals(current.getHost(), next.getHost())
+                && Objects.equals(current.getScheme(), next.getScheme())
+                && Objects.equals(current.getMetadata(), next.getMetadata());
+    }
+
+    public ServiceInstance getInstance(String key) {
+        return index.get(key);
+    }
+
+    @Override
+    public ServiceInstance get(int index) {
+        return serviceInstances[index];
+    }
+
+    @Override
+    public int size() {
+        return serviceInstances.length;
+    }
+}
@@ -0,0 +1,219 @@
+package com.f4sitive.gateway.config;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import lombok.Getter;
+import lombok.Setter;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Configuration(proxyBeanMethods = false)
+public class SwaggerRewriteConfig {
+    @Bean
+    SwaggerRewriteGatewayFilterFactory swaggerRewriteGatewayFilterFactory(OpenAPI openAPI) {
+        return new SwaggerRewriteGatewayFilterFactory(new SwaggerRewriter(openAPI));
+    }
+
+    public static class SwaggerRewriteGatewayFilterFactory extends AbstractGatewayFilterFactory<SwaggerRewriteGatewayFilterFactory.Config> {
+        private final SwaggerRewriter swaggerRewriter;
+        private final Map<String, Map<String, SwaggerDocument>> documents = new ConcurrentHashMap<>();
+
+        SwaggerRewriteGatewayFilterFactory(SwaggerRewriter swaggerRewriter) {
+            super(Config.class);
+            this.swaggerRewriter = swaggerRewriter;
+        }
+
+        @Override
+        public List<String> shortcutFieldOrder() {
+            return Collections.singletonList("maxEntries");
+        }
+
+        @Override
+        public GatewayFilter apply(Config config) {
+            int maxEntries = Math.max(1, config.getMaxEntries());
+            Map<String, SwaggerDocument> documents = this.documents.computeIfAbsent(Optional.ofNullable(config.getRouteId()).orElse(""), routeId -> Collections.synchronizedMap(new LinkedHashMap<String, SwaggerDocument>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SwaggerDocument> eldest) {
+                    return size() > maxEntries;
+                }
+            }));
+            return new OrderedGatewayFilter((exchange, chain) -> {
+                ServerHttpRequest request = exchange.getRequest();
+                String key = request.getURI().toString();
+                SwaggerDocument document = documents.get(key);
+                HttpHeaders headers = new HttpHeaders();
+                headers.putAll(request.getHeaders());
+                headers.remove(HttpHeaders.ACCEPT_ENCODING);
+                headers.remove(HttpHeaders.IF_NONE_MATCH);
+                headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                if (document != null && document.etag != null) {
+                    headers.set(HttpHeaders.IF_NONE_MATCH, document.etag);
+                }
+                if (document != null && document.lastModified >= 0L) {
+                    headers.setIfModifiedSince(document.lastModified);
+                }
+                return chain.filter(exchange.mutate()
+                        .request(new ServerHttpRequestDecorator(request) {
+                            @Override
+                            public HttpHeaders getHeaders() {
+                                return headers;
+                            }
+                        })
+                        .response(new SwaggerRewriteResponse(exchange, swaggerRewriter, documents, key, document))
+                        .build());
+            }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+        }
+
+        @Getter
+        @Setter
+        public static class Config implements HasRouteId {
+            private String routeId;
+            private int maxEntries = 64;
+        }
+    }
+
+    static class SwaggerDocument {
+        private final String etag;
+        private final long lastModified;
+        private final MediaType contentType;
+        private final byte[] body;
+        private final String rewrittenETag;
+
+        SwaggerDocument(String etag, long lastModified, MediaType contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+            this.rewrittenETag = etag(body);
+        }
+
+        static String etag(byte[] body) {
+            return "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+    }
+
+    static class SwaggerRewriteResponse extends ServerHttpResponseDecorator {
+        private final ServerWebExchange exchange;
+        private final SwaggerRewriter swaggerRewriter;
+        private final Map<String, SwaggerDocument> documents;
+        private final String key;
+        private final SwaggerDocument document;
+
+        SwaggerRewriteResponse(ServerWebExchange exchange, SwaggerRewriter swaggerRewriter, Map<String, SwaggerDocument> documents, String key, SwaggerDocument document) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.swaggerRewriter = swaggerRewriter;
+            this.documents = documents;
+            this.key = key;
+            this.document = document;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Integer status = getRawStatusCode();
+            if (document != null && status != null && status == HttpStatus.NOT_MODIFIED.value()) {
+                return Flux.<DataBuffer>from(body)
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.defer(() -> {
+                            setRawStatusCode(HttpStatus.OK.value());
+                            Optional.ofNullable(document.contentType).ifPresent(getHeaders()::setContentType);
+                            return write(document.body, document.rewrittenETag);
+                        }));
+            }
+            MediaType contentType = getHeaders().getContentType();
+            if (status == null || status != HttpStatus.OK.value()
+                    || (contentType != null && !MediaType.APPLICATION_JSON.isCompatibleWith(contentType) && !contentType.getSubtype().endsWith("+json"))
+                    || getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return super.writeWith(body);
+            }
+            String etag = getHeaders().getETag();
+            long lastModified = getHeaders().getLastModified();
+            ByteArrayOutputStream document = etag != null || lastModified >= 0L ? new ByteArrayOutputStream() : null;
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            SwaggerRewriter.Streaming streaming;
+            try {
+                streaming = swaggerRewriter.streaming(output, RouteConfig.swaggerUri(exchange));
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+            getHeaders().remove(HttpHeaders.ETAG);
+            getHeaders().remove(HttpHeaders.LAST_MODIFIED);
+            return getDelegate().writeWith(Flux.<DataBuffer>from(body)
+                    .map(buffer -> {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        DataBufferUtils.release(buffer);
+                        try {
+                            streaming.write(bytes);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return drain(output, document);
+                    })
+                    .concatWith(Mono.fromCallable(() -> {
+                        streaming.finish();
+                        return drain(output, document);
+                    }))
+                    .filter(bytes -> bytes.length > 0)
+                    .map(bytes -> bufferFactory().wrap(bytes))
+                    .doOnComplete(() -> {
+                        if (document != null) {
+                            documents.put(key, new SwaggerDocument(etag, lastModified, contentType, document.toByteArray()));
+                        } else {
+                            documents.remove(key);
+                        }
+                    })
+                    .doFinally(signalType -> streaming.close()));
+        }
+
+        private static byte[] drain(ByteArrayOutputStream output, ByteArrayOutputStream document) {
+            byte[] bytes = output.toByteArray();
+            output.reset();
+            if (document != null) {
+                document.write(bytes, 0, bytes.length);
+            }
+            return bytes;
+        }
+
+        private Mono<Void> write(byte[] body, String etag) {
+            getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+            getHeaders().remove(HttpHeaders.LAST_MODIFIED);
+            getHeaders().setETag(etag);
+            if (CacheConfig.CacheGatewayFilterFactory.notModified(exchange.getRequest().getHeaders().getIfNoneMatch(), etag)) {
+                setRawStatusCode(HttpStatus.NOT_MODIFIED.value());
+                getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                return getDelegate().setComplete();
+            }
+            getHeaders().setContentLength(body.length);
+            return getDelegate().writeWith(Mono.fromSupplier(() -> bufferFactory().wrap(body)));
+        }
+    }
+}
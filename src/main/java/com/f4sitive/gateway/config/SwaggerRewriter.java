@@ -0,0 +1,373 @@
+package com.f4sitive.gateway.config;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.swagger.v3.oas.models.OpenAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+public class SwaggerRewriter {
+    private static final Set<String> HIDDEN_HEADERS = new HashSet<>(Arrays.asList("User-Id", "Device-Id", "Auth-Token"));
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonNode securitySchemes;
+
+    public SwaggerRewriter(OpenAPI openAPI) {
+        this.securitySchemes = new ObjectMapper()
+                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+                .configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, true)
+                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY)
+                .valueToTree(Optional.ofNullable(openAPI.getComponents().getSecuritySchemes()).orElse(Collections.emptyMap()));
+        Optional.ofNullable(securitySchemes.get("OAuth2"))
+                .filter(JsonNode::isObject)
+                .flatMap(oauth2 -> Optional.ofNullable(oauth2.get("flows"))
+                        .filter(JsonNode::isObject)
+                        .map(flows -> flows.get("authorizationCode"))
+                        .filter(JsonNode::isObject))
+                .ifPresent(authorizationCode -> {
+                    ((ObjectNode) securitySchemes.get("OAuth2")).put("flow", "accessCode");
+                    ((ObjectNode) securitySchemes.get("OAuth2")).setAll((ObjectNode) authorizationCode);
+                });
+    }
+
+    public JsonNode rewrite(JsonNode document, URI uri) {
+        try (TokenBuffer buffer = new TokenBuffer(objectMapper, false)) {
+            rewrite(document.traverse(objectMapper), new Rewrite(buffer, uri));
+            return buffer.asParser(objectMapper).readValueAsTree();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void rewrite(InputStream inputStream, OutputStream outputStream, URI uri) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            rewrite(parser, new Rewrite(generator, uri));
+        }
+    }
+
+    /**
+     * Starts a rewrite that is fed chunk by chunk through a non-blocking parser, so neither the upstream
+     * document nor a tree of it is held in memory; rewritten bytes are written to the output as they are produced.
+     */
+    public Streaming streaming(OutputStream outputStream, URI uri) throws IOException {
+        return new Streaming(outputStream, uri);
+    }
+
+    private static void rewrite(JsonParser parser, Rewrite rewrite) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            rewrite.next(parser, token);
+        }
+    }
+
+    public class Streaming implements Closeable {
+        private final JsonParser parser;
+        private final JsonGenerator generator;
+        private final Rewrite rewrite;
+
+        Streaming(OutputStream outputStream, URI uri) throws IOException {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            this.generator = objectMapper.getFactory().createGenerator(outputStream);
+            this.rewrite = new Rewrite(generator, uri);
+        }
+
+        public void write(byte[] bytes) throws IOException {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+            drain();
+        }
+
+        public void finish() throws IOException {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+            drain();
+            close();
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                rewrite.next(parser, token);
+            }
+            generator.flush();
+        }
+
+        @Override
+        public void close() {
+            try (JsonParser parser = this.parser) {
+                generator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    enum Scope {
+        ROOT, SERVERS, SERVER, COMPONENTS, PATHS, PATH, OPERATION, PARAMETERS
+    }
+
+    /**
+     * Rewrites one token at a time. Scopes that are rewritten are tracked on a stack; every other value is
+     * copied or skipped by depth, and only a single operation parameter is buffered to decide whether it is hidden.
+     */
+    class Rewrite {
+        private final JsonGenerator generator;
+        private final String url;
+        private final String host;
+        private final String basePath;
+        private final Deque<Scope> scopes = new ArrayDeque<>();
+        private final Deque<boolean[]> written = new ArrayDeque<>();
+        private String field;
+        private int copying;
+        private int skipping;
+        private Writer replacement;
+        private TokenBuffer parameter;
+        private int parameterDepth;
+        private boolean done;
+
+        Rewrite(JsonGenerator generator, URI uri) {
+            this.generator = generator;
+            this.url = uri.toString();
+            this.host = uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+            this.basePath = uri.getPath();
+        }
+
+        void next(JsonParser parser, JsonToken token) throws IOException {
+            if (done) {
+                return;
+            }
+            if (parameter != null) {
+                parameter.copyCurrentEvent(parser);
+                if ((parameterDepth += depth(token)) == 0) {
+                    JsonNode node = parameter.asParser(objectMapper).readValueAsTree();
+                    parameter = null;
+                    if (!isHidden(node)) {
+                        generator.writeTree(node);
+                    }
+                }
+                return;
+            }
+            if (copying > 0) {
+                generator.copyCurrentEvent(parser);
+                copying += depth(token);
+                done = scopes.isEmpty() && copying == 0;
+                return;
+            }
+            if (skipping > 0) {
+                if ((skipping += depth(token)) == 0) {
+                    replacement.write(generator);
+                }
+                return;
+            }
+            if (scopes.isEmpty()) {
+                if (token == JsonToken.START_OBJECT) {
+                    open(Scope.ROOT, token, 4);
+                } else {
+                    copy(parser, token);
+                    done = copying == 0;
+                }
+                return;
+            }
+            if (token == JsonToken.FIELD_NAME) {
+                field = parser.getCurrentName();
+                generator.writeFieldName(field);
+                return;
+            }
+            if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                close(scopes.pop(), written.pop());
+                done = scopes.isEmpty();
+                return;
+            }
+            value(parser, token, scopes.peek(), written.peek());
+        }
+
+        private void value(JsonParser parser, JsonToken token, Scope scope, boolean[] written) throws IOException {
+            switch (scope) {
+                case ROOT:
+                    if ("servers".equals(field) && token == JsonToken.START_ARRAY) {
+                        open(Scope.SERVERS, token, 0);
+                    } else if ("host".equals(field)) {
+                        skip(token, g -> g.writeString(host));
+                        written[0] = true;
+                    } else if ("basePath".equals(field)) {
+                        skip(token, g -> g.writeString(basePath));
+                        written[1] = true;
+                    } else if ("securityDefinitions".equals(field)) {
+                        skip(token, g -> g.writeTree(securitySchemes));
+                        written[2] = true;
+                    } else if ("security".equals(field)) {
+                        skip(token, SwaggerRewriter.this::writeSecurity);
+                        written[3] = true;
+                    } else if ("components".equals(field) && token == JsonToken.START_OBJECT) {
+                        open(Scope.COMPONENTS, token, 1);
+                    } else if ("paths".equals(field) && token == JsonToken.START_OBJECT) {
+                        open(Scope.PATHS, token, 0);
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case SERVERS:
+                    if (token == JsonToken.START_OBJECT) {
+                        open(Scope.SERVER, token, 1);
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case SERVER:
+                    if ("url".equals(field)) {
+                        skip(token, g -> g.writeString(url));
+                        written[0] = true;
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case COMPONENTS:
+                    if ("securitySchemes".equals(field)) {
+                        skip(token, g -> g.writeTree(securitySchemes));
+                        written[0] = true;
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case PATHS:
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        open(Scope.PATH, token, 0);
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case PATH:
+                    if (token == JsonToken.START_OBJECT) {
+                        open(Scope.OPERATION, token, 0);
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case OPERATION:
+                    if ("parameters".equals(field) && token == JsonToken.START_ARRAY) {
+                        open(Scope.PARAMETERS, token, 0);
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                case PARAMETERS:
+                    if (token == JsonToken.START_OBJECT) {
+                        parameter = new TokenBuffer(objectMapper, false);
+                        parameter.copyCurrentEvent(parser);
+                        parameterDepth = 1;
+                    } else {
+                        copy(parser, token);
+                    }
+                    break;
+                default:
+                    copy(parser, token);
+            }
+        }
+
+        private void open(Scope scope, JsonToken token, int fields) throws IOException {
+            if (token == JsonToken.START_ARRAY) {
+                generator.writeStartArray();
+            } else {
+                generator.writeStartObject();
+            }
+            scopes.push(scope);
+            written.push(new boolean[fields]);
+        }
+
+        private void close(Scope scope, boolean[] written) throws IOException {
+            switch (scope) {
+                case ROOT:
+                    if (!written[0]) {
+                        generator.writeStringField("host", host);
+                    }
+                    if (!written[1]) {
+                        generator.writeStringField("basePath", basePath);
+                    }
+                    if (!written[2]) {
+                        generator.writeFieldName("securityDefinitions");
+                        generator.writeTree(securitySchemes);
+                    }
+                    if (!written[3]) {
+                        generator.writeFieldName("security");
+                        writeSecurity(generator);
+                    }
+                    break;
+                case SERVER:
+                    if (!written[0]) {
+                        generator.writeStringField("url", url);
+                    }
+                    break;
+                case COMPONENTS:
+                    if (!written[0]) {
+                        generator.writeFieldName("securitySchemes");
+                        generator.writeTree(securitySchemes);
+                    }
+                    break;
+                default:
+            }
+            if (generator.getOutputContext().inArray()) {
+                generator.writeEndArray();
+            } else {
+                generator.writeEndObject();
+            }
+        }
+
+        private void copy(JsonParser parser, JsonToken token) throws IOException {
+            generator.copyCurrentEvent(parser);
+            copying = depth(token);
+        }
+
+        private void skip(JsonToken token, Writer replacement) throws IOException {
+            if (token.isStructStart()) {
+                this.skipping = 1;
+                this.replacement = replacement;
+            } else {
+                replacement.write(generator);
+            }
+        }
+    }
+
+    private static int depth(JsonToken token) {
+        if (token.isStructStart()) {
+            return 1;
+        }
+        return token.isStructEnd() ? -1 : 0;
+    }
+
+    private void writeSecurity(JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        generator.writeTree(securitySchemes);
+        generator.writeEndArray();
+    }
+
+    private static boolean isHidden(JsonNode parameter) {
+        return Optional.ofNullable(parameter.get("in")).map(in -> "header".equals(in.asText())).orElse(false)
+                && Optional.ofNullable(parameter.get("name")).map(name -> HIDDEN_HEADERS.contains(name.asText())).orElse(false);
+    }
+
+    interface Writer {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,184 @@
+package com.f4sitive.gateway.config;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+@Configuration(proxyBeanMethods = false)
+public class TransportConfig {
+    @Bean
+    TransportRoutingFilter transportRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters, HttpClientProperties properties, GatewayProperties gatewayProperties, ObjectProvider<ClientHttpConnector> clientHttpConnector) {
+        return new TransportRoutingFilter(httpClient, headersFilters, properties, gatewayProperties.getStreamingMediaTypes(), clientHttpConnector);
+    }
+
+    public enum Transport {
+        NETTY, JETTY, H2
+    }
+
+    @Slf4j
+    static class TransportRoutingFilter extends NettyRoutingFilter {
+        static final String TRANSPORT_ATTR = "transport";
+        private static final Set<String> UNKNOWN_TRANSPORTS = ConcurrentHashMap.newKeySet();
+        private final HttpClient h2c;
+        private final HttpClient h2;
+        private final HttpClientProperties properties;
+        private final List<MediaType> streamingMediaTypes;
+        private final ObjectProvider<ClientHttpConnector> clientHttpConnector;
+
+        TransportRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters, HttpClientProperties properties, List<MediaType> streamingMediaTypes, ObjectProvider<ClientHttpConnector> clientHttpConnector) {
+            super(httpClient, headersFilters, properties);
+            this.h2c = httpClient.protocol(HttpProtocol.H2C);
+            this.h2 = httpClient.protocol(HttpProtocol.H2);
+            this.properties = properties;
+            this.streamingMediaTypes = streamingMediaTypes;
+            this.clientHttpConnector = clientHttpConnector;
+        }
+
+        static Transport transport(Route route) {
+            return Optional.ofNullable(route)
+                    .map(Route::getMetadata)
+                    .map(metadata -> metadata.get(TRANSPORT_ATTR))
+                    .map(transport -> transport(route.getId(), String.valueOf(transport)))
+                    .orElse(Transport.NETTY);
+        }
+
+        private static Transport transport(String routeId, String value) {
+            for (Transport transport : Transport.values()) {
+                if (transport.name().equalsIgnoreCase(value)) {
+                    return transport;
+                }
+            }
+            if (UNKNOWN_TRANSPORTS.add(routeId + ":" + value)) {
+                log.warn("Unknown transport '{}' on route {}, falling back to {}", value, routeId, Transport.NETTY);
+            }
+            return Transport.NETTY;
+        }
+
+        @Override
+        public int getOrder() {
+            return NettyRoutingFilter.ORDER - 1;
+        }
+
+        @Override
+        protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+            if (transport(route) != Transport.H2) {
+                return super.getHttpClient(route, exchange);
+            }
+            URI requestUrl = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            HttpClient httpClient = "https".equalsIgnoreCase(requestUrl.getScheme()) ? h2 : h2c;
+            return Optional.ofNullable(route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR))
+                    .map(connectTimeout -> Integer.valueOf(String.valueOf(connectTimeout)))
+                    .map(connectTimeout -> httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout))
+                    .orElse(httpClient);
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            URI requestUrl = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            if (ServerWebExchangeUtils.isAlreadyRouted(exchange)
+                    || (!"http".equalsIgnoreCase(requestUrl.getScheme()) && !"https".equalsIgnoreCase(requestUrl.getScheme()))) {
+                return chain.filter(exchange);
+            }
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            switch (transport(route)) {
+                case H2:
+                    return super.filter(exchange, chain);
+                case JETTY:
+                    HttpMethod method = HttpMethod.resolve(exchange.getRequest().getMethodValue());
+                    ClientHttpConnector connector = clientHttpConnector.getIfAvailable();
+                    if (method != null && connector != null) {
+                        return connect(route, exchange, chain, connector, method, requestUrl);
+                    }
+                    return chain.filter(exchange);
+                default:
+                    return chain.filter(exchange);
+            }
+        }
+
+        private Mono<Void> connect(Route route, ServerWebExchange exchange, GatewayFilterChain chain, ClientHttpConnector connector, HttpMethod method, URI requestUrl) {
+            ServerWebExchangeUtils.setAlreadyRouted(exchange);
+            ServerHttpRequest request = exchange.getRequest();
+            HttpHeaders filtered = HttpHeadersFilter.filterRequest(getHeadersFilters(), exchange);
+            boolean preserveHost = exchange.getAttributeOrDefault(ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE, false);
+            Mono<ClientHttpResponse> responseMono = connector.connect(method, requestUrl, clientHttpRequest -> {
+                clientHttpRequest.getHeaders().putAll(filtered);
+                clientHttpRequest.getHeaders().remove(HttpHeaders.HOST);
+                if (preserveHost) {
+                    clientHttpRequest.getHeaders().set(HttpHeaders.HOST, request.getHeaders().getFirst(HttpHeaders.HOST));
+                }
+                if (request.getHeaders().getContentLength() <= 0L && !request.getHeaders().containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+                    return clientHttpRequest.setComplete();
+                }
+                return clientHttpRequest.writeWith(request.getBody());
+            });
+            Duration responseTimeout = responseTimeout(route);
+            if (responseTimeout != null) {
+                responseMono = responseMono
+                        .timeout(responseTimeout, Mono.error(new TimeoutException("Response took longer than timeout: " + responseTimeout)))
+                        .onErrorMap(TimeoutException.class, th -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, th.getMessage(), th));
+            }
+            return responseMono.flatMap(clientHttpResponse -> {
+                ServerHttpResponse response = exchange.getResponse();
+                setResponse(exchange, getHeadersFilters(), clientHttpResponse.getRawStatusCode(), clientHttpResponse.getHeaders());
+                return chain.filter(exchange).then(Mono.defer(() -> Optional.ofNullable(response.getHeaders().getContentType())
+                        .filter(contentType -> streamingMediaTypes.stream().anyMatch(contentType::isCompatibleWith))
+                        .map(contentType -> response.writeAndFlushWith(clientHttpResponse.getBody().map(Flux::just)))
+                        .orElseGet(() -> response.writeWith(clientHttpResponse.getBody()))));
+            });
+        }
+
+        static void setResponse(ServerWebExchange exchange, List<HttpHeadersFilter> headersFilters, int statusCode, HttpHeaders headers) {
+            ServerHttpResponse response = exchange.getResponse();
+            Optional.ofNullable(headers.getFirst(HttpHeaders.CONTENT_TYPE))
+                    .filter(StringUtils::hasLength)
+                    .ifPresent(contentType -> exchange.getAttributes().put(ServerWebExchangeUtils.ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR, contentType));
+            response.setRawStatusCode(statusCode);
+            HttpHeaders filteredResponseHeaders = HttpHeadersFilter.filter(headersFilters, headers, exchange, HttpHeadersFilter.Type.RESPONSE);
+            if (!filteredResponseHeaders.containsKey(HttpHeaders.TRANSFER_ENCODING) && filteredResponseHeaders.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+                response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+            }
+            exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_HEADER_NAMES, filteredResponseHeaders.keySet());
+            response.getHeaders().putAll(filteredResponseHeaders);
+        }
+
+        private Duration responseTimeout(Route route) {
+            return Optional.ofNullable(route)
+                    .map(r -> r.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR))
+                    .map(timeout -> Duration.ofMillis(Long.parseLong(String.valueOf(timeout))))
+                    .orElse(properties.getResponseTimeout());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.f4sitive.gateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class UpstreamWarmup {
+    private final HttpClient httpClient;
+    private final HttpClient h2c;
+    private final HttpClient h2;
+    private final Optional<ClientHttpConnector> clientHttpConnector;
+    private final RouteLocator routeLocator;
+    private final Optional<ReactiveDiscoveryClient> discoveryClient;
+    private final HealthConfig.Warmup properties;
+
+    public UpstreamWarmup(HttpClient httpClient, Optional<ClientHttpConnector> clientHttpConnector, RouteLocator routeLocator, Optional<ReactiveDiscoveryClient> discoveryClient, HealthConfig.Warmup properties) {
+        this.httpClient = httpClient;
+        this.h2c = httpClient.protocol(HttpProtocol.H2C);
+        this.h2 = httpClient.protocol(HttpProtocol.H2);
+        this.clientHttpConnector = clientHttpConnector;
+        this.routeLocator = routeLocator;
+        this.discoveryClient = discoveryClient;
+        this.properties = properties;
+    }
+
+    public Mono<Void> warmup(int port) {
+        if (!properties.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            return connect()
+                    .flatMap(targets -> replay(port).map(requests -> new long[]{targets, requests}))
+                    .timeout(properties.getTimeout())
+                    .doOnNext(counts -> log.info("Warmed up {} upstream(s) and replayed {} request(s) in {}ms", counts[0], counts[1], Duration.ofNanos(System.nanoTime() - startTime).toMillis()))
+                    .doOnError(TimeoutException.class, e -> log.warn("Warm-up did not finish within {}", properties.getTimeout()))
+                    .onErrorResume(e -> Mono.empty())
+                    .then();
+        });
+    }
+
+    Flux<Target> targets() {
+        return routeLocator.getRoutes()
+                .collectList()
+                .flatMapMany(routes -> {
+                    Flux<Target> direct = Flux.fromIterable(routes)
+                            .filter(route -> "http".equalsIgnoreCase(route.getUri().getScheme()) || "https".equalsIgnoreCase(route.getUri().getScheme()))
+                            .map(route -> new Target(route.getUri(), TransportConfig.TransportRoutingFilter.transport(route)));
+                    Flux<Target> instances = discoveryClient
+                            .map(client -> client.getServices()
+                                    .flatMap(serviceId -> client.getInstances(serviceId)
+                                            .flatMapIterable(serviceInstance -> transports(routes, serviceId).stream()
+                                                    .map(transport -> new Target(serviceInstance.getUri(), transport))
+                                                    .collect(Collectors.toList()))))
+                            .orElseGet(Flux::empty);
+                    return Flux.concat(direct, instances);
+                })
+                .onErrorContinue((e, target) -> log.debug("Failed to resolve warm-up target", e))
+                .map(target -> new Target(UriComponentsBuilder.fromUri(target.uri).replacePath("/").replaceQuery(null).fragment(null).build().toUri(), target.transport))
+                .distinct(target -> target.transport + " " + target.uri);
+    }
+
+    /**
+     * Transports of the lb:// routes pointing at the service, so instances are warmed over the pool they will
+     * actually be called through. Services no route references fall back to the default transport.
+     */
+    private static Set<TransportConfig.Transport> transports(List<Route> routes, String serviceId) {
+        Set<TransportConfig.Transport> transports = routes.stream()
+                .filter(route -> "lb".equalsIgnoreCase(route.getUri().getScheme()) && serviceId.equalsIgnoreCase(route.getUri().getHost()))
+                .map(TransportConfig.TransportRoutingFilter::transport)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(TransportConfig.Transport.class)));
+        return transports.isEmpty() ? EnumSet.of(TransportConfig.Transport.NETTY) : transports;
+    }
+
+    private Mono<Long> connect() {
+        int connections = Math.max(0, properties.getConnections());
+        if (connections == 0) {
+            return Mono.just(0L);
+        }
+        return targets()
+                .flatMap(target -> Flux.range(0, connections)
+                        .flatMap(i -> head(target)
+                                .doOnError(e -> log.debug("Failed to warm up {} over {}", target.uri, target.transport, e))
+                                .onErrorResume(e -> Mono.empty()), connections)
+                        .then(Mono.just(target)))
+                .count();
+    }
+
+    private Mono<Integer> head(Target target) {
+        switch (target.transport) {
+            case JETTY:
+                return clientHttpConnector
+                        .map(connector -> connector.connect(HttpMethod.HEAD, target.uri, ClientHttpRequest::setComplete)
+                                .flatMap(response -> response.getBody().doOnNext(DataBufferUtils::release).then(Mono.just(response.getRawStatusCode()))))
+                        .orElseGet(Mono::empty);
+            case H2:
+                return ("https".equalsIgnoreCase(target.uri.getScheme()) ? h2 : h2c).head()
+                        .uri(target.uri)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())));
+            default:
+                return httpClient.head()
+                        .uri(target.uri)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())));
+        }
+    }
+
+    private Mono<Long> replay(int port) {
+        if (properties.getRequests().isEmpty() || properties.getIterations() <= 0) {
+            return Mono.just(0L);
+        }
+        HttpClient client = HttpClient.create().host("localhost").port(port);
+        return Flux.fromIterable(properties.getRequests())
+                .map(URI::create)
+                .repeat(properties.getIterations() - 1L)
+                .flatMap(uri -> client.headers(headers -> Optional.ofNullable(uri.getHost()).ifPresent(host -> headers.set(HttpHeaders.HOST, uri.getPort() == -1 ? host : host + ":" + uri.getPort())))
+                        .get()
+                        .uri(Optional.ofNullable(uri.getRawPath()).filter(path -> !path.isEmpty()).orElse("/") + Optional.ofNullable(uri.getRawQuery()).map(query -> "?" + query).orElse(""))
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                        .doOnError(e -> log.debug("Failed to replay {}", uri, e))
+                        .onErrorResume(e -> Mono.empty()), Math.max(1, properties.getConnections()))
+                .count();
+    }
+
+    static class Target {
+        final URI uri;
+        final TransportConfig.Transport transport;
+
+        Target(URI uri, TransportConfig.Transport transport) {
+            this.uri = uri;
+            this.transport = transport;
+        }
+    }
+}
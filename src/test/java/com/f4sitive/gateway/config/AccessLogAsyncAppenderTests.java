@@ -0,0 +1,117 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.access.spi.AccessContext;
+import ch.qos.logback.access.spi.IAccessEvent;
+import ch.qos.logback.core.AppenderBase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogAsyncAppenderTests {
+    private static final int RING_BUFFER_SIZE = 8;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch delivered = new CountDownLatch(3);
+    private final AtomicInteger appended = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AccessLogConfig.Async async = new AccessLogConfig.Async();
+    private final AccessLogAsyncAppender appender = new AccessLogAsyncAppender();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        appender.stop();
+    }
+
+    @Test
+    void dropPolicyCountsEventsRejectedByFullBuffer() {
+        start();
+
+        append(RING_BUFFER_SIZE + 3);
+
+        assertThat(dropped("full")).isEqualTo(3.0D);
+        assertThat(dropped("sampled")).isZero();
+    }
+
+    @Test
+    void samplePolicyDropsOnlyAboveThreshold() {
+        async.setPolicy(AccessLogAsyncAppender.Policy.SAMPLE);
+        async.setSampleThreshold(0.5D);
+        async.setSampleRate(0.0D);
+        start();
+
+        append(RING_BUFFER_SIZE / 2);
+        assertThat(dropped("sampled")).isZero();
+
+        append(3);
+        assertThat(dropped("sampled")).isEqualTo(3.0D);
+        assertThat(dropped("full")).isZero();
+    }
+
+    @Test
+    void samplePolicyKeepsSampledEvents() {
+        async.setPolicy(AccessLogAsyncAppender.Policy.SAMPLE);
+        async.setSampleThreshold(0.0D);
+        async.setSampleRate(1.0D);
+        start();
+
+        append(RING_BUFFER_SIZE);
+
+        assertThat(dropped("sampled")).isZero();
+        assertThat(dropped("full")).isZero();
+    }
+
+    @Test
+    void bufferedEventsReachDelegate() throws InterruptedException {
+        start();
+        append(3);
+
+        release.countDown();
+
+        assertThat(delivered.await(10L, TimeUnit.SECONDS)).isTrue();
+        assertThat(appended).hasValue(3);
+        assertThat(meterRegistry.get("access.log.append").timer().count()).isEqualTo(3L);
+    }
+
+    private void start() {
+        AccessContext context = new AccessContext();
+        AppenderBase<IAccessEvent> delegate = new AppenderBase<IAccessEvent>() {
+            @Override
+            protected void append(IAccessEvent event) {
+                try {
+                    release.await(10L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                appended.incrementAndGet();
+                delivered.countDown();
+            }
+        };
+        delegate.setContext(context);
+        delegate.start();
+        appender.setContext(context);
+        appender.setName("test");
+        appender.setRingBufferSize(RING_BUFFER_SIZE);
+        appender.setAsync(async);
+        appender.addAppender(delegate);
+        appender.start();
+        appender.bindTo(meterRegistry);
+    }
+
+    private void append(int count) {
+        for (int i = 0; i < count; i++) {
+            appender.doAppend(Mockito.mock(IAccessEvent.class));
+        }
+    }
+
+    private double dropped(String reason) {
+        return meterRegistry.get("access.log.dropped").tag("reason", reason).functionCounter().count();
+    }
+}
@@ -0,0 +1,67 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogConfigTests {
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void contentIsTrimmedToLastCompleteCharacter() {
+        assertThat(capture("aé€", 4)).isEqualTo("aé");
+        assertThat(capture("aé€", 5)).isEqualTo("aé");
+        assertThat(capture("aé€", 6)).isEqualTo("aé€");
+        assertThat(capture("😀😀", 7)).isEqualTo("😀");
+        assertThat(capture("abc", 2)).isEqualTo("ab");
+    }
+
+    @Test
+    void contentIsNotTrimmedWhenComplete() {
+        assertThat(capture("aé€", 64)).isEqualTo("aé€");
+    }
+
+    @Test
+    void unsampledExchangesAreNotOverridableByDefault() {
+        AccessLogConfig.Policy policy = new AccessLogConfig.Policy();
+        assertThat(policy.isOverridable()).isFalse();
+        assertThat(policy.isOverridable(500)).isFalse();
+    }
+
+    @Test
+    void onErrorOverridesOnlyErrorResponses() {
+        AccessLogConfig.Policy policy = new AccessLogConfig.Policy();
+        policy.setOnError(true);
+        assertThat(policy.isOverridable()).isTrue();
+        assertThat(policy.isOverridable(200)).isFalse();
+        assertThat(policy.isOverridable(503)).isTrue();
+        assertThat(policy.isOverridden(404, 0L)).isTrue();
+        assertThat(policy.isOverridden(204, 0L)).isFalse();
+    }
+
+    @Test
+    void slowThresholdKeepsCaptureUntilCompletion() {
+        AccessLogConfig.Policy policy = new AccessLogConfig.Policy();
+        policy.setSlowThreshold(Duration.ofMillis(100L));
+        assertThat(policy.isOverridable(200)).isTrue();
+        assertThat(policy.isOverridden(200, 99L)).isFalse();
+        assertThat(policy.isOverridden(200, 100L)).isTrue();
+    }
+
+    private String capture(String content, int maxSize) {
+        AccessLogConfig.Policy policy = new AccessLogConfig.Policy();
+        policy.setMaxSize(DataSize.ofBytes(maxSize));
+        AccessLogConfig.ContentCapture capture = new AccessLogConfig.ContentCapture(bufferFactory, maxSize, policy, true);
+        capture.accept(bufferFactory.wrap(content.getBytes(StandardCharsets.UTF_8)));
+        try {
+            return capture.getContent();
+        } finally {
+            capture.release();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.access.spi.IAccessEvent;
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.status.Status;
+import ch.qos.logback.core.util.FileSize;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogSegmentAppenderTests {
+    private final ContextBase context = new ContextBase();
+    private final AccessLogSegmentAppender appender = new AccessLogSegmentAppender();
+    private final IAccessEvent event = Mockito.mock(IAccessEvent.class);
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+    }
+
+    @Test
+    void rotationsWithinTheSameMillisecondOpenDistinctSegments() throws IOException {
+        Mockito.when(event.getRequestURI()).thenReturn(new String(new char[100]).replace('\0', 'a'));
+        start(directory.resolve("access"));
+
+        for (int i = 0; i < 50; i++) {
+            appender.doAppend(event);
+        }
+
+        assertThat(appender.isStarted()).isTrue();
+        assertThat(AccessLogSegmentDecoder.segments(directory)).hasSizeGreaterThan(10);
+        assertThat(errors()).isEmpty();
+    }
+
+    @Test
+    void failedRotationKeepsCurrentSegment() throws IOException {
+        Path parent = directory.resolve("logs");
+        start(parent.resolve("access"));
+        appender.doAppend(event);
+        for (Path segment : AccessLogSegmentDecoder.segments(parent)) {
+            Files.delete(segment);
+        }
+        Files.delete(parent);
+        Files.createFile(parent);
+
+        for (int i = 0; i < 50; i++) {
+            appender.doAppend(event);
+        }
+
+        assertThat(appender.isStarted()).isTrue();
+        assertThat(errors()).isNotEmpty().allMatch(message -> message.startsWith("Failed to write segment"));
+    }
+
+    private void start(Path file) {
+        appender.setContext(context);
+        appender.setName("segment");
+        appender.setFile(file.toString());
+        appender.setSegmentSize(new FileSize(512L));
+        appender.start();
+        assertThat(appender.isStarted()).isTrue();
+    }
+
+    private List<String> errors() {
+        return context.getStatusManager().getCopyOfStatusList().stream()
+                .filter(status -> status.getLevel() == Status.ERROR)
+                .map(Status::getMessage)
+                .collect(Collectors.toList());
+    }
+}
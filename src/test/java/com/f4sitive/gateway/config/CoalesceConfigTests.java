@@ -0,0 +1,116 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalesceConfigTests {
+    private final RequestCoalescer coalescer = new RequestCoalescer("test", Optional.empty());
+    private final MockServerHttpRequest request = MockServerHttpRequest.get("/resource").build();
+
+    @Test
+    void chunkedBodyIsShared() {
+        MockServerHttpResponse delegate = new MockServerHttpResponse();
+        Mono<RequestCoalescer.Result> shared = write(delegate, null, 1024L, "hello", ", ", "world");
+
+        RequestCoalescer.Result result = shared.block();
+        assertThat(new String(result.getBody(), StandardCharsets.UTF_8)).isEqualTo("hello, world");
+        assertThat(result.getStatus()).isEqualTo(200);
+        assertThat(delegate.getBodyAsString().block()).isEqualTo("hello, world");
+    }
+
+    @Test
+    void bodyLargerThanInitialBufferIsShared() {
+        String chunk = new String(new char[5000]).replace('\0', 'a');
+        Mono<RequestCoalescer.Result> shared = write(new MockServerHttpResponse(), null, 1_000_000L, chunk, chunk, chunk);
+
+        assertThat(shared.block().getBody()).hasSize(15_000);
+    }
+
+    @Test
+    void declaredLengthIsUsedAsIs() {
+        MockServerHttpResponse delegate = new MockServerHttpResponse();
+        delegate.getHeaders().setContentLength(10L);
+        Mono<RequestCoalescer.Result> shared = write(delegate, null, 1024L, "01234", "56789");
+
+        assertThat(new String(shared.block().getBody(), StandardCharsets.UTF_8)).isEqualTo("0123456789");
+    }
+
+    @Test
+    void privateAndNoStoreResponsesAreNotShared() {
+        assertThat(write(new MockServerHttpResponse(), "private, max-age=60", 1024L, "user").blockOptional()).isEmpty();
+        assertThat(write(new MockServerHttpResponse(), "no-store", 1024L, "user").blockOptional()).isEmpty();
+    }
+
+    @Test
+    void oversizedBodyIsNotShared() {
+        MockServerHttpResponse delegate = new MockServerHttpResponse();
+        Mono<RequestCoalescer.Result> shared = write(delegate, null, 8L, "hello", "world");
+
+        assertThat(shared.blockOptional()).isEmpty();
+        assertThat(delegate.getBodyAsString().block()).isEqualTo("helloworld");
+    }
+
+    @Test
+    void requestsFromDifferentUsersAreNotShared() {
+        assertThat(followerReachesUpstream("alice", "bob")).isTrue();
+    }
+
+    @Test
+    void requestsFromSameUserAreShared() {
+        assertThat(followerReachesUpstream("alice", "alice")).isFalse();
+    }
+
+    private static boolean followerReachesUpstream(String leader, String follower) {
+        GatewayFilter filter = new CoalesceConfig.CoalesceGatewayFilterFactory(Optional.empty())
+                .apply(new CoalesceConfig.CoalesceGatewayFilterFactory.Config());
+        AtomicInteger upstream = new AtomicInteger();
+        GatewayFilterChain chain = exchange -> {
+            upstream.incrementAndGet();
+            return Mono.never();
+        };
+        Disposable first = filter.filter(exchange(leader), chain).subscribe();
+        Disposable second = filter.filter(exchange(follower), chain).subscribe();
+        try {
+            return upstream.get() == 2;
+        } finally {
+            second.dispose();
+            first.dispose();
+        }
+    }
+
+    private static MockServerWebExchange exchange(String userId) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/resource").header("User-Id", userId));
+    }
+
+    private Mono<RequestCoalescer.Result> write(MockServerHttpResponse delegate, String cacheControl, long maxSize, String... chunks) {
+        RequestCoalescer.Flight flight = coalescer.lead("key");
+        Mono<RequestCoalescer.Result> shared = coalescer.join("key", 1);
+        delegate.setStatusCode(HttpStatus.OK);
+        Optional.ofNullable(cacheControl).ifPresent(value -> delegate.getHeaders().set(HttpHeaders.CACHE_CONTROL, value));
+        CoalesceConfig.CoalescingResponse response = new CoalesceConfig.CoalescingResponse(delegate, request, flight, maxSize);
+        response.writeWith(Flux.fromArray(chunks).map(CoalesceConfigTests::buffer)).block();
+        flight.abandon();
+        return shared;
+    }
+
+    private static DataBuffer buffer(String chunk) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8));
+    }
+}
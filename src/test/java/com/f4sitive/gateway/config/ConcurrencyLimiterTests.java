@@ -0,0 +1,199 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyLimiterTests {
+    private final LoadBalancerConfig.Limit properties = new LoadBalancerConfig.Limit();
+    private final ServiceInstance a = new DefaultServiceInstance("a", "service", "a", 8080, false);
+    private final ServiceInstance b = new DefaultServiceInstance("b", "service", "b", 8080, false);
+
+    ConcurrencyLimiterTests() {
+        properties.setEnabled(true);
+        properties.setInitialLimit(2);
+        properties.setMinLimit(1);
+    }
+
+    @Test
+    void tryAcquireFailsOnceLimitIsReached() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+
+        ConcurrencyLimiter.Limit limit = concurrencyLimiter.tryAcquire(a);
+        assertThat(concurrencyLimiter.tryAcquire(a)).isSameAs(limit);
+        assertThat(concurrencyLimiter.tryAcquire(a)).isNull();
+
+        limit.release();
+        assertThat(concurrencyLimiter.tryAcquire(a)).isSameAs(limit);
+    }
+
+    @Test
+    void concurrentAcquisitionsNeverExceedLimit() throws InterruptedException {
+        properties.setInitialLimit(8);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (concurrencyLimiter.tryAcquire(a) != null) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10L, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(acquired.get()).isEqualTo(8);
+    }
+
+    @Test
+    void saturatedInstancesAreFiltered() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        concurrencyLimiter.tryAcquire(a);
+        concurrencyLimiter.tryAcquire(a);
+
+        assertThat(concurrencyLimiter.filter(serviceInstances)).containsExactly(b);
+    }
+
+    @Test
+    void filterRepicksWhenChosenInstanceIsSaturated() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+        concurrencyLimiter.tryAcquire(a);
+        concurrencyLimiter.tryAcquire(a);
+        MockServerWebExchange exchange = exchange(a);
+
+        filter(concurrencyLimiter, b).filter(exchange, e -> Mono.empty()).block();
+
+        assertThat(exchange.<URI>getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR)).isEqualTo(URI.create("http://b:8080/path"));
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(b);
+        assertThat(concurrencyLimiter.tryAcquire(b).getInflight()).isEqualTo(1);
+    }
+
+    @Test
+    void filterRejectsWhenNoInstanceCanBeAcquired() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+        concurrencyLimiter.tryAcquire(a);
+        concurrencyLimiter.tryAcquire(a);
+
+        assertThatThrownBy(() -> filter(concurrencyLimiter, a).filter(exchange(a), e -> Mono.empty()).block())
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    void rejectionIsCountedOncePerRequest() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.of(registry));
+        concurrencyLimiter.tryAcquire(a);
+        concurrencyLimiter.tryAcquire(a);
+        ServiceInstanceListSupplier delegate = Mockito.mock(ServiceInstanceListSupplier.class);
+        Mockito.when(delegate.get()).thenReturn(Flux.just(Collections.singletonList(a)));
+        ServiceInstanceListSupplier supplier = new LoadBalancerConfig.ConcurrencyLimitServiceInstanceListSupplier(delegate, concurrencyLimiter);
+
+        assertThat(supplier.get().blockFirst()).isEmpty();
+        assertThat(registry.get("loadbalancer.concurrency.rejected").functionCounter().count()).isEqualTo(1.0D);
+
+        ReactorServiceInstanceLoadBalancer loadBalancer = Mockito.mock(ReactorServiceInstanceLoadBalancer.class);
+        Mockito.when(loadBalancer.choose(Mockito.any())).thenAnswer(invocation -> supplier.get().next()
+                .map(serviceInstances -> serviceInstances.isEmpty() ? new EmptyResponse() : new DefaultResponse(serviceInstances.get(0))));
+        assertThatThrownBy(() -> filter(concurrencyLimiter, loadBalancer).filter(exchange(a), e -> Mono.empty()).block())
+                .isInstanceOf(ResponseStatusException.class);
+
+        assertThat(registry.get("loadbalancer.concurrency.rejected").functionCounter().count()).isEqualTo(2.0D);
+    }
+
+    @Test
+    void filterReleasesOnCompletion() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+
+        filter(concurrencyLimiter, a).filter(exchange(a), e -> Mono.empty()).block();
+
+        assertThat(concurrencyLimiter.tryAcquire(a).getInflight()).isEqualTo(1);
+    }
+
+    @Test
+    void filterPassesThroughWhenDisabled() {
+        properties.setEnabled(false);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(properties, Optional.empty());
+        concurrencyLimiter.tryAcquire(a);
+        concurrencyLimiter.tryAcquire(a);
+
+        filter(concurrencyLimiter, a).filter(exchange(a), e -> Mono.empty()).block();
+
+        assertThat(concurrencyLimiter.tryAcquire(a)).isNull();
+    }
+
+    @Test
+    void responseTimerStopsWhenResponseIsCommitted() throws InterruptedException {
+        MockServerWebExchange exchange = exchange(a);
+        LoadBalancerConfig.ResponseTimer responseTimer = new LoadBalancerConfig.ResponseTimer(exchange);
+
+        exchange.getResponse().setComplete().block();
+        long latency = responseTimer.latency();
+        Thread.sleep(20L);
+
+        assertThat(responseTimer.latency()).isEqualTo(latency);
+    }
+
+    private static LoadBalancerConfig.ConcurrencyLimitFilter filter(ConcurrencyLimiter concurrencyLimiter, ServiceInstance chosen) {
+        ReactorServiceInstanceLoadBalancer loadBalancer = Mockito.mock(ReactorServiceInstanceLoadBalancer.class);
+        Mockito.when(loadBalancer.choose(Mockito.any())).thenReturn(Mono.just(new DefaultResponse(chosen)));
+        return filter(concurrencyLimiter, loadBalancer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LoadBalancerConfig.ConcurrencyLimitFilter filter(ConcurrencyLimiter concurrencyLimiter, ReactorServiceInstanceLoadBalancer loadBalancer) {
+        LoadBalancerClientFactory clientFactory = Mockito.mock(LoadBalancerClientFactory.class);
+        Mockito.when(clientFactory.getInstance("service", ReactorServiceInstanceLoadBalancer.class)).thenReturn(loadBalancer);
+        ObjectProvider<LoadBalancerClientFactory> provider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(provider.getIfAvailable()).thenReturn(clientFactory);
+        return new LoadBalancerConfig.ConcurrencyLimitFilter(concurrencyLimiter, provider);
+    }
+
+    private static MockServerWebExchange exchange(ServiceInstance serviceInstance) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://gateway/path"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async().id("route").uri("lb://service").predicate(e -> true).build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("http://" + serviceInstance.getHost() + ":8080/path"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(serviceInstance));
+        return exchange;
+    }
+}
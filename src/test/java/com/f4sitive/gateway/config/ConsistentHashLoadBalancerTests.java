@@ -0,0 +1,105 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashLoadBalancerTests {
+    private final ServiceInstance a = instance("a", 8080);
+    private final ServiceInstance b = instance("b", 8081);
+    private final ServiceInstance c = instance("c", 8082);
+    private final List<ServiceInstance> membership = ServiceInstances.of(Arrays.asList(a, b, c));
+
+    @Test
+    void sameKeySelectsSameInstance() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        ServiceInstance selected = loadBalancer.choose(membership, membership, "user-1").getServer();
+
+        for (int i = 0; i < 16; i++) {
+            assertThat(loadBalancer.choose(membership, membership, "user-1").getServer()).isSameAs(selected);
+        }
+    }
+
+    @Test
+    void ineligibleOwnerMovesOnlyItsKeys() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        Map<String, ServiceInstance> before = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            before.put("user-" + i, loadBalancer.choose(membership, membership, "user-" + i).getServer());
+        }
+        List<ServiceInstance> eligible = Arrays.asList(a, c);
+
+        for (Map.Entry<String, ServiceInstance> entry : before.entrySet()) {
+            ServiceInstance after = loadBalancer.choose(membership, eligible, entry.getKey()).getServer();
+            if (entry.getValue() == b) {
+                assertThat(after).isIn(a, c);
+            } else {
+                assertThat(after).isSameAs(entry.getValue());
+            }
+        }
+        assertThat(before.values()).contains(b);
+    }
+
+    @Test
+    void ringIsKeyedByMembershipNotPosition() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        List<ServiceInstance> reordered = new ArrayList<>(Arrays.asList(c, a, b));
+
+        for (int i = 0; i < 100; i++) {
+            String key = "user-" + i;
+            assertThat(loadBalancer.choose(reordered, Arrays.asList(b, c, a), key).getServer())
+                    .isSameAs(loadBalancer.choose(membership, membership, key).getServer());
+        }
+    }
+
+    @Test
+    void boundedLoadSpillsToNextOwner() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        ServiceInstance owner = loadBalancer.choose(membership, membership, "user-1").getServer();
+        for (int i = 0; i < 4; i++) {
+            loadBalancer.onStart(owner);
+        }
+
+        assertThat(loadBalancer.choose(membership, membership, "user-1").getServer()).isNotSameAs(owner);
+    }
+
+    @Test
+    void finishedAndCancelledRequestsReleaseLoad() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        ServiceInstance owner = loadBalancer.choose(membership, membership, "user-1").getServer();
+        for (int i = 0; i < 4; i++) {
+            loadBalancer.onStart(owner);
+        }
+        loadBalancer.onFinally(owner, SignalType.ON_COMPLETE, 0L);
+        loadBalancer.onFinally(owner, SignalType.ON_ERROR, 0L);
+        loadBalancer.onFinally(owner, SignalType.CANCEL, 0L);
+        loadBalancer.onFinally(owner, SignalType.CANCEL, 0L);
+
+        assertThat(loadBalancer.choose(membership, membership, "user-1").getServer()).isSameAs(owner);
+    }
+
+    @Test
+    void missingKeyFallsBackToRoundRobin() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(null, new LoadBalancerConfig.Hash());
+        List<ServiceInstance> selected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            selected.add(loadBalancer.choose(membership, membership, null).getServer());
+        }
+
+        assertThat(selected.stream().map(ServiceInstance::getInstanceId).collect(Collectors.toSet())).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    private static ServiceInstance instance(String instanceId, int port) {
+        return new DefaultServiceInstance(instanceId, "service", "localhost", port, false);
+    }
+}
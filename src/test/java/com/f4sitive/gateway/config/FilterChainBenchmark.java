@@ -0,0 +1,248 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.security.OAuthFlow;
+import io.swagger.v3.oas.models.security.OAuthFlows;
+import io.swagger.v3.oas.models.security.SecurityScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.factory.rewrite.RewriteFunction;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebHandler;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.handler.DefaultWebFilterChain;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+    private static final byte[] BODY = "{\"id\":1,\"name\":\"4sitive\",\"devices\":[\"d5f2c1e0-8d4f-4f6e-9a3c-3b2a1f0e9d8c\"]}".getBytes(StandardCharsets.UTF_8);
+    private static final String SWAGGER = "{\"openapi\":\"3.0.1\",\"info\":{\"title\":\"api\",\"version\":\"v1\"}," +
+            "\"servers\":[{\"url\":\"http://10.0.0.12:8080\",\"description\":\"Generated server url\"}]," +
+            "\"paths\":{" +
+            "\"/v1/users/{id}\":{\"get\":{\"operationId\":\"user\",\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\"}},{\"name\":\"User-Id\",\"in\":\"header\",\"schema\":{\"type\":\"string\"}},{\"name\":\"Device-Id\",\"in\":\"header\",\"schema\":{\"type\":\"string\"}}],\"responses\":{\"200\":{\"description\":\"OK\"}}}," +
+            "\"put\":{\"operationId\":\"update\",\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\"}},{\"name\":\"Auth-Token\",\"in\":\"header\",\"schema\":{\"type\":\"string\"}}],\"responses\":{\"200\":{\"description\":\"OK\"}}}}," +
+            "\"/v1/users/{id}/devices\":{\"get\":{\"operationId\":\"devices\",\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\"}},{\"name\":\"page\",\"in\":\"query\",\"schema\":{\"type\":\"integer\"}},{\"name\":\"User-Id\",\"in\":\"header\",\"schema\":{\"type\":\"string\"}}],\"responses\":{\"200\":{\"description\":\"OK\"}}}}}," +
+            "\"components\":{\"schemas\":{\"User\":{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"integer\"},\"name\":{\"type\":\"string\"}}}}}}";
+    private static final byte[] SWAGGER_BYTES = SWAGGER.getBytes(StandardCharsets.UTF_8);
+
+    private final WebSessionManager sessionManager = new DefaultWebSessionManager();
+    private final ServerCodecConfigurer codecConfigurer = ServerCodecConfigurer.create();
+    private final LocaleContextResolver localeContextResolver = new AcceptHeaderLocaleContextResolver();
+    private WebFilter remoteUserWebFilter;
+    private GlobalFilter contentGlobalFilter;
+    private WebFilter tracerWebFilter;
+    private WebFilter corsWebFilter;
+    private GatewayFilter stickySession;
+    private GatewayFilter hostChangeRequestUri;
+    private RewriteFunction<JsonNode, JsonNode> swaggerRewriteFunction;
+    private SwaggerRewriter swaggerRewriter;
+    private JsonNode swagger;
+    private Route route;
+    private WebHandler chain;
+
+    @Setup
+    public void setup() throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        AccessLogConfig accessLogConfig = new AccessLogConfig();
+        remoteUserWebFilter = accessLogConfig.remoteUserWebFilter();
+        contentGlobalFilter = accessLogConfig.contentGlobalFilter();
+        tracerWebFilter = new TracerConfig().tracerWebFilter(Optional.empty());
+        CorsConfig corsConfig = new CorsConfig();
+        corsConfig.getMapping().put("/**", new CorsConfig.Cors());
+        corsWebFilter = corsConfig.corsWebFilter(Collections.singletonList(corsConfig.reactiveCorsConfigurationSource()));
+        LoadBalancerProperties properties = new LoadBalancerProperties();
+        properties.getStickySession().setInstanceIdCookieName("sc-lb-instance-id");
+        RouteConfig routeConfig = new RouteConfig();
+        stickySession = routeConfig.stickySessionGatewayFilterFactory(Optional.of(properties)).apply(new Object());
+        hostChangeRequestUri = routeConfig.hostChangeRequestUriGatewayFilterFactory().apply(new Object());
+        OpenAPI openAPI = new OpenAPI().components(new Components()
+                .addSecuritySchemes("OAuth2", new SecurityScheme()
+                        .type(SecurityScheme.Type.OAUTH2)
+                        .flows(new OAuthFlows().authorizationCode(new OAuthFlow()
+                                .authorizationUrl("https://account.4sitive.com/oauth/authorize")
+                                .tokenUrl("https://account.4sitive.com/oauth/token")))));
+        swaggerRewriteFunction = routeConfig.swaggerRewriteFunction(openAPI);
+        swaggerRewriter = new SwaggerRewriter(openAPI);
+        swagger = new ObjectMapper().readTree(SWAGGER);
+        route = Route.async()
+                .id("api")
+                .uri("lb://api")
+                .predicate(exchange -> true)
+                .filters(hostChangeRequestUri, stickySession)
+                .build();
+        WebHandler handler = new FilteringWebHandler(Arrays.asList(contentGlobalFilter, new RoutingFilter()));
+        chain = new DefaultWebFilterChain(handler, Arrays.asList(remoteUserWebFilter, tracerWebFilter, corsWebFilter))::filter;
+    }
+
+    @Benchmark
+    public ServerWebExchange baseline() {
+        return exchange();
+    }
+
+    @Benchmark
+    public ServerWebExchange remoteUserWebFilter() {
+        ServerWebExchange exchange = exchange();
+        remoteUserWebFilter.filter(exchange, complete()).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange contentGlobalFilter() {
+        ServerWebExchange exchange = exchange();
+        contentGlobalFilter.filter(exchange, FilterChainBenchmark::write).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange tracerWebFilter() {
+        ServerWebExchange exchange = exchange();
+        tracerWebFilter.filter(exchange, complete()).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange corsWebFilter() {
+        ServerWebExchange exchange = exchange();
+        corsWebFilter.filter(exchange, complete()).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange stickySession() {
+        ServerWebExchange exchange = exchange();
+        stickySession.filter(exchange, gatewayComplete()).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange hostChangeRequestUri() {
+        ServerWebExchange exchange = exchange();
+        hostChangeRequestUri.filter(exchange, gatewayComplete()).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public Optional<String> routePrefix() {
+        return RouteConfig.routePrefix(exchange());
+    }
+
+    @Benchmark
+    public JsonNode swaggerRewriteFunction() {
+        return Mono.from(swaggerRewriteFunction.apply(exchange(), swagger.deepCopy())).block();
+    }
+
+    @Benchmark
+    public byte[] swaggerRewriter() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        swaggerRewriter.rewrite(new ByteArrayInputStream(SWAGGER_BYTES), outputStream, RouteConfig.swaggerUri(exchange()));
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public ServerWebExchange chain() {
+        ServerWebExchange exchange = exchange();
+        chain.handle(exchange).block();
+        return exchange;
+    }
+
+    private ServerWebExchange exchange() {
+        ServerWebExchange exchange = new DefaultServerWebExchange(MockServerHttpRequest.get("https://api.4sitive.com/v1/users/1?page=2")
+                .header(HttpHeaders.ORIGIN, "https://www.4sitive.com")
+                .header(HttpHeaders.USER_AGENT, "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko)")
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.REFERER, "https://www.4sitive.com/")
+                .header("User-Id", "1")
+                .header("Device-Id", "d5f2c1e0-8d4f-4f6e-9a3c-3b2a1f0e9d8c")
+                .cookie(new HttpCookie("sc-lb-instance-id", "api-1"))
+                .build(), new MockServerHttpResponse(), sessionManager, codecConfigurer, localeContextResolver);
+        exchange.getAttributes().put("elapsed_time", System.nanoTime());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        exchange.getAttributes().put(ServerWebExchangeUtils.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Collections.singletonMap("host", "api.internal"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("http://10.0.0.12:8080/v1/users/1?page=2"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR, new LinkedHashSet<>(Collections.singletonList(URI.create("https://api.4sitive.com/api/v1/users/1?page=2"))));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(new DefaultServiceInstance("api-1", "api", "10.0.0.12", 8080, false)));
+        return exchange;
+    }
+
+    private static WebFilterChain complete() {
+        return exchange -> exchange.getResponse().setComplete();
+    }
+
+    private static GatewayFilterChain gatewayComplete() {
+        return exchange -> exchange.getResponse().setComplete();
+    }
+
+    private static Mono<Void> write(ServerWebExchange exchange) {
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        exchange.getResponse().getHeaders().setContentLength(BODY.length);
+        DataBuffer buffer = exchange.getResponse().bufferFactory().wrap(BODY);
+        return exchange.getResponse().writeWith(Mono.just(buffer));
+    }
+
+    static class RoutingFilter implements GlobalFilter, Ordered {
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            return write(exchange);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HealthConfigTests {
+    private final Registration registration = Mockito.mock(Registration.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceRegistry<Registration> serviceRegistry = Mockito.mock(ServiceRegistry.class);
+    private final List<ReadinessState> readiness = new ArrayList<>();
+    private final ApplicationEventPublisher publisher = event -> readiness.add((ReadinessState) ((AvailabilityChangeEvent<?>) event).getState());
+    private final UpstreamWarmup upstreamWarmup = Mockito.mock(UpstreamWarmup.class);
+    private final RegistrationGate registrationGate = new RegistrationGate();
+    private final HealthConfig healthConfig = new HealthConfig(Optional.of(registration), Optional.of(serviceRegistry), registrationGate, publisher);
+
+    HealthConfigTests() {
+        Mockito.when(upstreamWarmup.warmup(Mockito.anyInt())).thenReturn(Mono.delay(Duration.ofMillis(50L)).then());
+    }
+
+    @Test
+    void healthStartsOutOfService() {
+        assertThat(status()).isEqualTo(Status.OUT_OF_SERVICE);
+        Mockito.verifyNoInteractions(serviceRegistry);
+    }
+
+    @Test
+    void startupRegistersOnceWarmupCompletes() {
+        healthConfig.upstreamWarmupListener(upstreamWarmup).onApplicationEvent(new ApplicationStartedEvent(new SpringApplication(), new String[0], Mockito.mock(ConfigurableApplicationContext.class)));
+
+        InOrder inOrder = Mockito.inOrder(upstreamWarmup, serviceRegistry);
+        inOrder.verify(upstreamWarmup).warmup(0);
+        inOrder.verify(serviceRegistry).register(registration);
+        assertThat(status()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void disableDeregistersWithoutWarmup() {
+        assertThat(healthConfig.health("false", upstreamWarmup).block()).extracting(Health::getStatus).isEqualTo(Status.DOWN);
+
+        Mockito.verify(serviceRegistry).deregister(registration);
+        Mockito.verifyNoInteractions(upstreamWarmup);
+        assertThat(readiness).isEmpty();
+    }
+
+    @Test
+    void enableWarmsUpBeforeRegistering() {
+        healthConfig.health("false", upstreamWarmup).block();
+
+        assertThat(healthConfig.health("true", upstreamWarmup).block()).extracting(Health::getStatus).isEqualTo(Status.UP);
+
+        InOrder inOrder = Mockito.inOrder(upstreamWarmup, serviceRegistry);
+        inOrder.verify(upstreamWarmup).warmup(0);
+        inOrder.verify(serviceRegistry).register(registration);
+        assertThat(readiness).containsExactly(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    @Test
+    void autoRegistrationIsHeldUntilWarmupCompletes() {
+        RecordingServiceRegistry target = new RecordingServiceRegistry();
+        @SuppressWarnings("unchecked")
+        ServiceRegistry<Registration> gated = (ServiceRegistry<Registration>) registrationGate.postProcessAfterInitialization(target, "serviceRegistry");
+        HealthConfig healthConfig = new HealthConfig(Optional.of(registration), Optional.of(gated), registrationGate, publisher);
+
+        assertThat(gated).isInstanceOf(RecordingServiceRegistry.class);
+        gated.register(registration);
+        assertThat(target.calls).isEmpty();
+
+        healthConfig.upstreamWarmupListener(upstreamWarmup).onApplicationEvent(new ApplicationStartedEvent(new SpringApplication(), new String[0], Mockito.mock(ConfigurableApplicationContext.class)));
+        gated.deregister(registration);
+
+        assertThat(target.calls).containsExactly("register", "deregister");
+    }
+
+    private Status status() {
+        return healthConfig.reactiveHealthIndicator().health().block().getStatus();
+    }
+
+    static class RecordingServiceRegistry implements ServiceRegistry<Registration> {
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void register(Registration registration) {
+            calls.add("register");
+        }
+
+        @Override
+        public void deregister(Registration registration) {
+            calls.add("deregister");
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setStatus(Registration registration, String status) {
+        }
+
+        @Override
+        public <T> T getStatus(Registration registration) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HealthProbeSchedulerTests {
+    private final LoadBalancerProperties.HealthCheck healthCheck = new LoadBalancerProperties.HealthCheck();
+    private final LoadBalancerConfig.Probe properties = new LoadBalancerConfig.Probe();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private HealthProbeScheduler scheduler;
+
+    HealthProbeSchedulerTests() {
+        healthCheck.setInitialDelay(Duration.ZERO);
+        healthCheck.setInterval(Duration.ofHours(1L));
+        properties.setJitter(0.0D);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.destroy();
+        }
+    }
+
+    @Test
+    void probesAreSharedAcrossServices() {
+        start(request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+        ServiceInstance first = instance("first", "a");
+        ServiceInstance second = instance("second", "a");
+
+        Disposable one = scheduler.healthy(Collections.singletonList(first)).subscribe();
+        Disposable two = scheduler.healthy(Collections.singletonList(second)).subscribe();
+        await(() -> calls("a") == 1);
+        sleep(100L);
+
+        assertThat(calls("a")).isEqualTo(1);
+        assertThat(scheduler.size()).isEqualTo(1);
+        one.dispose();
+        two.dispose();
+    }
+
+    @Test
+    void unknownStatusIsEligible() {
+        start(request -> Mono.never());
+        List<ServiceInstance> instances = Arrays.asList(instance("service", "a"), instance("service", "b"));
+
+        assertThat(scheduler.healthy(instances).blockFirst(Duration.ofSeconds(1L))).isEqualTo(instances);
+    }
+
+    @Test
+    void statusSurvivesMembershipChange() {
+        start(request -> Mono.just(ClientResponse.create("b".equals(request.url().getHost()) ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK).build()));
+        ServiceInstance a = instance("service", "a");
+        ServiceInstance b = instance("service", "b");
+        ServiceInstance c = instance("service", "c");
+
+        assertThat(scheduler.healthy(Arrays.asList(a, b)).filter(Collections.singletonList(a)::equals).blockFirst(Duration.ofSeconds(1L))).isNotNull();
+
+        assertThat(scheduler.healthy(Arrays.asList(a, b, c)).blockFirst(Duration.ofSeconds(1L))).containsExactly(a, c);
+        assertThat(calls("b")).isEqualTo(1);
+    }
+
+    @Test
+    void staleStatusIsProbedOnRegister() {
+        properties.setTtl(Duration.ofMillis(100L));
+        start(request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+        List<ServiceInstance> instances = Collections.singletonList(instance("service", "a"));
+
+        Disposable first = scheduler.healthy(instances).subscribe();
+        await(() -> calls("a") == 1);
+        sleep(200L);
+        Disposable second = scheduler.healthy(instances).subscribe();
+        await(() -> calls("a") == 2);
+
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void releasedProbesExpireAfterTtl() {
+        properties.setTtl(Duration.ofMillis(100L));
+        start(request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+
+        scheduler.healthy(Collections.singletonList(instance("service", "a"))).subscribe().dispose();
+
+        assertThat(scheduler.size()).isEqualTo(1);
+        await(() -> scheduler.size() == 0);
+    }
+
+    @Test
+    void probesRespectConcurrencyCap() {
+        properties.setMaxConcurrency(2);
+        AtomicInteger inflight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        start(request -> Mono.delay(Duration.ofMillis(50L))
+                .doOnSubscribe(subscription -> peak.accumulateAndGet(inflight.incrementAndGet(), Math::max))
+                .doOnTerminate(inflight::decrementAndGet)
+                .thenReturn(ClientResponse.create(HttpStatus.OK).build()));
+        List<ServiceInstance> instances = IntStream.range(0, 6)
+                .mapToObj(i -> instance("service", "host" + i))
+                .collect(Collectors.toList());
+
+        Disposable subscription = scheduler.healthy(instances).subscribe();
+        await(() -> calls.values().stream().mapToInt(AtomicInteger::get).sum() == 6);
+
+        assertThat(peak.get()).isEqualTo(2);
+        subscription.dispose();
+    }
+
+    @Test
+    void jitterStaysWithinSpread() {
+        properties.setJitter(0.2D);
+        healthCheck.setInterval(Duration.ofSeconds(10L));
+        start(request -> Mono.never());
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(scheduler.jitter(Duration.ofSeconds(10L), Duration.ofSeconds(10L))).isBetween(Duration.ofSeconds(8L), Duration.ofSeconds(12L));
+            assertThat(scheduler.initialDelay()).isBetween(Duration.ZERO, Duration.ofSeconds(1L));
+        }
+    }
+
+    private void start(Function<ClientRequest, Mono<ClientResponse>> exchange) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    calls.computeIfAbsent(request.url().getHost(), host -> new AtomicInteger()).incrementAndGet();
+                    return exchange.apply(request);
+                })
+                .build();
+        scheduler = new HealthProbeScheduler(webClient, healthCheck, properties);
+    }
+
+    private int calls(String host) {
+        return calls.getOrDefault(host, new AtomicInteger()).get();
+    }
+
+    private static ServiceInstance instance(String serviceId, String host) {
+        return new DefaultServiceInstance(serviceId + "-" + host, serviceId, host, 8080, false);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5L).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            sleep(10L);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgeConfigTests {
+    private final HedgeConfig.Hedge properties = new HedgeConfig.Hedge();
+    private final LoadBalancerConfig.Limit limit = new LoadBalancerConfig.Limit();
+    private final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(limit, Optional.empty());
+    private final LoadBalancerConfig.Outlier outlier = new LoadBalancerConfig.Outlier();
+    private final OutlierDetector outlierDetector = new OutlierDetector(outlier);
+    private final AtomicInteger primaryRequests = new AtomicInteger();
+    private final AtomicInteger alternateRequests = new AtomicInteger();
+    private final CountDownLatch primaryClosed = new CountDownLatch(1);
+    private volatile Function<HttpServerResponse, Mono<Void>> primaryResponse = response -> response.sendString(Mono.just("primary")).then();
+    private volatile Function<HttpServerResponse, Mono<Void>> alternateResponse = response -> response.sendString(Mono.just("alternate")).then();
+    private final DisposableServer primaryServer = HttpServer.create()
+            .port(0)
+            .handle((request, response) -> {
+                primaryRequests.incrementAndGet();
+                response.withConnection(connection -> connection.onDispose(primaryClosed::countDown));
+                return primaryResponse.apply(response);
+            })
+            .bindNow();
+    private final DisposableServer alternateServer = HttpServer.create()
+            .port(0)
+            .handle((request, response) -> {
+                alternateRequests.incrementAndGet();
+                return alternateResponse.apply(response);
+            })
+            .bindNow();
+    private final ServiceInstance primary = new DefaultServiceInstance("primary", "service", "localhost", primaryServer.port(), false);
+    private final ServiceInstance alternate = new DefaultServiceInstance("alternate", "service", "localhost", alternateServer.port(), false);
+    private final TrackingLoadBalancer loadBalancer = new TrackingLoadBalancer(alternate);
+
+    HedgeConfigTests() {
+        properties.getBudget().setRatio(1.0D);
+        properties.setMinDelay(Duration.ZERO);
+        properties.setSamples(16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primaryServer.disposeNow();
+        alternateServer.disposeNow();
+    }
+
+    @Test
+    void fasterAlternateWinsAndLoserIsDisposed() throws InterruptedException {
+        primaryResponse = response -> Mono.delay(Duration.ofSeconds(2L)).then(response.sendString(Mono.just("primary")).then());
+
+        MockServerWebExchange exchange = route(Duration.ofMillis(50L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(alternate);
+        assertThat(exchange.<URI>getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR)).isEqualTo(URI.create("http://localhost:" + alternateServer.port() + "/path"));
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(200);
+        assertThat(primaryClosed.await(1L, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        MockServerWebExchange exchange = route(Duration.ofSeconds(1L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(primary);
+        assertThat(alternateRequests.get()).isZero();
+    }
+
+    @Test
+    void exhaustedBudgetWaitsForPrimary() {
+        properties.getBudget().setRatio(0.0D);
+        primaryResponse = response -> Mono.delay(Duration.ofMillis(200L)).then(response.sendString(Mono.just("primary")).then());
+
+        MockServerWebExchange exchange = route(Duration.ofMillis(10L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(primary);
+        assertThat(alternateRequests.get()).isZero();
+    }
+
+    @Test
+    void serverErrorFallsThroughToAlternate() {
+        primaryResponse = response -> response.status(503).send();
+
+        MockServerWebExchange exchange = route(Duration.ofSeconds(5L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(alternate);
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void serverErrorIsReturnedWhenAlternateAlsoFails() {
+        primaryResponse = response -> response.status(503).send();
+        alternateResponse = response -> response.status(502).send();
+
+        MockServerWebExchange exchange = route(Duration.ofSeconds(5L));
+
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(503);
+        assertThat(alternateRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void hedgeHoldsConcurrencyPermitAndInflightSlotOfAlternate() {
+        limit.setEnabled(true);
+        primaryResponse = response -> Mono.delay(Duration.ofSeconds(2L)).then(response.sendString(Mono.just("primary")).then());
+
+        MockServerWebExchange exchange = route(Duration.ofMillis(50L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(alternate);
+        assertThat(loadBalancer.started).containsExactly(alternate);
+        assertThat(loadBalancer.finished).containsExactly(SignalType.ON_COMPLETE);
+        assertThat(concurrencyLimiter.tryAcquire(alternate).getInflight()).isEqualTo(1);
+    }
+
+    @Test
+    void saturatedAlternateIsNotHedged() {
+        limit.setEnabled(true);
+        limit.setInitialLimit(1);
+        limit.setMinLimit(1);
+        assertThat(concurrencyLimiter.tryAcquire(alternate)).isNotNull();
+        primaryResponse = response -> Mono.delay(Duration.ofMillis(200L)).then(response.sendString(Mono.just("primary")).then());
+
+        MockServerWebExchange exchange = route(Duration.ofMillis(10L));
+
+        assertThat(LoadBalancerConfig.OutlierDetectionFilter.serviceInstance(exchange)).contains(primary);
+        assertThat(alternateRequests.get()).isZero();
+        assertThat(loadBalancer.started).isEmpty();
+    }
+
+    @Test
+    void slowPrimaryIsPenalisedWhenHedgeWins() {
+        outlier.setConsecutiveErrors(1);
+        List<ServiceInstance> serviceInstances = Arrays.asList(primary, alternate);
+        outlierDetector.filter(serviceInstances);
+        primaryResponse = response -> Mono.delay(Duration.ofSeconds(2L)).then(response.sendString(Mono.just("primary")).then());
+
+        route(Duration.ofMillis(50L));
+
+        assertThat(outlierDetector.filter(serviceInstances)).containsExactly(alternate);
+    }
+
+    @Test
+    void latencyIsRecordedAtResponseHeaders() {
+        primaryResponse = response -> response.sendHeaders().sendString(Mono.delay(Duration.ofMillis(300L)).thenReturn("primary")).then();
+        HedgeConfig.HedgeGatewayFilterFactory factory = factory();
+
+        for (int i = 0; i < 16; i++) {
+            route(factory, null);
+        }
+
+        assertThat(alternateRequests.get()).isZero();
+        assertThat(factory.hedging("route").delay(properties)).isLessThan(Duration.ofMillis(300L));
+    }
+
+    private MockServerWebExchange route(Duration delay) {
+        return route(factory(), delay);
+    }
+
+    private MockServerWebExchange route(HedgeConfig.HedgeGatewayFilterFactory factory, Duration delay) {
+        HedgeConfig.HedgeGatewayFilterFactory.Config config = new HedgeConfig.HedgeGatewayFilterFactory.Config();
+        config.setRouteId("route");
+        config.setDelay(delay);
+        GatewayFilter filter = factory.apply(config);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://gateway/path"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async().id("route").uri("lb://service").predicate(e -> true).build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("http://localhost:" + primaryServer.port() + "/path"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(primary));
+        filter.filter(exchange, HedgeConfigTests::release).block(Duration.ofSeconds(5L));
+        return exchange;
+    }
+
+    private static Mono<Void> release(ServerWebExchange exchange) {
+        Connection connection = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        connection.dispose();
+        return Mono.empty();
+    }
+
+    static class TrackingLoadBalancer implements ReactorServiceInstanceLoadBalancer, LoadBalancerConfig.InflightTracking {
+        private final ServiceInstance serviceInstance;
+        private final List<ServiceInstance> started = new CopyOnWriteArrayList<>();
+        private final List<SignalType> finished = new CopyOnWriteArrayList<>();
+
+        TrackingLoadBalancer(ServiceInstance serviceInstance) {
+            this.serviceInstance = serviceInstance;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Mono<Response<ServiceInstance>> choose(Request request) {
+            return Mono.just(new DefaultResponse(serviceInstance));
+        }
+
+        @Override
+        public void onStart(ServiceInstance serviceInstance) {
+            started.add(serviceInstance);
+        }
+
+        @Override
+        public void onFinally(ServiceInstance serviceInstance, SignalType signalType, long latency) {
+            finished.add(signalType);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HedgeConfig.HedgeGatewayFilterFactory factory() {
+        LoadBalancerClientFactory clientFactory = Mockito.mock(LoadBalancerClientFactory.class);
+        Mockito.when(clientFactory.getInstance("service", ReactorServiceInstanceLoadBalancer.class)).thenReturn(loadBalancer);
+        ObjectProvider<LoadBalancerClientFactory> loadBalancerClientFactory = Mockito.mock(ObjectProvider.class);
+        Mockito.when(loadBalancerClientFactory.getIfAvailable()).thenReturn(clientFactory);
+        ObjectProvider<List<HttpHeadersFilter>> headersFilters = Mockito.mock(ObjectProvider.class);
+        Mockito.when(headersFilters.getIfAvailable()).thenReturn(Collections.emptyList());
+        return new HedgeConfig.HedgeGatewayFilterFactory(properties, HttpClient.create(), headersFilters, new HttpClientProperties(), loadBalancerClientFactory, concurrencyLimiter, outlierDetector, Optional.empty());
+    }
+}
@@ -0,0 +1,142 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class HttpConfigTests {
+    @Test
+    void hostMatcherMatchesExactNames() {
+        HttpConfig.HostMatcher matcher = new HttpConfig.HostMatcher(Arrays.asList("api.4sitive.com", " Account.4sitive.com "));
+        assertThat(matcher.matches("api.4sitive.com")).isTrue();
+        assertThat(matcher.matches("account.4sitive.com")).isTrue();
+        assertThat(matcher.matches("www.api.4sitive.com")).isFalse();
+        assertThat(matcher.matches("4sitive.com")).isFalse();
+    }
+
+    @Test
+    void hostMatcherMatchesWildcardSuffixes() {
+        HttpConfig.HostMatcher matcher = new HttpConfig.HostMatcher(Arrays.asList("*.4sitive.com", ".example.com"));
+        assertThat(matcher.matches("api.4sitive.com")).isTrue();
+        assertThat(matcher.matches("a.b.4sitive.com")).isTrue();
+        assertThat(matcher.matches("4sitive.com")).isFalse();
+        assertThat(matcher.matches("not4sitive.com")).isFalse();
+        assertThat(matcher.matches("www.example.com")).isTrue();
+        assertThat(matcher.matches("example.com")).isFalse();
+    }
+
+    @Test
+    void hostMatcherMatchesIpv4Networks() {
+        HttpConfig.HostMatcher matcher = new HttpConfig.HostMatcher(Arrays.asList("10.0.0.0/8", "192.168.1.0/25", "172.16.0.1"));
+        assertThat(matcher.matches("10.255.3.4")).isTrue();
+        assertThat(matcher.matches("11.0.0.1")).isFalse();
+        assertThat(matcher.matches("192.168.1.127")).isTrue();
+        assertThat(matcher.matches("192.168.1.128")).isFalse();
+        assertThat(matcher.matches("172.16.0.1")).isTrue();
+        assertThat(matcher.matches("172.16.0.2")).isFalse();
+        assertThat(matcher.matches("10.0.0")).isFalse();
+        assertThat(matcher.matches("10.0.0.256")).isFalse();
+    }
+
+    @Test
+    void hostMatcherMatchesIpv6Networks() {
+        HttpConfig.HostMatcher matcher = new HttpConfig.HostMatcher(Collections.singletonList("fd00::/8"));
+        assertThat(matcher.matches("fd12:3456::1")).isTrue();
+        assertThat(matcher.matches("[fd12:3456::1]")).isTrue();
+        assertThat(matcher.matches("fe80::1")).isFalse();
+        assertThat(matcher.matches("10.0.0.1")).isFalse();
+    }
+
+    @Test
+    void hostMatcherMatchesEverythingWithAsterisk() {
+        HttpConfig.HostMatcher matcher = new HttpConfig.HostMatcher(Collections.singletonList("*"));
+        assertThat(matcher.matches("anything.example")).isTrue();
+        assertThat(new HttpConfig.HostMatcher(Collections.emptyList()).matches("anything.example")).isFalse();
+    }
+
+    @Test
+    void hostMatcherRejectsInvalidNetworks() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new HttpConfig.HostMatcher(Collections.singletonList("10.0.0.0/33")));
+        assertThatIllegalArgumentException().isThrownBy(() -> new HttpConfig.HostMatcher(Collections.singletonList("host/8")));
+    }
+
+    @Test
+    void proxyExcludesWinOverIncludes() {
+        HttpConfig.Proxy proxy = new HttpConfig.Proxy();
+        proxy.setHost("proxy.4sitive.com");
+        proxy.setPort(3128);
+        proxy.setIncluded(new TreeSet<>(Arrays.asList("*.4sitive.com", "10.0.0.0/8")));
+        proxy.setExcluded(new TreeSet<>(Collections.singletonList("internal.4sitive.com")));
+        assertThat(proxy.matches("API.4sitive.com")).isTrue();
+        assertThat(proxy.matches("internal.4sitive.com")).isFalse();
+        assertThat(proxy.matches("proxy.4sitive.com")).isFalse();
+        assertThat(proxy.matches("10.1.2.3")).isTrue();
+        assertThat(proxy.matches("example.com")).isFalse();
+    }
+
+    @Test
+    void proxyRecompilesRulesWhenReplaced() {
+        HttpConfig.Proxy proxy = new HttpConfig.Proxy();
+        proxy.setPort(3128);
+        proxy.setIncluded(new TreeSet<>(Collections.singletonList("*.4sitive.com")));
+        assertThat(proxy.matches("api.4sitive.com")).isTrue();
+        proxy.setExcluded(new TreeSet<>(Collections.singletonList("api.4sitive.com")));
+        assertThat(proxy.matches("api.4sitive.com")).isFalse();
+    }
+
+    @Test
+    void proxyIsDisabledWithoutPort() {
+        HttpConfig.Proxy proxy = new HttpConfig.Proxy();
+        proxy.setIncluded(new TreeSet<>(Collections.singletonList("*")));
+        assertThat(proxy.matches("api.4sitive.com")).isFalse();
+    }
+
+    @Test
+    void proxyDecisionCacheStaysBounded() {
+        HttpConfig.Proxy proxy = new HttpConfig.Proxy();
+        proxy.setPort(3128);
+        proxy.setCacheSize(2);
+        proxy.setIncluded(new TreeSet<>(Collections.singletonList("*.4sitive.com")));
+        for (int index = 0; index < 10; index++) {
+            assertThat(proxy.matches("host" + index + ".4sitive.com")).isTrue();
+        }
+        assertThat(proxy.matches("example.com")).isFalse();
+    }
+
+    @Test
+    void destinationFallsBackToDefaultPool() {
+        HttpConfig.Destination destination = new HttpConfig.Destination();
+        HttpConfig.Pool pool = new HttpConfig.Pool();
+        pool.setMaxConnections(8);
+        pool.setMaxRequestsQueued(16);
+        destination.getHosts().put("API.4sitive.com", pool);
+        assertThat(destination.pool("api.4sitive.com")).isSameAs(pool);
+        assertThat(destination.pool("account.4sitive.com")).isSameAs(destination);
+        assertThat(destination.pool("account.4sitive.com").getMaxConnections()).isEqualTo(64);
+        assertThat(destination.pool("account.4sitive.com").getMaxRequestsQueued()).isEqualTo(1024);
+    }
+
+    @Test
+    void contentCaptureIsCutOnWholeCharacters() {
+        HttpConfig.ContentCapture capture = new HttpConfig.ContentCapture(4);
+        capture.accept(ByteBuffer.wrap("a한글".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(capture.toString()).isEqualTo("a한");
+    }
+
+    @Test
+    void contentCaptureKeepsCompleteContent() {
+        HttpConfig.ContentCapture capture = new HttpConfig.ContentCapture(16);
+        capture.accept(ByteBuffer.wrap("a한".getBytes(StandardCharsets.UTF_8)));
+        capture.accept(ByteBuffer.wrap("글".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(capture.toString()).isEqualTo("a한글");
+    }
+}
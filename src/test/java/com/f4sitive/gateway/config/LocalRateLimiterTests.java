@@ -0,0 +1,158 @@
+package com.f4sitive.gateway.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterTests {
+    private final RateLimiterConfig.Local properties = new RateLimiterConfig.Local();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LocalRateLimiter rateLimiter;
+
+    @AfterEach
+    void tearDown() {
+        rateLimiter.destroy();
+    }
+
+    @Test
+    void burstIsAllowedThenDenied() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(3);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.of(meterRegistry));
+
+        assertThat(remaining(allowed("route", "user"))).isEqualTo("2");
+        assertThat(remaining(allowed("route", "user"))).isEqualTo("1");
+        assertThat(remaining(allowed("route", "user"))).isEqualTo("0");
+        RateLimiter.Response denied = rateLimiter.isAllowed("route", "user").block();
+
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(remaining(denied)).isEqualTo("0");
+        assertThat(denied.getHeaders())
+                .containsEntry(LocalRateLimiter.REPLENISH_RATE_HEADER, "1")
+                .containsEntry(LocalRateLimiter.BURST_CAPACITY_HEADER, "3")
+                .containsEntry(LocalRateLimiter.REQUESTED_TOKENS_HEADER, "1");
+        assertThat(meterRegistry.get("rate.limiter.requests").tag("result", "allowed").functionCounter().count()).isEqualTo(3.0D);
+        assertThat(meterRegistry.get("rate.limiter.requests").tag("result", "denied").functionCounter().count()).isEqualTo(1.0D);
+    }
+
+    @Test
+    void keysAreLimitedIndependently() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(1);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+
+        allowed("route", "a");
+        allowed("route", "b");
+        allowed("other", "a");
+
+        assertThat(rateLimiter.isAllowed("route", "a").block().isAllowed()).isFalse();
+    }
+
+    @Test
+    void tokensReplenishAfterInterval() throws InterruptedException {
+        properties.setReplenishRate(10);
+        properties.setBurstCapacity(1);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+
+        allowed("route", "user");
+        assertThat(rateLimiter.isAllowed("route", "user").block().isAllowed()).isFalse();
+        TimeUnit.MILLISECONDS.sleep(150L);
+
+        allowed("route", "user");
+    }
+
+    @Test
+    void requestedTokensConsumeBurst() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(4);
+        properties.setRequestedTokens(2);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+
+        assertThat(remaining(allowed("route", "user"))).isEqualTo("2");
+        assertThat(remaining(allowed("route", "user"))).isEqualTo("0");
+        assertThat(rateLimiter.isAllowed("route", "user").block().isAllowed()).isFalse();
+    }
+
+    @Test
+    void routeConfigOverridesDefaults() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(1);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+        LocalRateLimiter.Config config = new LocalRateLimiter.Config();
+        config.setBurstCapacity(2);
+        rateLimiter.getConfig().put("route", config);
+
+        allowed("route", "user");
+        allowed("route", "user");
+
+        assertThat(rateLimiter.isAllowed("route", "user").block().isAllowed()).isFalse();
+    }
+
+    @Test
+    void globalLimitIsSplitAcrossReplicas() {
+        properties.setReplenishRate(10);
+        properties.setBurstCapacity(4);
+        properties.setGlobal(true);
+        properties.setReplicas(2);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+
+        assertThat(allowed("route", "user").getHeaders()).containsEntry(LocalRateLimiter.BURST_CAPACITY_HEADER, "2");
+        allowed("route", "user");
+        assertThat(rateLimiter.isAllowed("route", "user").block().isAllowed()).isFalse();
+    }
+
+    @Test
+    void keysBeyondMaxShareOverflowBucket() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(1);
+        properties.setMaxKeys(2);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.of(meterRegistry));
+
+        allowed("route", "a");
+        allowed("route", "b");
+        allowed("route", "c");
+
+        assertThat(rateLimiter.isAllowed("route", "d").block().isAllowed()).isFalse();
+        assertThat(meterRegistry.get("rate.limiter.keys").gauge().value()).isEqualTo(2.0D);
+    }
+
+    @Test
+    void expiredKeysAreEvicted() {
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(1);
+        properties.setMaxKeys(1);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.of(meterRegistry));
+        allowed("route", "a");
+
+        rateLimiter.evict(System.nanoTime());
+        assertThat(meterRegistry.get("rate.limiter.keys").gauge().value()).isEqualTo(1.0D);
+        rateLimiter.evict(System.nanoTime() + Duration.ofSeconds(2L).toNanos());
+
+        assertThat(meterRegistry.get("rate.limiter.keys").gauge().value()).isZero();
+    }
+
+    @Test
+    void headersCanBeDisabled() {
+        properties.setIncludeHeaders(false);
+        rateLimiter = new LocalRateLimiter(properties, null, Optional.empty());
+
+        assertThat(allowed("route", "user").getHeaders()).isEmpty();
+    }
+
+    private RateLimiter.Response allowed(String routeId, String id) {
+        RateLimiter.Response response = rateLimiter.isAllowed(routeId, id).block();
+        assertThat(response.isAllowed()).isTrue();
+        return response;
+    }
+
+    private static String remaining(RateLimiter.Response response) {
+        return response.getHeaders().get(LocalRateLimiter.REMAINING_HEADER);
+    }
+}
@@ -0,0 +1,147 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutlierDetectorTests {
+    private static final long SECOND = Duration.ofSeconds(1L).toNanos();
+
+    @Test
+    void ejectsAfterConsecutiveFailures() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        outlierDetector.failure(a, 0L);
+        outlierDetector.failure(a, 0L);
+        assertThat(outlierDetector.filter(serviceInstances, 0L)).containsExactly(a, b);
+
+        outlierDetector.failure(a, 0L);
+        assertThat(outlierDetector.filter(serviceInstances, 0L)).containsExactly(b);
+    }
+
+    @Test
+    void successResetsConsecutiveFailures() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        outlierDetector.failure(a, 0L);
+        outlierDetector.failure(a, 0L);
+        outlierDetector.success(a);
+        outlierDetector.failure(a, 0L);
+
+        assertThat(outlierDetector.filter(serviceInstances, 0L)).containsExactly(a, b);
+    }
+
+    @Test
+    void restoresAfterEjectionTime() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        eject(outlierDetector, a, 0L);
+
+        assertThat(outlierDetector.filter(serviceInstances, 10L * SECOND - 1L)).containsExactly(b);
+        assertThat(outlierDetector.filter(serviceInstances, 10L * SECOND)).containsExactly(a, b);
+    }
+
+    @Test
+    void repeatedEjectionBacksOffUpToMaxEjectionTime() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        eject(outlierDetector, a, 0L);
+        assertThat(outlierDetector.filter(serviceInstances, 9L * SECOND)).containsExactly(b);
+        assertThat(outlierDetector.filter(serviceInstances, 10L * SECOND)).containsExactly(a, b);
+
+        eject(outlierDetector, a, 10L * SECOND);
+        assertThat(outlierDetector.filter(serviceInstances, 29L * SECOND)).containsExactly(b);
+        assertThat(outlierDetector.filter(serviceInstances, 30L * SECOND)).containsExactly(a, b);
+
+        eject(outlierDetector, a, 30L * SECOND);
+        assertThat(outlierDetector.filter(serviceInstances, 59L * SECOND)).containsExactly(b);
+        assertThat(outlierDetector.filter(serviceInstances, 60L * SECOND)).containsExactly(a, b);
+    }
+
+    @Test
+    void capsEjectedInstancesAtMaxEjectionPercent() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        ServiceInstance c = instance("c");
+        ServiceInstance d = instance("d");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b, c, d);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        for (ServiceInstance serviceInstance : serviceInstances) {
+            eject(outlierDetector, serviceInstance, 0L);
+        }
+
+        assertThat(outlierDetector.filter(serviceInstances, 0L)).containsExactly(c, d);
+    }
+
+    @Test
+    void forgetsInstancesThatLeaveTheService() {
+        OutlierDetector outlierDetector = new OutlierDetector(outlier());
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        ServiceInstance c = instance("c");
+        outlierDetector.filter(Arrays.asList(a, b), 0L);
+        eject(outlierDetector, a, 0L);
+
+        outlierDetector.filter(Arrays.asList(b, c), 0L);
+
+        assertThat(outlierDetector.filter(Arrays.asList(a, b), 0L)).containsExactly(a, b);
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        LoadBalancerConfig.Outlier properties = outlier();
+        properties.setEnabled(false);
+        OutlierDetector outlierDetector = new OutlierDetector(properties);
+        ServiceInstance a = instance("a");
+        ServiceInstance b = instance("b");
+        List<ServiceInstance> serviceInstances = Arrays.asList(a, b);
+        outlierDetector.filter(serviceInstances, 0L);
+
+        eject(outlierDetector, a, 0L);
+
+        assertThat(outlierDetector.filter(serviceInstances, 0L)).containsExactly(a, b);
+    }
+
+    private static void eject(OutlierDetector outlierDetector, ServiceInstance serviceInstance, long now) {
+        for (int i = 0; i < 3; i++) {
+            outlierDetector.failure(serviceInstance, now);
+        }
+    }
+
+    private static LoadBalancerConfig.Outlier outlier() {
+        LoadBalancerConfig.Outlier properties = new LoadBalancerConfig.Outlier();
+        properties.setConsecutiveErrors(3);
+        properties.setBaseEjectionTime(Duration.ofSeconds(10L));
+        properties.setMaxEjectionTime(Duration.ofSeconds(30L));
+        properties.setMaxEjectionPercent(50);
+        return properties;
+    }
+
+    private static ServiceInstance instance(String instanceId) {
+        return new DefaultServiceInstance(instanceId, "service", instanceId + ".local", 8080, false);
+    }
+}
@@ -0,0 +1,127 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PeakEwmaLoadBalancerTests {
+    private static final long DECAY = Duration.ofSeconds(10L).toNanos();
+
+    @Test
+    void costIsZeroWithoutSamples() {
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+
+        assertThat(stats.cost(System.nanoTime())).isZero();
+    }
+
+    @Test
+    void pendingWithoutSamplesIsPenalized() {
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.start();
+        stats.start();
+
+        assertThat(stats.cost(System.nanoTime())).isEqualTo((double) (Long.MAX_VALUE >> 16) + 2L);
+    }
+
+    @Test
+    void peakIsTakenImmediately() {
+        long now = System.nanoTime();
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.complete(now, 100L);
+        stats.complete(now, 1_000L);
+
+        assertThat(stats.cost(now)).isEqualTo(1_000.0D);
+    }
+
+    @Test
+    void lowerSamplesAreAveragedByElapsedTime() {
+        long now = System.nanoTime();
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.complete(now, 1_000L);
+        stats.complete(now + DECAY, 500L);
+
+        double weight = Math.exp(-1.0D);
+        assertThat(stats.cost(now + DECAY)).isCloseTo(1_000.0D * weight + 500.0D * (1.0D - weight), within(1e-6));
+    }
+
+    @Test
+    void costDecaysWhileIdle() {
+        long now = System.nanoTime();
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.complete(now, 1_000L);
+
+        assertThat(stats.cost(now + DECAY)).isCloseTo(1_000.0D * Math.exp(-1.0D), within(1e-6));
+        assertThat(stats.cost(now - DECAY)).isEqualTo(1_000.0D);
+    }
+
+    @Test
+    void costScalesWithPending() {
+        long now = System.nanoTime();
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.complete(now, 1_000L);
+        stats.start();
+        stats.start();
+
+        assertThat(stats.cost(now)).isEqualTo(3_000.0D);
+    }
+
+    @Test
+    void cancelReleasesPendingWithoutSample() {
+        long now = System.nanoTime();
+        PeakEwmaLoadBalancer.Stats stats = new PeakEwmaLoadBalancer.Stats(DECAY);
+        stats.complete(now, 1_000L);
+        stats.start();
+        stats.cancel();
+        stats.cancel();
+
+        assertThat(stats.cost(now)).isEqualTo(1_000.0D);
+    }
+
+    @Test
+    void choosesCheaperOfTwo() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(null, Duration.ofSeconds(10L));
+        ServiceInstance fast = new DefaultServiceInstance("fast", "service", "localhost", 8080, false);
+        ServiceInstance slow = new DefaultServiceInstance("slow", "service", "localhost", 8081, false);
+        List<ServiceInstance> serviceInstances = Arrays.asList(fast, slow);
+        loadBalancer.onStart(fast);
+        loadBalancer.onFinally(fast, SignalType.ON_COMPLETE, 1_000_000L);
+        loadBalancer.onStart(slow);
+        loadBalancer.onFinally(slow, SignalType.ON_COMPLETE, 100_000_000L);
+
+        for (int i = 0; i < 32; i++) {
+            assertThat(loadBalancer.choose(serviceInstances).getServer()).isSameAs(fast);
+        }
+    }
+
+    @Test
+    void avoidsInstanceWithPendingRequests() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(null, Duration.ofSeconds(10L));
+        ServiceInstance busy = new DefaultServiceInstance("busy", "service", "localhost", 8080, false);
+        ServiceInstance idle = new DefaultServiceInstance("idle", "service", "localhost", 8081, false);
+        loadBalancer.onStart(busy);
+
+        assertThat(loadBalancer.choose(Arrays.asList(busy, idle)).getServer()).isSameAs(idle);
+    }
+
+    @Test
+    void cancelledRequestsDoNotLeakPending() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(null, Duration.ofSeconds(10L));
+        ServiceInstance first = new DefaultServiceInstance("first", "service", "localhost", 8080, false);
+        ServiceInstance second = new DefaultServiceInstance("second", "service", "localhost", 8081, false);
+        for (int i = 0; i < 8; i++) {
+            loadBalancer.onStart(first);
+            loadBalancer.onFinally(first, SignalType.CANCEL, 0L);
+        }
+        loadBalancer.onStart(second);
+
+        assertThat(loadBalancer.choose(Arrays.asList(first, second)).getServer()).isSameAs(first);
+    }
+}
@@ -0,0 +1,31 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterConfigTests {
+    @Test
+    void untrustedIdentityHeadersAreIgnored() {
+        assertThat(RateLimiterConfig.key(request("alice"), false)).isEqualTo("address:10.0.0.1");
+        assertThat(RateLimiterConfig.key(request("bob"), false)).isEqualTo("address:10.0.0.1");
+    }
+
+    @Test
+    void trustedIdentityHeadersTakePrecedence() {
+        assertThat(RateLimiterConfig.key(request("alice"), true)).isEqualTo("user:alice");
+        assertThat(RateLimiterConfig.key(request(null), true)).isEqualTo("address:10.0.0.1");
+    }
+
+    private static MockServerHttpRequest request(String userId) {
+        MockServerHttpRequest.BaseBuilder<?> builder = MockServerHttpRequest.get("/resource")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 50000));
+        if (userId != null) {
+            builder.header("User-Id", userId);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,278 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTests {
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void coldCandidateIsNotAdmittedOverEquallyWarmEntries() {
+        ResponseCache cache = new ResponseCache("test", 10_000L, Optional.empty());
+        for (int i = 0; i < 9; i++) {
+            cache.put("key-" + i, entry("max-age=60", 1_000));
+        }
+
+        cache.put("cold", entry("max-age=60", 1_000));
+
+        assertThat(cache.get("cold")).isNull();
+        for (int i = 0; i < 9; i++) {
+            assertThat(cache.get("key-" + i)).isNotNull();
+        }
+        assertThat(cache.getBytes()).isLessThanOrEqualTo(10_000L);
+    }
+
+    @Test
+    void frequentlyRequestedCandidateEvictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache("test", 10_000L, Optional.empty());
+        for (int i = 0; i < 9; i++) {
+            cache.put("key-" + i, entry("max-age=60", 1_000));
+        }
+        for (int i = 1; i < 9; i++) {
+            cache.get("key-" + i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertThat(cache.get("hot")).isNull();
+        }
+
+        cache.put("hot", entry("max-age=60", 1_000));
+
+        assertThat(cache.get("hot")).isNotNull();
+        assertThat(cache.get("key-0")).isNull();
+        assertThat(cache.getBytes()).isLessThanOrEqualTo(10_000L);
+    }
+
+    @Test
+    void oversizedEntriesAreRejected() {
+        ResponseCache cache = new ResponseCache("test", 1_000L, Optional.empty());
+
+        cache.put("large", entry("max-age=60", 2_000));
+
+        assertThat(cache.get("large")).isNull();
+        assertThat(cache.getBytes()).isZero();
+    }
+
+    @Test
+    void shrinkingMaximumEvicts() {
+        ResponseCache cache = new ResponseCache("test", 10_000L, Optional.empty());
+        for (int i = 0; i < 9; i++) {
+            cache.put("key-" + i, entry("max-age=60", 1_000));
+        }
+
+        cache.setMaximumBytes(2_500L);
+
+        assertThat(cache.getBytes()).isLessThanOrEqualTo(2_500L);
+        assertThat(cache.get("key-8")).isNotNull();
+        assertThat(cache.get("key-0")).isNull();
+    }
+
+    @Test
+    void removeReleasesBytes() {
+        ResponseCache cache = new ResponseCache("test", 10_000L, Optional.empty());
+        cache.put("key", entry("max-age=60", 1_000));
+
+        cache.remove("key");
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.getBytes()).isZero();
+    }
+
+    @Test
+    void fullReadBufferRequestsDrain() {
+        ResponseCache.ReadBuffer readBuffer = new ResponseCache.ReadBuffer();
+        List<String> drained = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            assertThat(readBuffer.offer("key-" + i)).isFalse();
+        }
+        assertThat(readBuffer.offer("key-15")).isTrue();
+        assertThat(readBuffer.offer("key-16")).isTrue();
+        readBuffer.drain(drained::add);
+
+        assertThat(drained).hasSize(16).startsWith("key-0").endsWith("key-15");
+    }
+
+    @Test
+    void varyHeadersMustMatch() {
+        ResponseCache.Entry entry = CacheConfig.CacheGatewayFilterFactory.entry(request("gzip"), 200, headers("max-age=60", HttpHeaders.VARY, "Accept-Encoding"), new byte[0], NOW);
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.matches(request("gzip"))).isTrue();
+        assertThat(entry.matches(request("br"))).isFalse();
+        assertThat(entry.matches(MockServerHttpRequest.get("/").build())).isFalse();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(request("gzip"), 200, headers("max-age=60", HttpHeaders.VARY, "*"), new byte[0], NOW)).isNull();
+    }
+
+    @Test
+    void ageIncludesUpstreamAge() {
+        ResponseCache.Entry entry = CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("max-age=60, stale-while-revalidate=30", HttpHeaders.AGE, "10"), new byte[0], NOW);
+
+        assertThat(entry.age(NOW)).isEqualTo(10_000L);
+        assertThat(entry.isFresh(entry.age(NOW + 49_999L))).isTrue();
+        assertThat(entry.isFresh(entry.age(NOW + 50_000L))).isFalse();
+        assertThat(entry.isStaleWhileRevalidate(entry.age(NOW + 79_999L))).isTrue();
+        assertThat(entry.isStaleWhileRevalidate(entry.age(NOW + 80_000L))).isFalse();
+        assertThat(entry.getHeaders().containsKey(HttpHeaders.AGE)).isFalse();
+    }
+
+    @Test
+    void sharedMaxAgeTakesPrecedence() {
+        ResponseCache.Entry entry = CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("max-age=600, s-maxage=5"), new byte[0], NOW);
+
+        assertThat(entry.isFresh(entry.age(NOW + 4_999L))).isTrue();
+        assertThat(entry.isFresh(entry.age(NOW + 5_000L))).isFalse();
+    }
+
+    @Test
+    void expiresIsUsedWithoutMaxAge() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setDate(NOW);
+        headers.setExpires(NOW + 20_000L);
+        ResponseCache.Entry entry = CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers, new byte[0], NOW);
+
+        assertThat(entry.isFresh(entry.age(NOW + 19_000L))).isTrue();
+        assertThat(entry.isFresh(entry.age(NOW + 21_000L))).isFalse();
+    }
+
+    @Test
+    void noCacheIsStoredButNeverFresh() {
+        ResponseCache.Entry entry = CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("no-cache"), new byte[0], NOW);
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.isFresh(entry.age(NOW))).isFalse();
+        assertThat(entry.isStaleWhileRevalidate(entry.age(NOW))).isFalse();
+    }
+
+    @Test
+    void uncacheableResponsesAreNotStored() {
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("private, max-age=60"), new byte[0], NOW)).isNull();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("no-store"), new byte[0], NOW)).isNull();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers("max-age=60", HttpHeaders.SET_COOKIE, "a=b"), new byte[0], NOW)).isNull();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, new HttpHeaders(), new byte[0], NOW)).isNull();
+        MockServerHttpRequest authorized = MockServerHttpRequest.get("/").header(HttpHeaders.AUTHORIZATION, "Bearer token").build();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(authorized, 200, headers("max-age=60"), new byte[0], NOW)).isNull();
+        assertThat(CacheConfig.CacheGatewayFilterFactory.entry(authorized, 200, headers("public, max-age=60"), new byte[0], NOW)).isNotNull();
+    }
+
+    @Test
+    void identifiedResponsesAreNotStoredUnlessPublic() {
+        for (String name : CoalesceConfig.CoalesceGatewayFilterFactory.IDENTITY_HEADERS) {
+            MockServerHttpRequest identified = MockServerHttpRequest.get("/").header(name, "caller").build();
+            assertThat(CacheConfig.CacheGatewayFilterFactory.entry(identified, 200, headers("max-age=60"), new byte[0], NOW)).isNull();
+            assertThat(CacheConfig.CacheGatewayFilterFactory.entry(identified, 200, headers("public, max-age=60"), new byte[0], NOW)).isNotNull();
+        }
+    }
+
+    @Test
+    void staleWhileRevalidateUsesDetachedAttributesAndIsDisposedOnDestroy() {
+        CacheConfig.CacheGatewayFilterFactory factory = new CacheConfig.CacheGatewayFilterFactory(Optional.empty());
+        CacheConfig.CacheGatewayFilterFactory.Config config = new CacheConfig.CacheGatewayFilterFactory.Config();
+        config.setRouteId("test");
+        GatewayFilter filter = factory.apply(config);
+        Route route = Route.async().id("test").uri("http://localhost").predicate(exchange -> true).build();
+        filter.filter(exchange(route), exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setCacheControl("max-age=0, stale-while-revalidate=60");
+            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap("cached".getBytes(StandardCharsets.UTF_8))));
+        }).block();
+        List<ServerWebExchange> revalidations = new ArrayList<>();
+        AtomicInteger cancelled = new AtomicInteger();
+
+        MockServerWebExchange stale = exchange(route);
+        stale.getAttributes().put("capture", "value");
+        filter.filter(stale, exchange -> {
+            revalidations.add(exchange);
+            return Mono.<Void>never().doOnCancel(cancelled::incrementAndGet);
+        }).block();
+        filter.filter(exchange(route), exchange -> {
+            revalidations.add(exchange);
+            return Mono.never();
+        }).block();
+
+        assertThat(stale.getResponse().getBodyAsString().block()).isEqualTo("cached");
+        assertThat(revalidations).hasSize(1);
+        assertThat(revalidations.get(0).getAttributes())
+                .containsEntry(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route)
+                .doesNotContainKey("capture");
+        revalidations.get(0).getAttributes().put("revalidation", true);
+        assertThat(stale.getAttributes()).doesNotContainKey("revalidation");
+
+        factory.destroy();
+
+        assertThat(cancelled).hasValue(1);
+    }
+
+    @Test
+    void revalidationsAreBounded() {
+        CacheConfig.CacheGatewayFilterFactory factory = new CacheConfig.CacheGatewayFilterFactory(Optional.empty());
+        CacheConfig.CacheGatewayFilterFactory.Config config = new CacheConfig.CacheGatewayFilterFactory.Config();
+        config.setRouteId("test");
+        config.setMaxRevalidations(1);
+        GatewayFilter filter = factory.apply(config);
+        Route route = Route.async().id("test").uri("http://localhost").predicate(exchange -> true).build();
+        for (String path : new String[]{"/a", "/b"}) {
+            filter.filter(exchange(route, path), exchange -> {
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().setCacheControl("max-age=0, stale-while-revalidate=60");
+                return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(path.getBytes(StandardCharsets.UTF_8))));
+            }).block();
+        }
+        AtomicInteger revalidations = new AtomicInteger();
+
+        for (String path : new String[]{"/a", "/b"}) {
+            filter.filter(exchange(route, path), exchange -> {
+                revalidations.incrementAndGet();
+                return Mono.never();
+            }).block();
+        }
+
+        assertThat(revalidations).hasValue(1);
+        factory.destroy();
+    }
+
+    private static MockServerWebExchange exchange(Route route) {
+        return exchange(route, "/resource");
+    }
+
+    private static MockServerWebExchange exchange(Route route, String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private static ResponseCache.Entry entry(String cacheControl, int size) {
+        return CacheConfig.CacheGatewayFilterFactory.entry(request(null), 200, headers(cacheControl), new byte[size], NOW);
+    }
+
+    private static MockServerHttpRequest request(String acceptEncoding) {
+        MockServerHttpRequest.BaseBuilder<?> builder = MockServerHttpRequest.get("/");
+        if (acceptEncoding != null) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return builder.build();
+    }
+
+    private static HttpHeaders headers(String cacheControl, String... headers) {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setCacheControl(cacheControl);
+        for (int i = 0; i < headers.length; i += 2) {
+            httpHeaders.add(headers[i], headers[i + 1]);
+        }
+        return httpHeaders;
+    }
+}
@@ -0,0 +1,156 @@
+package com.f4sitive.gateway.config;
+
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.event.EnableBodyCachingEvent;
+import org.springframework.cloud.gateway.filter.AdaptCachedBodyGlobalFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryConfigTests {
+    private final RetryConfig.Budget properties = new RetryConfig.Budget();
+
+    @Test
+    void reserveAllowsRetriesWithoutTraffic() {
+        properties.setMinRetriesPerSecond(2);
+        properties.setTtl(Duration.ofSeconds(1L));
+        RetryConfig.RetryBudget budget = new RetryConfig.RetryBudget(0.2D, properties);
+
+        assertThat(withdrawAll(budget, 100L)).isEqualTo(2);
+    }
+
+    @Test
+    void ratioOfRequestsIsAddedToReserve() {
+        properties.setMinRetriesPerSecond(1);
+        properties.setTtl(Duration.ofSeconds(10L));
+        RetryConfig.RetryBudget budget = new RetryConfig.RetryBudget(0.2D, properties);
+        for (int i = 0; i < 20; i++) {
+            budget.deposit(100L);
+        }
+
+        assertThat(withdrawAll(budget, 105L)).isEqualTo(10 + 4);
+    }
+
+    @Test
+    void bucketsOutsideWindowAreIgnored() {
+        properties.setMinRetriesPerSecond(1);
+        properties.setTtl(Duration.ofSeconds(2L));
+        RetryConfig.RetryBudget budget = new RetryConfig.RetryBudget(0.0D, properties);
+
+        assertThat(withdrawAll(budget, 100L)).isEqualTo(2);
+        assertThat(budget.canWithdraw(101L)).isFalse();
+        assertThat(budget.canWithdraw(102L)).isTrue();
+        budget.withdraw(102L);
+        assertThat(budget.canWithdraw(102L)).isTrue();
+        budget.withdraw(102L);
+        assertThat(budget.canWithdraw(102L)).isFalse();
+    }
+
+    @Test
+    void nonIdempotentMethodsAreNotRetried() {
+        RetryConfig.RetryBudgetGatewayFilterFactory factory = new RetryConfig.RetryBudgetGatewayFilterFactory(properties, Optional.empty());
+
+        assertThat(attempts(factory.apply(config(3, null)), HttpMethod.POST)).isEqualTo(1);
+        assertThat(attempts(factory.apply(config(3, null)), HttpMethod.GET)).isEqualTo(4);
+    }
+
+    @Test
+    void routeRetriesWithdrawFromRouteAndGlobalBudget() {
+        properties.setRatio(1.0D);
+        properties.setMinRetriesPerSecond(0);
+        properties.setTtl(Duration.ofSeconds(60L));
+        RetryConfig.RetryBudgetGatewayFilterFactory factory = new RetryConfig.RetryBudgetGatewayFilterFactory(properties, Optional.empty());
+
+        assertThat(attempts(factory.apply(config(3, 0.0D)), HttpMethod.GET)).isEqualTo(1);
+        assertThat(attempts(factory.apply(config(3, 1.0D)), HttpMethod.GET)).isEqualTo(2);
+        assertThat(attempts(factory.apply(config(3, null)), HttpMethod.GET)).isEqualTo(3);
+    }
+
+    @Test
+    void retriedPutResendsRequestBody() {
+        AdaptCachedBodyGlobalFilter adaptCachedBodyGlobalFilter = new AdaptCachedBodyGlobalFilter();
+        RetryConfig.RetryBudgetGatewayFilterFactory factory = new RetryConfig.RetryBudgetGatewayFilterFactory(properties, Optional.empty());
+        factory.setApplicationEventPublisher(event -> adaptCachedBodyGlobalFilter.onApplicationEvent((EnableBodyCachingEvent) event));
+        RetryConfig.RetryBudgetGatewayFilterFactory.Config config = config(2, null);
+        config.setRouteId("route");
+        GatewayFilter filter = factory.apply(config);
+
+        NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+        AtomicBoolean consumed = new AtomicBoolean();
+        MockServerHttpRequest request = MockServerHttpRequest.method(HttpMethod.PUT, "http://gateway/resource")
+                .body(Flux.defer(() -> consumed.compareAndSet(false, true)
+                        ? Flux.just(bufferFactory.wrap("payload".getBytes(StandardCharsets.UTF_8)))
+                        : Flux.error(new IllegalStateException("Request body already consumed"))));
+        ServerWebExchange exchange = new DefaultServerWebExchange(request, new MockServerHttpResponse(bufferFactory),
+                new DefaultWebSessionManager(), ServerCodecConfigurer.create(), new AcceptHeaderLocaleContextResolver());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id("route")
+                .uri("http://upstream")
+                .predicate(e -> true)
+                .build());
+        List<String> bodies = new CopyOnWriteArrayList<>();
+
+        adaptCachedBodyGlobalFilter.filter(exchange, adapted -> filter.filter(adapted, e -> DataBufferUtils.join(e.getRequest().getBody())
+                .map(dataBuffer -> {
+                    String body = dataBuffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(dataBuffer);
+                    return body;
+                })
+                .doOnNext(bodies::add)
+                .then(Mono.fromRunnable(() -> e.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE))))).block();
+
+        assertThat(bodies).containsExactly("payload", "payload", "payload");
+    }
+
+    private static int withdrawAll(RetryConfig.RetryBudget budget, long second) {
+        int withdrawn = 0;
+        while (budget.canWithdraw(second)) {
+            budget.withdraw(second);
+            withdrawn++;
+        }
+        return withdrawn;
+    }
+
+    private static RetryConfig.RetryBudgetGatewayFilterFactory.Config config(int retries, Double budget) {
+        RetryConfig.RetryBudgetGatewayFilterFactory.Config config = new RetryConfig.RetryBudgetGatewayFilterFactory.Config();
+        config.setRetries(retries);
+        config.setBackoff(null);
+        config.setBudget(budget);
+        return config;
+    }
+
+    private static int attempts(GatewayFilter filter, HttpMethod method) {
+        AtomicInteger attempts = new AtomicInteger();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.method(method, "http://gateway/resource"));
+        filter.filter(exchange, e -> Mono.fromRunnable(() -> {
+            attempts.incrementAndGet();
+            e.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        })).block();
+        return attempts.get();
+    }
+}
@@ -0,0 +1,52 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteConfigTests {
+    @Test
+    void prefixIsOriginalPathWithoutRequestPath() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users"), Collections.singleton(URI.create("http://gateway/api/users")))).isEqualTo("/api");
+    }
+
+    @Test
+    void regexMetacharactersAreMatchedLiterally() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/v1.0/items+(x)"), Collections.singleton(URI.create("http://gateway/svc/v1.0/items+(x)")))).isEqualTo("/svc");
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/a.c"), Collections.singleton(URI.create("http://gateway/svc/abc")))).isEqualTo("/svc/abc");
+    }
+
+    @Test
+    void trailingSlashesAreIgnored() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users/"), Collections.singleton(URI.create("http://gateway/api/users")))).isEqualTo("/api");
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users"), Collections.singleton(URI.create("http://gateway/api/users//")))).isEqualTo("/api");
+    }
+
+    @Test
+    void rewrittenRequestPathKeepsWholeOriginalPath() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/accounts"), Collections.singleton(URI.create("http://gateway/api/users")))).isEqualTo("/api/users");
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users"), Collections.singleton(URI.create("http://gateway/api/users/")))).isEqualTo("/api");
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/v2"), Collections.singleton(URI.create("http://gateway/v1/")))).isEqualTo("/v1");
+    }
+
+    @Test
+    void requestPathLongerThanOriginalHasNoPrefix() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/internal/users"), Collections.singleton(URI.create("http://gateway/api/accounts")))).isEmpty();
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/api/users/all"), Collections.singleton(URI.create("http://gateway/users")))).isEmpty();
+    }
+
+    @Test
+    void firstOriginalPathIsUsed() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users"), Arrays.asList(URI.create("http://gateway/"), URI.create("http://gateway/api/users"), URI.create("http://gateway/other/users")))).isEqualTo("/api");
+    }
+
+    @Test
+    void rootRequestPathHasNoPrefix() {
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/"), Collections.singleton(URI.create("http://gateway/api")))).isEmpty();
+        assertThat(RouteConfig.routePrefix(URI.create("http://upstream/users"), null)).isEmpty();
+    }
+}
@@ -0,0 +1,156 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteIndexTests {
+    private final List<Route> routes = new ArrayList<>();
+    private final List<RouteDefinition> definitions = new ArrayList<>();
+
+    @Test
+    void candidatesAreNullBeforeRoutesAreIndexed() {
+        route("api", "Path=/api/**");
+
+        assertThat(new RouteIndex(() -> Flux.fromIterable(routes), () -> Flux.fromIterable(definitions)).candidates(request("/api/users", "localhost"))).isNull();
+    }
+
+    @Test
+    void failedRefreshIsIgnored() {
+        route("api", "Path=/api/**");
+        RouteIndex routeIndex = new RouteIndex(() -> Flux.fromIterable(routes), () -> Flux.fromIterable(definitions));
+        routeIndex.onApplicationEvent(new RefreshRoutesResultEvent(this, new IllegalStateException()));
+
+        assertThat(routeIndex.candidates(request("/api/users", "localhost"))).isNull();
+    }
+
+    @Test
+    void pathPrefixSelectsRoutesInOrder() {
+        route("users", "Path=/api/users/{id}");
+        route("api", "Path=/api/**");
+        route("other", "Path=/other/**");
+        route("method", "Method=GET");
+
+        RouteIndex routeIndex = index();
+
+        assertThat(ids(routeIndex.candidates(request("/api/users/1", "localhost")))).containsExactly("users", "api", "method");
+        assertThat(ids(routeIndex.candidates(request("/api/orders", "localhost")))).containsExactly("api", "method");
+        assertThat(ids(routeIndex.candidates(request("/unknown", "localhost")))).containsExactly("method");
+    }
+
+    @Test
+    void hostSuffixSelectsRoutes() {
+        route("wildcard", "Host=**.example.com");
+        route("exact", "Host=api.example.com");
+        route("other", "Host=example.org");
+
+        RouteIndex routeIndex = index();
+
+        assertThat(ids(routeIndex.candidates(request("/", "api.example.com")))).containsExactly("wildcard", "exact");
+        assertThat(ids(routeIndex.candidates(request("/", "www.example.com.")))).containsExactly("wildcard");
+        assertThat(ids(routeIndex.candidates(request("/", "example.org")))).containsExactly("other");
+    }
+
+    @Test
+    void routesWithHostAreIndexedByHostOnly() {
+        route("host", "Host=api.example.com", "Path=/v2/**");
+        route("path", "Path=/v1/**");
+
+        RouteIndex routeIndex = index();
+
+        assertThat(ids(routeIndex.candidates(request("/v1/x", "api.example.com")))).containsExactly("host", "path");
+        assertThat(ids(routeIndex.candidates(request("/v2/x", "www.example.com")))).isEmpty();
+    }
+
+    @Test
+    void routesWithoutDefinitionOrDynamicPatternsAreEvaluatedLinearly() {
+        route("spel", "Path=#{'/api'}/**");
+        routes.add(Route.async().id("code").uri("http://localhost").predicate(exchange -> true).build());
+
+        RouteIndex routeIndex = index();
+
+        assertThat(ids(routeIndex.candidates(request("/anything", "localhost")))).containsExactly("spel", "code");
+    }
+
+    @Test
+    void ambiguousRequestsFallBackToLinearLookup() {
+        route("api", "Path=/api/**");
+
+        RouteIndex routeIndex = index();
+
+        assertThat(routeIndex.candidates(request("/api/%75sers", "localhost"))).isNull();
+        assertThat(routeIndex.candidates(request("/api;v=1/users", "localhost"))).isNull();
+        assertThat(routeIndex.candidates(request("/api//users", "localhost"))).isNull();
+        assertThat(routeIndex.candidates(request("/api/users", "api..example.com"))).isNull();
+    }
+
+    @Test
+    void pathKeysStopAtFirstWildcard() {
+        assertThat(RouteIndex.Index.pathKeys(args("/api/**"))).containsExactly("/api");
+        assertThat(RouteIndex.Index.pathKeys(args("/users/{id}/orders"))).containsExactly("/users");
+        assertThat(RouteIndex.Index.pathKeys(args("/files/*.json", "/static/"))).containsExactly("/files", "/static");
+        assertThat(RouteIndex.Index.pathKeys(args("/**"))).containsExactly("");
+        assertThat(RouteIndex.Index.pathKeys(args("api/**"))).isNull();
+        assertThat(RouteIndex.Index.pathKeys(args("#{'/api'}"))).isNull();
+
+        Map<String, String> matchTrailingSlash = args("/api/**");
+        matchTrailingSlash.put("matchTrailingSlash", "false");
+        assertThat(RouteIndex.Index.pathKeys(matchTrailingSlash)).containsExactly("/api");
+    }
+
+    @Test
+    void hostKeysKeepLiteralSuffix() {
+        assertThat(RouteIndex.Index.hostKeys(Arrays.asList("**.example.com", "api.example.org."))).containsExactly("example.com", "api.example.org");
+        assertThat(RouteIndex.Index.hostKeys(Collections.singletonList("{sub}.example.com"))).containsExactly("example.com");
+        assertThat(RouteIndex.Index.hostKeys(Collections.singletonList("**"))).containsExactly("");
+        assertThat(RouteIndex.Index.hostKeys(Collections.singletonList("a..example.com"))).isNull();
+        assertThat(RouteIndex.Index.hostKeys(Collections.emptyList())).isNull();
+    }
+
+    private void route(String id, String... predicates) {
+        RouteDefinition definition = new RouteDefinition();
+        definition.setId(id);
+        definition.setPredicates(Arrays.stream(predicates).map(PredicateDefinition::new).collect(Collectors.toList()));
+        definitions.add(definition);
+        routes.add(Route.async().id(id).uri("http://localhost").predicate(exchange -> true).build());
+    }
+
+    private RouteIndex index() {
+        RouteIndex routeIndex = new RouteIndex(() -> Flux.fromIterable(routes), () -> Flux.fromIterable(definitions));
+        routeIndex.onApplicationEvent(new RefreshRoutesResultEvent(this));
+        return routeIndex;
+    }
+
+    private static Map<String, String> args(String... patterns) {
+        Map<String, String> args = new LinkedHashMap<>();
+        for (int i = 0; i < patterns.length; i++) {
+            args.put("_genkey_" + i, patterns[i]);
+        }
+        return args;
+    }
+
+    private static MockServerHttpRequest request(String path, String host) {
+        return MockServerHttpRequest.method(HttpMethod.GET, URI.create(path)).header(HttpHeaders.HOST, host).build();
+    }
+
+    private static List<String> ids(List<Route> routes) {
+        return routes.stream().map(Route::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceInstancesTests {
+    @Test
+    void keyPrefersInstanceId() {
+        assertThat(ServiceInstances.key(instance("a", "10.0.0.1", 8080))).isEqualTo("a");
+        assertThat(ServiceInstances.key(instance(null, "10.0.0.1", 8080))).isEqualTo("10.0.0.1:8080");
+    }
+
+    @Test
+    void ofReusesExistingSnapshotsAndEmpty() {
+        ServiceInstances serviceInstances = ServiceInstances.of(Arrays.asList(instance("a", "10.0.0.1", 8080)));
+
+        assertThat(ServiceInstances.of(serviceInstances)).isSameAs(serviceInstances);
+        assertThat(ServiceInstances.of(Collections.emptyList())).isSameAs(ServiceInstances.empty());
+    }
+
+    @Test
+    void indexesByKey() {
+        ServiceInstance a = instance("a", "10.0.0.1", 8080);
+        ServiceInstance b = instance("b", "10.0.0.2", 8080);
+        ServiceInstances serviceInstances = ServiceInstances.of(Arrays.asList(a, b));
+
+        assertThat(serviceInstances).containsExactly(a, b);
+        assertThat(serviceInstances.getInstance("b")).isSameAs(b);
+        assertThat(serviceInstances.getInstance("c")).isNull();
+    }
+
+    @Test
+    void updateKeepsSnapshotWhenMembershipIsUnchanged() {
+        ServiceInstances current = ServiceInstances.of(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.2", 8080)));
+
+        assertThat(current.update(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.2", 8080)))).isSameAs(current);
+        assertThat(current.update(Arrays.asList(instance("b", "10.0.0.2", 8080), instance("a", "10.0.0.1", 8080)))).isSameAs(current);
+    }
+
+    @Test
+    void updateReplacesSnapshotWhenMembershipChanges() {
+        List<ServiceInstance> initial = Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.2", 8080));
+        ServiceInstances current = ServiceInstances.of(initial);
+
+        assertThat(current.update(Collections.singletonList(instance("a", "10.0.0.1", 8080)))).isNotSameAs(current).hasSize(1);
+        assertThat(current.update(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("c", "10.0.0.3", 8080)))).isNotSameAs(current);
+        assertThat(current.update(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.9", 8080)))).isNotSameAs(current);
+        assertThat(current.update(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.2", 8081)))).isNotSameAs(current);
+    }
+
+    @Test
+    void updateReplacesSnapshotWhenSameSizedListDropsAnInstance() {
+        ServiceInstances current = ServiceInstances.of(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("b", "10.0.0.2", 8080)));
+
+        ServiceInstances updated = current.update(Arrays.asList(instance("a", "10.0.0.1", 8080), instance("a", "10.0.0.1", 8080)));
+
+        assertThat(updated).isNotSameAs(current);
+        assertThat(updated.getInstance("b")).isNull();
+    }
+
+    @Test
+    void updateReplacesSnapshotWhenMetadataChanges() {
+        ServiceInstances current = ServiceInstances.of(Collections.singletonList(instance("a", "10.0.0.1", 8080)));
+        DefaultServiceInstance next = instance("a", "10.0.0.1", 8080);
+        next.getMetadata().put("zone", "b");
+
+        ServiceInstances updated = current.update(Collections.singletonList(next));
+
+        assertThat(updated).isNotSameAs(current);
+        assertThat(updated.getInstance("a")).isSameAs(next);
+    }
+
+    @Test
+    void emptySnapshotIsReplacedOnFirstUpdate() {
+        ServiceInstance a = instance("a", "10.0.0.1", 8080);
+
+        assertThat(ServiceInstances.empty().update(Collections.emptyList())).isSameAs(ServiceInstances.empty());
+        assertThat(ServiceInstances.empty().update(Collections.singletonList(a))).containsExactly(a);
+    }
+
+    private static DefaultServiceInstance instance(String instanceId, String host, int port) {
+        return new DefaultServiceInstance(instanceId, "service", host, port, false);
+    }
+}
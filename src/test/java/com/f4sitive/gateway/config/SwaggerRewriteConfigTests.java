@@ -0,0 +1,121 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SwaggerRewriteConfigTests {
+    private static final String UPSTREAM_ETAG = "\"upstream\"";
+    private static final String DOCUMENT = "{\"swagger\":\"2.0\",\"host\":\"upstream:8080\",\"paths\":{\"/resource\":{\"get\":{\"parameters\":["
+            + "{\"in\":\"header\",\"name\":\"User-Id\"},{\"in\":\"query\",\"name\":\"q\"}]}}}}";
+
+    private final List<ServerHttpRequest> upstreamRequests = new ArrayList<>();
+    private int chunkSize = Integer.MAX_VALUE;
+    private final GatewayFilter filter = new SwaggerRewriteConfig.SwaggerRewriteGatewayFilterFactory(new SwaggerRewriter(new SwaggerConfig().openAPI()))
+            .apply(new SwaggerRewriteConfig.SwaggerRewriteGatewayFilterFactory.Config());
+
+    @Test
+    void streamedDocumentDropsUpstreamValidators() {
+        MockServerWebExchange exchange = exchange(null);
+
+        filter.filter(exchange, this::upstream).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isNotEqualTo(DOCUMENT).contains("\"host\":\"gateway\"");
+        assertThat(exchange.getResponse().getHeaders().getETag()).isNull();
+        assertThat(exchange.getResponse().getHeaders().containsKey(HttpHeaders.LAST_MODIFIED)).isFalse();
+    }
+
+    @Test
+    void chunkedDocumentIsRewrittenLikeWholeDocument() {
+        MockServerWebExchange whole = exchange(null);
+        filter.filter(whole, this::upstream).block();
+
+        chunkSize = 1;
+        MockServerWebExchange chunked = exchange(null);
+        new SwaggerRewriteConfig.SwaggerRewriteGatewayFilterFactory(new SwaggerRewriter(new SwaggerConfig().openAPI()))
+                .apply(new SwaggerRewriteConfig.SwaggerRewriteGatewayFilterFactory.Config())
+                .filter(chunked, this::upstream)
+                .block();
+
+        assertThat(chunked.getResponse().getBodyAsString().block()).isEqualTo(whole.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    void storedDocumentCarriesDerivedETag() {
+        MockServerWebExchange first = exchange(null);
+        filter.filter(first, this::upstream).block();
+
+        MockServerWebExchange second = exchange(null);
+        filter.filter(second, this::upstream).block();
+
+        String body = second.getResponse().getBodyAsString().block();
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body).isEqualTo(first.getResponse().getBodyAsString().block());
+        assertThat(second.getResponse().getHeaders().getETag())
+                .isNotEqualTo(UPSTREAM_ETAG)
+                .isEqualTo(SwaggerRewriteConfig.SwaggerDocument.etag(body.getBytes(StandardCharsets.UTF_8)));
+        assertThat(second.getResponse().getHeaders().containsKey(HttpHeaders.LAST_MODIFIED)).isFalse();
+    }
+
+    @Test
+    void derivedETagIsAnsweredWithNotModified() {
+        filter.filter(exchange(null), this::upstream).block();
+        MockServerWebExchange second = exchange(null);
+        filter.filter(second, this::upstream).block();
+        String etag = second.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange third = exchange(etag);
+        filter.filter(third, this::upstream).block();
+
+        assertThat(third.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(third.getResponse().getHeaders().getETag()).isEqualTo(etag);
+        assertThat(upstreamRequests.get(2).getHeaders().getIfNoneMatch()).containsExactly(UPSTREAM_ETAG);
+    }
+
+    @Test
+    void clientValidatorsAreNotForwardedUpstream() {
+        filter.filter(exchange(UPSTREAM_ETAG), this::upstream).block();
+
+        assertThat(upstreamRequests.get(0).getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH)).isFalse();
+    }
+
+    private Mono<Void> upstream(ServerWebExchange exchange) {
+        upstreamRequests.add(exchange.getRequest());
+        exchange.getResponse().getHeaders().setETag(UPSTREAM_ETAG);
+        exchange.getResponse().getHeaders().setLastModified(0L);
+        if (exchange.getRequest().getHeaders().getIfNoneMatch().contains(UPSTREAM_ETAG)) {
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_MODIFIED);
+            return exchange.getResponse().writeWith(Mono.empty());
+        }
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        byte[] document = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        int chunk = Math.min(chunkSize, document.length);
+        return exchange.getResponse().writeWith(Flux.range(0, (document.length + chunk - 1) / chunk)
+                .map(index -> Arrays.copyOfRange(document, index * chunk, Math.min(document.length, (index + 1) * chunk)))
+                .map(exchange.getResponse().bufferFactory()::wrap));
+    }
+
+    private static MockServerWebExchange exchange(String ifNoneMatch) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("http://gateway/v2/api-docs");
+        if (ifNoneMatch != null) {
+            request.ifNoneMatch(ifNoneMatch);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,103 @@
+package com.f4sitive.gateway.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.f4sitive.gateway.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+    private static final int CONCURRENCY = 64;
+    private static final byte[] PAYLOAD = new byte[1024];
+
+    static {
+        Arrays.fill(PAYLOAD, (byte) 'x');
+    }
+
+    @Param({"netty", "jetty", "h2"})
+    private String transport;
+
+    private DisposableServer upstream;
+    private ConfigurableApplicationContext context;
+    private ConnectionProvider connectionProvider;
+    private HttpClient client;
+
+    @Setup
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        upstream = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .route(routes -> routes.get("/payload", (request, response) -> response.sendByteArray(Flux.just(PAYLOAD))))
+                .bindNow();
+        String uri = "http://localhost:" + upstream.port();
+        context = new SpringApplicationBuilder(Application.class)
+                .profiles("benchmark")
+                .run("--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.cloud.gateway.default-filters=",
+                        "--spring.cloud.gateway.routes[0].id=" + transport,
+                        "--spring.cloud.gateway.routes[0].uri=" + uri,
+                        "--spring.cloud.gateway.routes[0].predicates[0]=Path=/" + transport + "/**",
+                        "--spring.cloud.gateway.routes[0].filters[0]=StripPrefix=1",
+                        "--spring.cloud.gateway.routes[0].metadata.transport=" + transport);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        connectionProvider = ConnectionProvider.create("benchmark", CONCURRENCY);
+        client = HttpClient.create(connectionProvider)
+                .baseUrl("http://localhost:" + port + "/" + transport);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionProvider.disposeLater().block();
+        context.close();
+        upstream.disposeNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public Long proxy() {
+        return Flux.range(0, CONCURRENCY)
+                .flatMap(i -> client.get()
+                        .uri("/payload")
+                        .responseSingle((response, body) -> response.status().code() == 200
+                                ? body.asString(StandardCharsets.UTF_8)
+                                : Mono.error(new IllegalStateException(transport + " " + response.status())))
+                        .map(String::length), CONCURRENCY)
+                .count()
+                .block();
+    }
+}
@@ -0,0 +1,101 @@
+package com.f4sitive.gateway.config;
+
+import com.f4sitive.gateway.Application;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransportConfigTests {
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static DisposableServer upstream;
+    private static ConfigurableApplicationContext context;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void setUp() {
+        upstream = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .handle((request, response) -> {
+                    hits.incrementAndGet();
+                    return response.sendString(Mono.just(request.method().name()));
+                })
+                .bindNow();
+        String[] args = new String[]{"--server.port=0", "--management.server.port=0", "--spring.cloud.gateway.default-filters="};
+        String[] transports = new String[]{"netty", "jetty", "h2"};
+        String[] routes = new String[args.length + transports.length * 5];
+        System.arraycopy(args, 0, routes, 0, args.length);
+        for (int i = 0; i < transports.length; i++) {
+            int offset = args.length + i * 5;
+            routes[offset] = "--spring.cloud.gateway.routes[" + i + "].id=" + transports[i];
+            routes[offset + 1] = "--spring.cloud.gateway.routes[" + i + "].uri=http://localhost:" + upstream.port();
+            routes[offset + 2] = "--spring.cloud.gateway.routes[" + i + "].predicates[0]=Path=/" + transports[i] + "/**";
+            routes[offset + 3] = "--spring.cloud.gateway.routes[" + i + "].filters[0]=StripPrefix=1";
+            routes[offset + 4] = "--spring.cloud.gateway.routes[" + i + "].metadata.transport=" + transports[i];
+        }
+        context = new SpringApplicationBuilder(Application.class).run(routes);
+        client = HttpClient.create()
+                .baseUrl("http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+        upstream.disposeNow();
+    }
+
+    @BeforeEach
+    void reset() {
+        hits.set(0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"netty", "jetty", "h2"})
+    void routesOnce(String transport) {
+        assertThat(exchange("GET", transport)).isEqualTo("200 GET");
+        assertThat(hits).hasValue(1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"netty", "jetty", "h2"})
+    void routesNonStandardMethodOnce(String transport) {
+        assertThat(exchange("PROPFIND", transport)).isEqualTo("200 PROPFIND");
+        assertThat(hits).hasValue(1);
+    }
+
+    @Test
+    void unknownTransportFallsBackToNetty() {
+        Route route = Route.async().id("typo").uri("http://localhost").predicate(exchange -> true)
+                .metadata(TransportConfig.TransportRoutingFilter.TRANSPORT_ATTR, "jety")
+                .build();
+
+        assertThat(TransportConfig.TransportRoutingFilter.transport(route)).isEqualTo(TransportConfig.Transport.NETTY);
+        assertThat(TransportConfig.TransportRoutingFilter.transport(route)).isEqualTo(TransportConfig.Transport.NETTY);
+    }
+
+    private static String exchange(String method, String transport) {
+        return client.request(io.netty.handler.codec.http.HttpMethod.valueOf(method))
+                .uri("/" + transport + "/resource")
+                .responseSingle((response, body) -> body.asString()
+                        .defaultIfEmpty("")
+                        .map(content -> response.status().code() + " " + content))
+                .block();
+    }
+}
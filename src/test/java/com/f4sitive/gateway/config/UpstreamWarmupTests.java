@@ -0,0 +1,101 @@
+package com.f4sitive.gateway.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.JettyClientHttpConnector;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamWarmupTests {
+    private final Map<TransportConfig.Transport, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final DisposableServer server = HttpServer.create()
+            .port(0)
+            .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+            .handle((request, response) -> {
+                String userAgent = String.valueOf(request.requestHeaders().get(HttpHeaders.USER_AGENT));
+                TransportConfig.Transport transport = request.requestHeaders().contains("x-http2-stream-id") ? TransportConfig.Transport.H2
+                        : userAgent.startsWith("Jetty") ? TransportConfig.Transport.JETTY : TransportConfig.Transport.NETTY;
+                requests.computeIfAbsent(transport, key -> new AtomicInteger()).incrementAndGet();
+                return response.send();
+            })
+            .bindNow();
+    private final HealthConfig.Warmup properties = new HealthConfig.Warmup();
+
+    UpstreamWarmupTests() {
+        properties.setEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+    }
+
+    @Test
+    void targetsAreDistinctPerTransport() {
+        UpstreamWarmup upstreamWarmup = warmup(route("netty", null, "/a"), route("jetty", "jetty", "/b"), route("h2", "H2", "/c"), route("other", null, "/d"));
+
+        assertThat(upstreamWarmup.targets().map(target -> target.transport).collect(Collectors.toList()).block())
+                .containsExactly(TransportConfig.Transport.NETTY, TransportConfig.Transport.JETTY, TransportConfig.Transport.H2);
+    }
+
+    @Test
+    void discoveredInstancesUseTheirRouteTransport() {
+        ReactiveDiscoveryClient discoveryClient = Mockito.mock(ReactiveDiscoveryClient.class);
+        Mockito.when(discoveryClient.getServices()).thenReturn(Flux.just("jetty-service", "unrouted"));
+        Mockito.when(discoveryClient.getInstances(Mockito.anyString())).thenAnswer(invocation -> Flux.just(
+                new DefaultServiceInstance(invocation.getArgument(0) + "-1", invocation.getArgument(0), invocation.getArgument(0) + ".local", 8080, false)));
+        Route route = Route.async()
+                .id("jetty-service")
+                .uri(URI.create("lb://jetty-service"))
+                .predicate(exchange -> true)
+                .metadata(TransportConfig.TransportRoutingFilter.TRANSPORT_ATTR, "jetty")
+                .build();
+        UpstreamWarmup upstreamWarmup = new UpstreamWarmup(HttpClient.create(), Optional.empty(), () -> Flux.just(route), Optional.of(discoveryClient), properties);
+
+        assertThat(upstreamWarmup.targets().map(target -> target.uri.getHost() + " " + target.transport).collect(Collectors.toList()).block())
+                .containsExactly("jetty-service.local JETTY", "unrouted.local NETTY");
+    }
+
+    @Test
+    void eachTransportIsWarmed() {
+        properties.setConnections(2);
+        UpstreamWarmup upstreamWarmup = warmup(route("netty", null, "/"), route("jetty", "jetty", "/"), route("h2", "h2", "/"));
+
+        upstreamWarmup.warmup(0).block();
+
+        assertThat(requests).hasSize(3);
+        assertThat(requests.values()).allMatch(count -> count.get() == 2);
+    }
+
+    private UpstreamWarmup warmup(Route... routes) {
+        return new UpstreamWarmup(HttpClient.create(), Optional.of(new JettyClientHttpConnector()), () -> Flux.just(routes), Optional.empty(), properties);
+    }
+
+    private Route route(String id, String transport, String path) {
+        Route.AsyncBuilder builder = Route.async()
+                .id(id)
+                .uri(URI.create("http://localhost:" + server.port() + path))
+                .predicate(exchange -> true);
+        if (transport != null) {
+            builder.metadata(TransportConfig.TransportRoutingFilter.TRANSPORT_ATTR, transport);
+        }
+        return builder.build();
+    }
+}